@@ -0,0 +1,420 @@
+package software_masters.planner_benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+import software_masters.planner_networking.Account;
+import software_masters.planner_networking.Centre;
+import software_masters.planner_networking.Department;
+import software_masters.planner_networking.IowaState;
+import software_masters.planner_networking.Node;
+import software_masters.planner_networking.Plan;
+import software_masters.planner_networking.PlanFile;
+import software_masters.planner_networking.ServerImplementation;
+import software_masters.planner_networking.VMOSA;
+
+/**
+ * Builds server state for benchmarks and load tests. The same settings and seed
+ * always give the same data, and nothing is written to the mutation log while
+ * it is built. Department d is named "department" + d and its plans are for the
+ * years 2000 onwards.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class DatasetGenerator
+{
+
+	public static final long SEED = 2019;
+
+	private long seed = SEED;
+	private int departments = 10;
+	private int accountsPerDepartment = 1;
+	private int yearsPerDepartment = 5;
+	private String templateMix = "Centre=1,VMOSA=1,IowaState=1";
+	private int branching = 3;
+	private int maxNodes = 200;
+	private int textSize = 40;
+
+	/**
+	 * @return server holding the generated departments, accounts and plans
+	 * @throws RemoteException
+	 */
+	public ServerImplementation generate() throws RemoteException
+	{
+		Random random = new Random(seed);
+		String[] types = parseMix(templateMix);
+		ServerImplementation server = new ServerImplementation();
+		server.getPlanTemplateMap().put("IowaState", new PlanFile("", true, new IowaState()));
+		for (int d = 0; d < departments; d++)
+		{
+			Department department = new Department("department" + d);
+			for (int y = 0; y < yearsPerDepartment; y++)
+			{
+				String year = Integer.toString(2000 + y);
+				Plan plan = plan(types[random.nextInt(types.length)], branching, maxNodes, textSize, random);
+				department.addPlan(year, new PlanFile(year, true, plan));
+			}
+			server.getDepartmentMap().put(department.getName(), department);
+			for (int k = 0; k < accountsPerDepartment; k++)
+			{
+				Account account = new Account(user(d, k), cookie(d, k), department, false);
+				server.getLoginMap().put(user(d, k), account);
+				server.getCookieMap().put(cookie(d, k), account);
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Builds a plan breadth first, giving each node that the plan lets branch up to
+	 * branching children, until it has at least maxNodes nodes
+	 *
+	 * @param type
+	 *                      Centre, VMOSA or IowaState
+	 * @param branching
+	 *                      children wanted below each node
+	 * @param maxNodes
+	 * @param textSize
+	 *                      characters of data for each node
+	 * @param random
+	 * @return plan
+	 * @throws RemoteException
+	 */
+	public static Plan plan(String type, int branching, int maxNodes, int textSize, Random random)
+			throws RemoteException
+	{
+		Plan plan = newPlan(type);
+		plan.setName(type + "_" + random.nextInt(1000000));
+		int leafDepth = plan.getList().size() - 1;
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.add(plan.getRoot());
+		while (!pending.isEmpty() && plan.getNodeCount() < maxNodes)
+		{
+			Node node = pending.poll();
+			if (node.getDepth() >= leafDepth)
+			{
+				continue;
+			}
+			try
+			{
+				while (node.getChildren().size() < branching && plan.getNodeCount() < maxNodes)
+				{
+					plan.addNode(node);
+				}
+			}
+			catch (IllegalArgumentException fixed)
+			{
+				// the plan type allows only one child here, such as below a VMOSA vision
+			}
+			pending.addAll(node.getChildren());
+		}
+		fillData(plan.getRoot(), textSize, random);
+		return plan;
+	}
+
+	/**
+	 * @param type
+	 *                 Centre, VMOSA or IowaState
+	 * @return the default plan of that type
+	 * @throws RemoteException
+	 */
+	public static Plan newPlan(String type) throws RemoteException
+	{
+		switch (type)
+		{
+		case "Centre":
+			return new Centre();
+		case "VMOSA":
+			return new VMOSA();
+		case "IowaState":
+			return new IowaState();
+		default:
+			throw new IllegalArgumentException("Unknown plan type " + type);
+		}
+	}
+
+	/**
+	 * @param department
+	 * @param account
+	 * @return username, which is also the password
+	 */
+	public static String user(int department, int account)
+	{
+		return "user" + department + "_" + account;
+	}
+
+	/**
+	 * @param department
+	 * @param account
+	 * @return cookie of that account
+	 */
+	public static String cookie(int department, int account)
+	{
+		return "cookie" + department + "_" + account;
+	}
+
+	/**
+	 * @param mix
+	 *                type=weight pairs separated by commas
+	 * @return types repeated by weight, for picking at random
+	 */
+	static String[] parseMix(String mix)
+	{
+		ArrayList<String> types = new ArrayList<String>();
+		for (String part : mix.split(","))
+		{
+			String[] pair = part.trim().split("=");
+			if (pair.length != 2)
+			{
+				throw new IllegalArgumentException("Expected type=weight in " + mix);
+			}
+			for (int i = Integer.parseInt(pair[1].trim()); i > 0; i--)
+			{
+				types.add(pair[0].trim());
+			}
+		}
+		if (types.isEmpty())
+		{
+			throw new IllegalArgumentException("Mix has no plan types: " + mix);
+		}
+		return types.toArray(new String[types.size()]);
+	}
+
+	/**
+	 * Gives every node textSize characters of lower case words
+	 */
+	private static void fillData(Node root, int textSize, Random random)
+	{
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(root);
+		StringBuilder text = new StringBuilder(textSize);
+		while (!pending.isEmpty())
+		{
+			Node node = pending.pop();
+			text.setLength(0);
+			while (text.length() < textSize)
+			{
+				if (text.length() > 0 && random.nextInt(6) == 0)
+				{
+					text.append(' ');
+				}
+				else
+				{
+					text.append((char) ('a' + random.nextInt(26)));
+				}
+			}
+			node.setData(text.toString());
+			for (Node child : node.getChildren())
+			{
+				pending.push(child);
+			}
+		}
+	}
+
+	/**
+	 * @return the seed
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * @param seed
+	 *                 the seed to set
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the departments
+	 */
+	public int getDepartments()
+	{
+		return departments;
+	}
+
+	/**
+	 * @param departments
+	 *                        the departments to set
+	 */
+	public void setDepartments(int departments)
+	{
+		this.departments = departments;
+	}
+
+	/**
+	 * @return the accountsPerDepartment
+	 */
+	public int getAccountsPerDepartment()
+	{
+		return accountsPerDepartment;
+	}
+
+	/**
+	 * @param accountsPerDepartment
+	 *                                  the accountsPerDepartment to set
+	 */
+	public void setAccountsPerDepartment(int accountsPerDepartment)
+	{
+		this.accountsPerDepartment = accountsPerDepartment;
+	}
+
+	/**
+	 * @return the yearsPerDepartment
+	 */
+	public int getYearsPerDepartment()
+	{
+		return yearsPerDepartment;
+	}
+
+	/**
+	 * @param yearsPerDepartment
+	 *                               the yearsPerDepartment to set
+	 */
+	public void setYearsPerDepartment(int yearsPerDepartment)
+	{
+		this.yearsPerDepartment = yearsPerDepartment;
+	}
+
+	/**
+	 * @return the templateMix
+	 */
+	public String getTemplateMix()
+	{
+		return templateMix;
+	}
+
+	/**
+	 * @param templateMix
+	 *                        type=weight pairs, such as "Centre=2,VMOSA=1"
+	 */
+	public void setTemplateMix(String templateMix)
+	{
+		this.templateMix = templateMix;
+	}
+
+	/**
+	 * @return the branching
+	 */
+	public int getBranching()
+	{
+		return branching;
+	}
+
+	/**
+	 * @param branching
+	 *                      the branching to set
+	 */
+	public void setBranching(int branching)
+	{
+		this.branching = branching;
+	}
+
+	/**
+	 * @return the maxNodes
+	 */
+	public int getMaxNodes()
+	{
+		return maxNodes;
+	}
+
+	/**
+	 * @param maxNodes
+	 *                     the maxNodes to set
+	 */
+	public void setMaxNodes(int maxNodes)
+	{
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * @return the textSize
+	 */
+	public int getTextSize()
+	{
+		return textSize;
+	}
+
+	/**
+	 * @param textSize
+	 *                     the textSize to set
+	 */
+	public void setTextSize(int textSize)
+	{
+		this.textSize = textSize;
+	}
+
+	/**
+	 * Writes a generated server as a checkpoint in the given directory, ready for
+	 * ServerImplementation.load with -Dplanner.dataDir pointing at it.
+	 *
+	 * Usage: DatasetGenerator directory [--seed n] [--departments n] [--accounts n]
+	 * [--years n] [--mix Centre=1,VMOSA=1,IowaState=1] [--branching n] [--nodes n]
+	 * [--text n]
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.out.println("Usage: DatasetGenerator directory [--option value]...");
+			return;
+		}
+		DatasetGenerator generator = new DatasetGenerator();
+		for (int i = 1; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			switch (args[i])
+			{
+			case "--seed":
+				generator.setSeed(Long.parseLong(value));
+				break;
+			case "--departments":
+				generator.setDepartments(Integer.parseInt(value));
+				break;
+			case "--accounts":
+				generator.setAccountsPerDepartment(Integer.parseInt(value));
+				break;
+			case "--years":
+				generator.setYearsPerDepartment(Integer.parseInt(value));
+				break;
+			case "--mix":
+				generator.setTemplateMix(value);
+				break;
+			case "--branching":
+				generator.setBranching(Integer.parseInt(value));
+				break;
+			case "--nodes":
+				generator.setMaxNodes(Integer.parseInt(value));
+				break;
+			case "--text":
+				generator.setTextSize(Integer.parseInt(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		File directory = new File(args[0]);
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Unable to create " + directory);
+		}
+		System.setProperty("planner.dataDir", directory.getPath());
+		ServerImplementation server = generator.generate();
+		server.save();
+		server.close();
+		System.out.println("Wrote " + generator.getDepartments() + " departments of "
+				+ generator.getYearsPerDepartment() + " plans to " + directory);
+	}
+
+}
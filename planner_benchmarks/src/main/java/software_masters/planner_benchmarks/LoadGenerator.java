@@ -0,0 +1,386 @@
+package software_masters.planner_benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+
+import software_masters.planner_networking.Client;
+import software_masters.planner_networking.Node;
+import software_masters.planner_networking.PlanConflictException;
+import software_masters.planner_networking.Server;
+import software_masters.planner_networking.ServerImplementation;
+
+/**
+ * Drives a server over RMI from many simulated clients at once and reports
+ * throughput and latency percentiles for each call.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class LoadGenerator
+{
+
+	enum Call
+	{
+		logIn, listPlans, getPlan, savePlan, flagPlan, addUser, addDepartment
+	}
+
+	private static final String DEFAULT_MIX = "logIn=5,listPlans=30,getPlan=40,savePlan=15,flagPlan=5,addUser=3,addDepartment=2";
+
+	private final Map<String, String> options;
+	private final int clients;
+	private final int departments;
+	private final int plans;
+	private final Call[] weighted;
+	private final AtomicLong uniqueNames = new AtomicLong();
+
+	/**
+	 * @param options
+	 *                    option name without the dashes, to value
+	 */
+	public LoadGenerator(Map<String, String> options)
+	{
+		this.options = options;
+		this.clients = intOption("clients", 16);
+		this.departments = intOption("departments", 50);
+		this.plans = intOption("plans", 10);
+		this.weighted = parseMix(option("mix", DEFAULT_MIX));
+	}
+
+	/**
+	 * Starts the server if needed, runs every client for the warmup and measured
+	 * periods and prints the report
+	 *
+	 * @throws Exception
+	 */
+	public void run() throws Exception
+	{
+		String host = option("host", null);
+		int port = intOption("port", 1099);
+		ServerImplementation local = null;
+		Server exported = null;
+		File directory = null;
+		if (host == null)
+		{
+			host = "127.0.0.1";
+			directory = Files.createTempDirectory("planner-load").toFile();
+			System.setProperty("planner.dataDir", directory.getPath());
+			DatasetGenerator generator = new DatasetGenerator();
+			generator.setSeed(Long.parseLong(option("seed", Long.toString(DatasetGenerator.SEED))));
+			generator.setDepartments(departments);
+			generator.setYearsPerDepartment(plans);
+			generator.setMaxNodes(intOption("nodes", 200));
+			generator.setBranching(intOption("branching", generator.getBranching()));
+			generator.setTextSize(intOption("text", generator.getTextSize()));
+			local = generator.generate();
+			local.save();
+			Registry registry = LocateRegistry.createRegistry(port);
+			exported = local.instrumented();
+			registry.bind("PlannerServer", UnicastRemoteObject.exportObject(exported, 0));
+			System.out.println("Started server with " + departments + " departments on port " + port);
+		}
+
+		long warmupNanos = TimeUnit.SECONDS.toNanos(intOption("warmup", 5));
+		long measuredNanos = TimeUnit.SECONDS.toNanos(intOption("seconds", 30));
+		long start = System.nanoTime();
+		final long measureFrom = start + warmupNanos;
+		final long stopAt = measureFrom + measuredNanos;
+		ArrayList<Worker> workers = new ArrayList<Worker>();
+		CountDownLatch done = new CountDownLatch(clients);
+		for (int i = 0; i < clients; i++)
+		{
+			Worker worker = new Worker(i, host, port, measureFrom, stopAt, done);
+			workers.add(worker);
+			Thread thread = new Thread(worker, "load-client-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+		report(workers, measuredNanos);
+
+		if (local != null)
+		{
+			System.out.println();
+			System.out.println(local.getServerStats("0"));
+			UnicastRemoteObject.unexportObject(exported, true);
+			local.close();
+			deleteAll(directory);
+		}
+	}
+
+	/**
+	 * Merges every worker's figures and prints one line per call
+	 */
+	private void report(ArrayList<Worker> workers, long measuredNanos)
+	{
+		double seconds = measuredNanos / 1e9;
+		System.out.println();
+		System.out.println(String.format("%-14s %10s %8s %10s %10s %10s %10s %10s", "call", "count", "errors",
+				"ops/s", "p50 us", "p99 us", "p99.9 us", "max us"));
+		long total = 0;
+		for (Call call : Call.values())
+		{
+			Histogram merged = new Histogram(3);
+			long errors = 0;
+			LinkedHashMap<String, Long> causes = new LinkedHashMap<String, Long>();
+			for (Worker worker : workers)
+			{
+				merged.add(worker.latencies.get(call));
+				errors += worker.errors[call.ordinal()];
+				for (Map.Entry<String, Long> cause : worker.causes.get(call).entrySet())
+				{
+					causes.merge(cause.getKey(), cause.getValue(), Long::sum);
+				}
+			}
+			long count = merged.getTotalCount();
+			if (count == 0 && errors == 0)
+			{
+				continue;
+			}
+			total += count;
+			System.out.println(String.format("%-14s %10d %8d %10.1f %10d %10d %10d %10d", call, count, errors,
+					count / seconds, merged.getValueAtPercentile(50), merged.getValueAtPercentile(99),
+					merged.getValueAtPercentile(99.9), merged.getMaxValue()));
+			for (Map.Entry<String, Long> cause : causes.entrySet())
+			{
+				System.out.println(String.format("%-14s   %s x%d", "", cause.getKey(), cause.getValue()));
+			}
+		}
+		System.out.println(String.format("%-14s %10d %8s %10.1f", "total", total, "", total / seconds));
+	}
+
+	/**
+	 * One simulated user, with a second client for the admin calls
+	 */
+	private class Worker implements Runnable
+	{
+		final EnumMap<Call, Histogram> latencies = new EnumMap<Call, Histogram>(Call.class);
+		final EnumMap<Call, LinkedHashMap<String, Long>> causes = new EnumMap<Call, LinkedHashMap<String, Long>>(
+				Call.class);
+		final long[] errors = new long[Call.values().length];
+		private final int department;
+		private final String host;
+		private final int port;
+		private final long measureFrom;
+		private final long stopAt;
+		private final CountDownLatch done;
+		private final Random random;
+		private Client user;
+		private Client admin;
+
+		Worker(int index, String host, int port, long measureFrom, long stopAt, CountDownLatch done)
+		{
+			this.department = index % departments;
+			this.host = host;
+			this.port = port;
+			this.measureFrom = measureFrom;
+			this.stopAt = stopAt;
+			this.done = done;
+			this.random = new Random(DatasetGenerator.SEED + index);
+			for (Call call : Call.values())
+			{
+				latencies.put(call, new Histogram(3));
+				causes.put(call, new LinkedHashMap<String, Long>());
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				user = new Client();
+				user.connectToServer(host, port);
+				user.login(DatasetGenerator.user(department, 0), DatasetGenerator.user(department, 0));
+				admin = new Client();
+				admin.connectToServer(host, port);
+				admin.login("admin", "admin");
+				long now = System.nanoTime();
+				while (now < stopAt)
+				{
+					Call call = weighted[random.nextInt(weighted.length)];
+					long began = System.nanoTime();
+					Exception failure = null;
+					try
+					{
+						perform(call);
+					}
+					catch (Exception e)
+					{
+						failure = e;
+					}
+					now = System.nanoTime();
+					if (began >= measureFrom)
+					{
+						if (failure == null)
+						{
+							latencies.get(call).recordValue(Math.max(1, (now - began) / 1000));
+						}
+						else
+						{
+							errors[call.ordinal()]++;
+							causes.get(call).merge(failure.getClass().getSimpleName(), 1L, Long::sum);
+						}
+					}
+				}
+			}
+			catch (Exception e)
+			{
+				System.out.println("ERROR: Client for department" + department + " stopped: " + e);
+			}
+			finally
+			{
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Makes one call through the client, as the GUI would
+		 */
+		private void perform(Call call) throws Exception
+		{
+			String year = Integer.toString(2000 + random.nextInt(plans));
+			switch (call)
+			{
+			case logIn:
+				user.login(DatasetGenerator.user(department, 0), DatasetGenerator.user(department, 0));
+				break;
+			case listPlans:
+				user.listPlans();
+				break;
+			case getPlan:
+				user.getPlan(year);
+				break;
+			case savePlan:
+				if (user.getCurrPlanFile() == null)
+				{
+					user.getPlan(year);
+				}
+				Node root = user.getCurrPlanFile().getPlan().getRoot();
+				root.setData("edited " + random.nextInt());
+				try
+				{
+					user.pushPlan(user.getCurrPlanFile());
+				}
+				catch (PlanConflictException e)
+				{
+					user.getPlan(user.getCurrPlanFile().getYear());// another client saved it first
+					throw e;
+				}
+				break;
+			case flagPlan:
+				admin.flagPlan("department" + department, year, true);
+				break;
+			case addUser:
+				admin.addUser("load" + uniqueNames.incrementAndGet(), "load", "department" + department, false);
+				break;
+			case addDepartment:
+				admin.addDepartment("load" + uniqueNames.incrementAndGet());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown call " + call);
+			}
+		}
+	}
+
+	/**
+	 * @param mix
+	 *                call=weight pairs separated by commas
+	 * @return calls repeated by weight, for picking at random
+	 */
+	static Call[] parseMix(String mix)
+	{
+		ArrayList<Call> calls = new ArrayList<Call>();
+		for (String part : mix.split(","))
+		{
+			String[] pair = part.trim().split("=");
+			if (pair.length != 2)
+			{
+				throw new IllegalArgumentException("Expected call=weight in " + mix);
+			}
+			Call call = Call.valueOf(pair[0].trim());
+			for (int i = Integer.parseInt(pair[1].trim()); i > 0; i--)
+			{
+				calls.add(call);
+			}
+		}
+		if (calls.isEmpty())
+		{
+			throw new IllegalArgumentException("Mix has no calls: " + mix);
+		}
+		return calls.toArray(new Call[calls.size()]);
+	}
+
+	private String option(String name, String otherwise)
+	{
+		String value = options.get(name);
+		return value == null ? otherwise : value;
+	}
+
+	private int intOption(String name, int otherwise)
+	{
+		String value = options.get(name);
+		return value == null ? otherwise : Integer.parseInt(value);
+	}
+
+	private static void deleteAll(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				deleteAll(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Unless --host is given a ServerImplementation filled by DatasetGenerator
+	 * is started on --port, with its files in a scratch directory, and its own
+	 * per-method figures are printed after the client side report. Each client
+	 * thread logs in as the user of one department and picks calls in
+	 * proportion to --mix; admin calls go through a second client logged in as
+	 * admin. A savePlan that loses a race counts as a PlanConflictException
+	 * error, and the client fetches the plan again. The options and their
+	 * defaults:
+	 *
+	 * <pre>
+	 * --clients 16  --seconds 30  --warmup 5  --port 1099  --host 127.0.0.1
+	 * --departments 50  --plans 10  --nodes 200  --branching 3  --text 40  --seed 2019
+	 * --mix logIn=5,listPlans=30,getPlan=40,savePlan=15,flagPlan=5,addUser=3,addDepartment=2
+	 * </pre>
+	 * 
+	 * @param args
+	 *                 --name value pairs
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		LinkedHashMap<String, String> options = new LinkedHashMap<String, String>();
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			if (!args[i].startsWith("--"))
+			{
+				throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		new LoadGenerator(options).run();
+		System.exit(0);// RMI keeps the JVM alive otherwise
+	}
+
+}
@@ -0,0 +1,142 @@
+package software_masters.planner_benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software_masters.planner_networking.Department;
+import software_masters.planner_networking.PlanFile;
+import software_masters.planner_networking.ServerImplementation;
+
+/**
+ * Checkpoints and start up over a generated dataset, in a scratch data
+ * directory so no real server files are touched. Every benchmark starts from a
+ * full checkpoint of the dataset written during setup.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmarks
+{
+
+	@Param({ "10", "100" })
+	public int departments;
+
+	@Param({ "10" })
+	public int plansPerDepartment;
+
+	@Param({ "1000" })
+	public int nodesPerPlan;
+
+	private Path directory;
+	private ServerImplementation server;
+
+	/**
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("planner-bench");
+		System.setProperty("planner.dataDir", directory.toString());
+		DatasetGenerator generator = new DatasetGenerator();
+		generator.setDepartments(departments);
+		generator.setYearsPerDepartment(plansPerDepartment);
+		generator.setMaxNodes(nodesPerPlan);
+		server = generator.generate();
+		server.save();
+	}
+
+	/**
+	 * Makes the next save rewrite every file
+	 */
+	@Setup(Level.Invocation)
+	public void markAllChanged()
+	{
+		server.setDepartmentMap(server.getDepartmentMap());
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		server.close();
+		try (Stream<Path> files = Files.walk(directory))
+		{
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Full checkpoint. Plan bodies unchanged since the last one are copied from
+	 * the old department files without being decoded.
+	 */
+	@Benchmark
+	public void saveAll()
+	{
+		server.save();
+	}
+
+	/**
+	 * Start up from the checkpoint, reading only the department indexes
+	 *
+	 * @return server
+	 * @throws IOException
+	 */
+	@Benchmark
+	public ServerImplementation load() throws IOException
+	{
+		ServerImplementation loaded = ServerImplementation.load();
+		loaded.close();
+		return loaded;
+	}
+
+	/**
+	 * Start up followed by reading every plan body
+	 *
+	 * @return nodes read
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long loadAndReadPlans() throws IOException
+	{
+		ServerImplementation loaded = ServerImplementation.load();
+		long nodes = 0;
+		for (Department department : loaded.getDepartmentMap().values())
+		{
+			for (PlanFile plan : department.getPlanFileMap().values())
+			{
+				nodes += plan.getPlan().getNodeCount();
+			}
+		}
+		loaded.close();
+		return nodes;
+	}
+
+}
@@ -0,0 +1,104 @@
+package software_masters.planner_benchmarks;
+
+import java.rmi.RemoteException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software_masters.planner_networking.Node;
+import software_masters.planner_networking.Plan;
+
+/**
+ * Tree edits and deep comparison on plans of each type. Each addNode is undone
+ * by a removeNode so the plan stays the same size throughout.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanBenchmarks
+{
+
+	@Param({ "Centre", "VMOSA", "IowaState" })
+	public String type;
+
+	@Param({ "100", "10000" })
+	public int nodes;
+
+	private Plan plan;
+	private Plan copy;
+	private Node parent;
+	private Node deepest;
+
+	/**
+	 * @throws RemoteException
+	 */
+	@Setup
+	public void setUp() throws RemoteException
+	{
+		plan = DatasetGenerator.plan(type, 10, nodes, 40, new Random(DatasetGenerator.SEED));
+		copy = DatasetGenerator.plan(type, 10, nodes, 40, new Random(DatasetGenerator.SEED));
+		parent = plan.getRoot().getChildren().get(0);
+		deepest = parent;
+		while (!deepest.getChildren().isEmpty())
+		{
+			deepest = deepest.getChildren().get(deepest.getChildren().size() - 1);
+		}
+	}
+
+	/**
+	 * @return nodes in the plan afterwards
+	 * @throws RemoteException
+	 */
+	@Benchmark
+	public int addAndRemoveBranch() throws RemoteException
+	{
+		plan.addNode(parent);
+		plan.removeNode(parent.getChildren().get(parent.getChildren().size() - 1));
+		return plan.getNodeCount();
+	}
+
+	/**
+	 * @return depth of the deepest node in the first branch
+	 */
+	@Benchmark
+	public int depth()
+	{
+		return deepest.getDepth();
+	}
+
+	/**
+	 * @return true, the plans are built from the same seed
+	 */
+	@Benchmark
+	public boolean planEquals()
+	{
+		return plan.equals(copy);
+	}
+
+	/**
+	 * @return true, the plans are built from the same seed
+	 */
+	@Benchmark
+	public boolean nodeTestEquals()
+	{
+		return plan.getRoot().testEquals(copy.getRoot());
+	}
+
+}
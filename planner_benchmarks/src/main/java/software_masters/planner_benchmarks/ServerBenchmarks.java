@@ -0,0 +1,76 @@
+package software_masters.planner_benchmarks;
+
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software_masters.planner_networking.PlanFile;
+import software_masters.planner_networking.ServerImplementation;
+
+/**
+ * Listing calls made directly on the server, without RMI in between
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerBenchmarks
+{
+
+	@Param({ "10", "1000" })
+	public int departments;
+
+	@Param({ "20" })
+	public int plansPerDepartment;
+
+	private ServerImplementation server;
+
+	/**
+	 * @throws RemoteException
+	 */
+	@Setup
+	public void setUp() throws RemoteException
+	{
+		DatasetGenerator generator = new DatasetGenerator();
+		generator.setDepartments(departments);
+		generator.setYearsPerDepartment(plansPerDepartment);
+		generator.setMaxNodes(50);
+		server = generator.generate();
+	}
+
+	/**
+	 * @return plans of the first department
+	 */
+	@Benchmark
+	public Collection<PlanFile> listPlans()
+	{
+		return server.listPlans(DatasetGenerator.cookie(0, 0));
+	}
+
+	/**
+	 * @return the server's templates
+	 */
+	@Benchmark
+	public Collection<PlanFile> listPlanTemplates()
+	{
+		return server.listPlanTemplates();
+	}
+
+}
@@ -0,0 +1,163 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javafx.animation.PauseTransition;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+/**
+ * Runs calls to the server as Tasks on daemon threads and hands their results
+ * back on the FX thread. A task that takes longer than SHOW_AFTER shows a
+ * spinner and a Stop button over the view; a stopped task's result is dropped,
+ * though the server may still have done what it was asked.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class BackgroundWork
+{
+
+	private static final Duration SHOW_AFTER = Duration.millis(250);
+	private static final AtomicInteger RUNNING = new AtomicInteger();
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable ->
+	{
+		Thread thread = new Thread(runnable, "planner-gui-work");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final HashSet<Task<?>> tasks = new HashSet<Task<?>>();
+	/**
+	 * Covers the view and takes its clicks while a task runs
+	 */
+	private final StackPane overlay = new StackPane();
+	private final VBox progress = new VBox(8);
+	private final PauseTransition delay = new PauseTransition(SHOW_AFTER);
+
+	/**
+	 * Must be made on the FX thread
+	 */
+	public BackgroundWork()
+	{
+		Button stop = new Button("Stop");
+		stop.setId("stopButton");
+		stop.setOnAction(event -> cancelAll());
+		this.progress.setAlignment(Pos.CENTER);
+		this.progress.getChildren().addAll(new ProgressIndicator(), stop);
+		this.progress.setVisible(false);
+		this.overlay.getChildren().add(this.progress);
+		this.overlay.setVisible(false);
+		this.delay.setOnFinished(event -> this.progress.setVisible(!this.tasks.isEmpty()));
+	}
+
+	/**
+	 * Moves the overlay over a view about to be shown
+	 * 
+	 * @param scene
+	 *                  scene whose root is a StackPane holding the view
+	 */
+	public void cover(Scene scene)
+	{
+		StackPane pane = (StackPane) scene.getRoot();
+		if (this.overlay.getParent() != pane)
+		{
+			pane.getChildren().add(this.overlay);
+		}
+	}
+
+	/**
+	 * Runs work off the FX thread. Must be called on the FX thread.
+	 *
+	 * @param work
+	 *                   the blocking calls
+	 * @param done
+	 *                   given work's result on the FX thread
+	 * @param failed
+	 *                   given what work threw on the FX thread
+	 * @return the task, to cancel it
+	 */
+	public <T> Task<T> run(Callable<T> work, Consumer<T> done, Consumer<Throwable> failed)
+	{
+		Task<T> task = new Task<T>()
+		{
+			@Override
+			protected T call() throws Exception
+			{
+				return work.call();
+			}
+		};
+		task.stateProperty().addListener((value, before, after) ->
+		{
+			if (after == Worker.State.SUCCEEDED || after == Worker.State.FAILED || after == Worker.State.CANCELLED)
+			{
+				finished(task);// before the handlers, which may show a dialog
+			}
+		});
+		task.setOnSucceeded(event -> done.accept(task.getValue()));
+		task.setOnFailed(event -> failed.accept(task.getException()));
+		started(task);
+		this.executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Cancels every task still running
+	 */
+	public void cancelAll()
+	{
+		for (Task<?> task : new ArrayList<Task<?>>(this.tasks))
+		{
+			task.cancel();
+		}
+	}
+
+	/**
+	 * @return true while a task is running in any window, for tests waiting on
+	 *         the GUI
+	 */
+	public static boolean isWorking()
+	{
+		return RUNNING.get() > 0;
+	}
+
+	private void started(Task<?> task)
+	{
+		RUNNING.incrementAndGet();
+		this.tasks.add(task);
+		if (!this.overlay.isVisible())
+		{
+			this.overlay.setVisible(true);
+			this.delay.playFromStart();
+		}
+	}
+
+	private void finished(Task<?> task)
+	{
+		if (!this.tasks.remove(task))
+		{
+			return;
+		}
+		RUNNING.decrementAndGet();
+		if (this.tasks.isEmpty())
+		{
+			this.delay.stop();
+			this.progress.setVisible(false);
+			this.overlay.setVisible(false);
+		}
+	}
+
+}
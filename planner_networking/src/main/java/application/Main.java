@@ -1,23 +1,18 @@
 package application;
 
-import serverConnectionView.*;
-
-import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
+import javafx.concurrent.Task;
 import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
-import loginView.LoginViewController;
 import planEditView.PlanEditViewController;
-import planReadOnlyView.PlanReadOnlyViewController;
-import planSelectionView.PlanSelectionViewController;
 import software_masters.model.PlannerModel;
 
 /**
@@ -33,9 +28,17 @@ public class Main extends Application
 	 * @param args
 	 */
 
+	private static final String SERVER_CONNECTION_VIEW = "../serverConnectionView/serverConnectionView.fxml";
+	private static final String LOGIN_VIEW = "../loginView/loginView.fxml";
+	private static final String PLAN_SELECTION_VIEW = "../planSelectionView/planSelectionView.fxml";
+	private static final String PLAN_EDIT_VIEW = "../planEditView/planEditView.fxml";
+	private static final String PLAN_READ_ONLY_VIEW = "../planReadOnlyView/planReadOnlyView.fxml";
+
 	PlannerModel model;
 	Stage primaryStage;
 	Parent mainView;
+	BackgroundWork work;
+	ViewCache views;
 
 	public static void main(String[] args)
 	{
@@ -52,8 +55,11 @@ public class Main extends Application
 	{
 		this.primaryStage = primaryStage;
 		this.model = new PlannerModel();
+		this.work = new BackgroundWork();
+		this.views = new ViewCache();
 
 		this.showConnectToServer();
+		this.views.preload(LOGIN_VIEW, PLAN_SELECTION_VIEW, PLAN_EDIT_VIEW); // the views a session goes through next
 	}
 
 	/**
@@ -61,19 +67,8 @@ public class Main extends Application
 	 */
 	public void showConnectToServer()
 	{
-		FXMLLoader loader = new FXMLLoader();
-		loader.setLocation(Main.class.getResource("../serverConnectionView/serverConnectionView.fxml"));
-
-		try
-		{
-			mainView = loader.load();
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
-		ServerConnectionViewController cont = loader.getController();
-		cont.setApplication(this); // Allows controller to access showPlanSelectionView
+		ViewCache.View view = views.get(SERVER_CONNECTION_VIEW);
+		view.getController().setApplication(this); // Allows controller to access showPlanSelectionView
 
 		primaryStage.setOnCloseRequest((WindowEvent e) ->
 		{
@@ -81,11 +76,7 @@ public class Main extends Application
 
 		});
 
-		Scene s = new Scene(mainView);
-		primaryStage.setScene(s);
-
-		primaryStage.show();
-		primaryStage.sizeToScene();
+		show(view);
 	}
 
 	/**
@@ -93,19 +84,8 @@ public class Main extends Application
 	 */
 	public void showLoginView()
 	{
-		FXMLLoader loader = new FXMLLoader();
-		loader.setLocation(Main.class.getResource("../loginView/loginView.fxml"));
-
-		try
-		{
-			mainView = loader.load();
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
-		LoginViewController cont = loader.getController();
-		cont.setApplication(this); // Allows controller to access showPlanSelectionView
+		ViewCache.View view = views.get(LOGIN_VIEW);
+		view.getController().setApplication(this); // Allows controller to access showPlanSelectionView
 
 		primaryStage.setOnCloseRequest((WindowEvent e) ->
 		{
@@ -113,10 +93,7 @@ public class Main extends Application
 
 		});
 
-		Scene s = new Scene(mainView);
-		primaryStage.setScene(s);
-		primaryStage.show();
-		primaryStage.sizeToScene();
+		show(view);
 	}
 
 	/**
@@ -124,19 +101,8 @@ public class Main extends Application
 	 */
 	public void showPlanSelectionView()
 	{
-		FXMLLoader loader = new FXMLLoader();
-		loader.setLocation(Main.class.getResource("../planSelectionView/planSelectionView.fxml"));
-
-		try
-		{
-			mainView = loader.load();
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
-		PlanSelectionViewController cont = loader.getController();
-		cont.setApplication(this); // Allows controller to access showPlanEditView and showPlanReadOnlyView
+		ViewCache.View view = views.get(PLAN_SELECTION_VIEW);
+		view.getController().setApplication(this); // Allows controller to access showPlanEditView and showPlanReadOnlyView
 
 		primaryStage.setOnCloseRequest((WindowEvent e) ->
 		{
@@ -144,11 +110,7 @@ public class Main extends Application
 
 		});
 
-		Scene s = new Scene(mainView);
-		primaryStage.setScene(s);
-		primaryStage.sizeToScene();
-		primaryStage.show();
-
+		show(view);
 	}
 
 	/**
@@ -156,18 +118,8 @@ public class Main extends Application
 	 */
 	public void showPlanEditView()
 	{
-		FXMLLoader loader = new FXMLLoader();
-		loader.setLocation(Main.class.getResource("../planEditView/planEditView.fxml"));
-
-		try
-		{
-			mainView = loader.load();
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
-		PlanEditViewController cont = loader.getController();
+		ViewCache.View view = views.get(PLAN_EDIT_VIEW);
+		PlanEditViewController cont = (PlanEditViewController) view.getController();
 		cont.setApplication(this); // Allows controller to access showPlanSelectionView and showLoginView
 
 		primaryStage.setOnCloseRequest((WindowEvent e) ->
@@ -184,10 +136,7 @@ public class Main extends Application
 			}
 		});
 
-		Scene s = new Scene(mainView);
-		primaryStage.setScene(s);
-		primaryStage.show();
-		primaryStage.sizeToScene();
+		show(view);
 	}
 
 	/**
@@ -195,19 +144,8 @@ public class Main extends Application
 	 */
 	public void showPlanReadOnlyView()
 	{
-		FXMLLoader loader = new FXMLLoader();
-		loader.setLocation(Main.class.getResource("../planReadOnlyView/planReadOnlyView.fxml"));
-
-		try
-		{
-			mainView = loader.load();
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
-		PlanReadOnlyViewController cont = loader.getController();
-		cont.setApplication(this); // Allows controller to access showPlanSelectionView and showLoginView
+		ViewCache.View view = views.get(PLAN_READ_ONLY_VIEW);
+		view.getController().setApplication(this); // Allows controller to access showPlanSelectionView and showLoginView
 
 		primaryStage.setOnCloseRequest((WindowEvent e) ->
 		{
@@ -215,12 +153,40 @@ public class Main extends Application
 
 		});
 
-		Scene s = new Scene(mainView);
-		primaryStage.setScene(s);
+		show(view);
+	}
+
+	/**
+	 * Puts a view, already reset by its controller, in the window
+	 * 
+	 * @param view
+	 */
+	private void show(ViewCache.View view)
+	{
+		mainView = view.getRoot();
+		work.cover(view.getScene());
+		primaryStage.setScene(view.getScene());
 		primaryStage.show();
 		primaryStage.sizeToScene();
 	}
 
+	/**
+	 * Makes blocking calls to the server off the FX thread, covering the view
+	 * until they finish
+	 * 
+	 * @param call
+	 *                   the blocking calls
+	 * @param done
+	 *                   given call's result on the FX thread
+	 * @param failed
+	 *                   given what call threw on the FX thread
+	 * @return the task, to cancel it
+	 */
+	public <T> Task<T> runInBackground(Callable<T> call, Consumer<T> done, Consumer<Throwable> failed)
+	{
+		return work.run(call, done, failed);
+	}
+
 	/**
 	 * @return the model
 	 */
@@ -275,10 +241,7 @@ public class Main extends Application
 		Optional<ButtonType> result = alert.showAndWait();
 		if (result.get() == okButton)
 		{
-			if (cont.push())
-			{
-				primaryStage.close();
-			}
+			cont.push(primaryStage::close);
 		}
 		else
 			if (result.get() == noButton)
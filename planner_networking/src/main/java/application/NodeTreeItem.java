@@ -0,0 +1,115 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import software_masters.planner_networking.Node;
+
+/**
+ * Tree item for a plan node that only makes items for the node's children the
+ * first time they are asked for, so showing a plan costs one item per visible
+ * node. The items made are kept, so a branch collapsed and expanded again keeps
+ * what was selected and expanded below it.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class NodeTreeItem extends TreeItem<Node>
+{
+
+	private boolean childrenMade;
+
+	/**
+	 * @param node
+	 */
+	public NodeTreeItem(Node node)
+	{
+		super(node);
+	}
+
+	/**
+	 * @return items for the node's children, made now if this is the first time
+	 */
+	@Override
+	public ObservableList<TreeItem<Node>> getChildren()
+	{
+		if (!this.childrenMade)
+		{
+			this.childrenMade = true;
+			ArrayList<TreeItem<Node>> items = new ArrayList<TreeItem<Node>>();
+			for (Node child : getValue().getChildren())
+			{
+				items.add(new NodeTreeItem(child));
+			}
+			super.getChildren().setAll(items);
+		}
+		return super.getChildren();
+	}
+
+	/**
+	 * Brings the items for the node's children in line with the node after a
+	 * branch was added below it or removed from it. Items for children still
+	 * there are kept, with their selection and expansion, and only the items
+	 * that changed are inserted or removed, so the cost depends on the number of
+	 * children rather than the size of the plan. Does nothing if the items were
+	 * never made, since they will be made from the node when asked for.
+	 */
+	public void updateChildren()
+	{
+		if (!this.childrenMade)
+		{
+			return;
+		}
+		List<Node> nodes = getValue().getChildren();
+		Set<Node> present = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		present.addAll(nodes);
+		ObservableList<TreeItem<Node>> items = super.getChildren();
+		items.removeIf(item -> !present.contains(item.getValue()));
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			if (i >= items.size() || items.get(i).getValue() != nodes.get(i))
+			{
+				items.add(i, new NodeTreeItem(nodes.get(i)));
+			}
+		}
+	}
+
+	/**
+	 * @param node
+	 * @return the item made for one of the node's children, or null
+	 */
+	public TreeItem<Node> getChildItem(Node node)
+	{
+		for (TreeItem<Node> item : getChildren())
+		{
+			if (item.getValue() == node)
+			{
+				return item;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the node has no children, without making their items
+	 */
+	@Override
+	public boolean isLeaf()
+	{
+		return this.childrenMade ? super.getChildren().isEmpty() : getValue().getChildren().isEmpty();
+	}
+
+	/**
+	 * @return true once items for the node's children have been made
+	 */
+	public boolean isChildrenMade()
+	{
+		return this.childrenMade;
+	}
+
+}
@@ -0,0 +1,140 @@
+package application;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.layout.StackPane;
+
+/**
+ * Views loaded from FXML, each parsed once along with its controller and scene
+ * and shown again on later visits. Views can be loaded ahead of time on a
+ * background thread, which planner.gui.preload=false turns off; asking for one
+ * that is still loading waits for it.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class ViewCache
+{
+
+	static final boolean PRELOAD = Boolean.parseBoolean(System.getProperty("planner.gui.preload", "true"));
+
+	private static final ExecutorService PRELOADER = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "planner-view-preload");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final HashMap<String, CompletableFuture<View>> views = new HashMap<String, CompletableFuture<View>>();
+
+	/**
+	 * Starts loading views in the background, if preloading is on. Must be
+	 * called on the FX thread.
+	 * 
+	 * @param locations
+	 *                      FXML files, relative to Main
+	 */
+	public void preload(String... locations)
+	{
+		if (!PRELOAD)
+		{
+			return;
+		}
+		for (String location : locations)
+		{
+			if (!this.views.containsKey(location))
+			{
+				this.views.put(location, CompletableFuture.supplyAsync(() -> load(location), PRELOADER));
+			}
+		}
+	}
+
+	/**
+	 * Must be called on the FX thread
+	 * 
+	 * @param location
+	 *                     FXML file, relative to Main
+	 * @return the view, loaded now if it was not loaded before, or null if it
+	 *         could not be loaded
+	 */
+	public View get(String location)
+	{
+		CompletableFuture<View> loaded = this.views.get(location);
+		View view = loaded == null ? null : loaded.handle((done, failure) -> done).join();// retried here if it failed
+		if (view == null)
+		{
+			view = load(location);
+			if (view != null)
+			{
+				this.views.put(location, CompletableFuture.completedFuture(view));
+			}
+		}
+		return view;
+	}
+
+	private static View load(String location)
+	{
+		FXMLLoader loader = new FXMLLoader();
+		loader.setLocation(Main.class.getResource(location));
+		try
+		{
+			Parent root = loader.load();
+			return new View(root, loader.getController());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * A view's root, its controller, and the scene it is shown in
+	 */
+	public static final class View
+	{
+		private final Parent root;
+		private final ViewController controller;
+		private final Scene scene;
+
+		View(Parent root, ViewController controller)
+		{
+			this.root = root;
+			this.controller = controller;
+			this.scene = new Scene(new StackPane(root));
+		}
+
+		/**
+		 * @return the view as loaded from FXML
+		 */
+		public Parent getRoot()
+		{
+			return this.root;
+		}
+
+		/**
+		 * @return the view's controller
+		 */
+		public ViewController getController()
+		{
+			return this.controller;
+		}
+
+		/**
+		 * @return the scene showing the view, its root a StackPane with the view at
+		 *         the bottom
+		 */
+		public Scene getScene()
+		{
+			return this.scene;
+		}
+	}
+
+}
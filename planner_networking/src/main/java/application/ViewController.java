@@ -0,0 +1,21 @@
+package application;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public interface ViewController
+{
+
+	/**
+	 * Main loads each view once and shows it again on every visit, so the same
+	 * controller serves them all. This is called each time the view is about to
+	 * be shown: it hands over the application, and must reset whatever the view
+	 * still shows from the last visit.
+	 * 
+	 * @param application
+	 *                        main application
+	 */
+	void setApplication(Main application);
+
+}
@@ -1,41 +1,65 @@
 package loginView;
 
-import java.rmi.RemoteException;
-
 import application.Main;
+import application.ViewController;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
 import software_masters.model.PlannerModel;
 
-public class LoginViewController
+public class LoginViewController implements ViewController
 {
 	Main application;
 	@FXML
 	TextField usernameField;
 	@FXML
 	TextField passWordField;
+	private String defaultUsername;
+	private String defaultPassword;
+
+	/**
+	 * Remembers the credentials the view starts with
+	 */
+	@FXML
+	void initialize()
+	{
+		defaultUsername = usernameField.getText();
+		defaultPassword = passWordField.getText();
+	}
 
 	@FXML
 	void login(ActionEvent event)
 	{
-		try
-		{
-			application.getModel().login(usernameField.getText(), passWordField.getText());
-			application.showPlanSelectionView();
-		}
-		catch (IllegalArgumentException e)
+		String username = usernameField.getText();
+		String password = passWordField.getText();
+		application.runInBackground(() ->
 		{
-			application.sendError("invalid credentials");
-		}
-		catch (RemoteException e)
+			application.getModel().login(username, password);
+			return null;
+		}, done -> application.showPlanSelectionView(), failure ->
 		{
-			application.sendError("cannot connect to server");
-		}
+			if (failure instanceof IllegalArgumentException)
+			{
+				application.sendError("invalid credentials");
+			}
+			else
+			{
+				application.sendError("cannot connect to server");
+			}
+		});
 	}
 
+	/**
+	 * Lets the controller reach the application, and puts back the starting
+	 * credentials
+	 * 
+	 * @param application
+	 */
+	@Override
 	public void setApplication(Main application)
 	{
 		this.application = application;
+		usernameField.setText(defaultUsername);
+		passWordField.setText(defaultPassword);
 	}
 }
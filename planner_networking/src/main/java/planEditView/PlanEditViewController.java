@@ -4,6 +4,8 @@ import java.rmi.RemoteException;
 import java.util.Optional;
 
 import application.Main;
+import application.ViewController;
+import application.NodeTreeItem;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
@@ -13,8 +15,9 @@ import javafx.scene.control.TreeView;
 import javafx.scene.control.Alert.AlertType;
 import software_masters.model.PlannerModel;
 import software_masters.planner_networking.Node;
+import software_masters.planner_networking.PlanConflictException;
 
-public class PlanEditViewController
+public class PlanEditViewController implements ViewController
 {
 
 	Main application;
@@ -35,6 +38,7 @@ public class PlanEditViewController
 	 * 
 	 * @param application
 	 */
+	@Override
 	public void setApplication(Main application)
 	{
 		this.application = application;
@@ -63,8 +67,9 @@ public class PlanEditViewController
 			try
 			{
 				this.changeSection();
+				TreeItem<Node> parent = treeView.getSelectionModel().getSelectedItem().getParent();
 				model.removeBranch();
-				setTreeView();
+				updateBranch(parent);
 				isPushed = false;
 			}
 			catch (IllegalArgumentException e)
@@ -88,8 +93,9 @@ public class PlanEditViewController
 		try
 		{
 			this.changeSection();
+			TreeItem<Node> parent = treeView.getSelectionModel().getSelectedItem().getParent();
 			model.addBranch();
-			setTreeView();
+			updateBranch(parent);
 			isPushed = false;
 		}
 		catch (RemoteException e)
@@ -149,34 +155,60 @@ public class PlanEditViewController
 	 * Push the current business plan to the server
 	 */
 	@FXML
-	public boolean push()
+	public void push()
 	{
+		push(() ->
+		{
+		});
+	}
+
+	/**
+	 * Push the current business plan to the server off the FX thread
+	 * 
+	 * @param whenSaved
+	 *                      run on the FX thread once the plan is saved, not run if
+	 *                      saving fails
+	 */
+	public void push(Runnable whenSaved)
+	{
+		// set the year to which the user want
+		// This allow the user to decide which year they want to edit
+		// at editing time
+		changeSection();
 		try
 		{
-			// set the year to which the user want
-			// This allow the user to decide which year they want to edit
-			// at editing time
-			changeSection();
-			model.getCurrPlanFile().setYear(yearField.getText());
-			model.pushPlan(model.getCurrPlanFile());
-			isPushed = true;
+			Integer.parseInt(yearField.getText());// checked here, the server's own check reads as a refused save
 		}
 		catch (NumberFormatException e)
 		{
 			application.sendError("Invalid Year");
-			return false;
+			return;
 		}
-		catch (IllegalArgumentException e)
+		model.setYear(yearField.getText());
+		application.runInBackground(() ->
 		{
-			application.sendError("Cannot save changes to this plan");
-			return false;
-		}
-		catch (RemoteException e)
+			model.pushEdits();
+			return null;
+		}, done ->
 		{
-			application.sendError("Cannot connect to server");
-			return false;
-		}
-		return true;
+			isPushed = true;
+			whenSaved.run();
+		}, failure ->
+		{
+			if (failure instanceof PlanConflictException)
+			{
+				application.sendError("Someone else saved this plan first, reload it to see their changes");
+			}
+			else
+				if (failure instanceof IllegalArgumentException)
+				{
+					application.sendError("Cannot save changes to this plan");
+				}
+				else
+				{
+					application.sendError("Cannot connect to server");
+				}
+		});
 	}
 
 	/**
@@ -191,19 +223,31 @@ public class PlanEditViewController
 		populateFields();
 	}
 
+	/**
+	 * Updates just the items below parent after a branch was added there or
+	 * removed from there, keeping what is expanded, and selects the current node
+	 * 
+	 * @param parent
+	 *                   item of the parent of the branch added or removed
+	 */
+	private void updateBranch(TreeItem<Node> parent)
+	{
+		((NodeTreeItem) parent).updateChildren();
+		TreeItem<Node> current = ((NodeTreeItem) parent).getChildItem(model.getCurrNode());
+		treeView.getSelectionModel().select(current);
+		nameField.setText(model.getCurrNode().getName());
+		dataField.setText(model.getCurrNode().getData());
+	}
+
 	/**
 	 * @param root
-	 *                 build the treeview start from root node of business plan
+	 *                 build the treeview start from root node of business plan,
+	 *                 making items for the rest as branches are expanded
 	 * @return
 	 */
 	private TreeItem<Node> convertTree(Node root)
 	{
-		TreeItem<Node> newRoot = new TreeItem<Node>(root);
-		for (int i = 0; i < root.getChildren().size(); i++)
-		{
-			newRoot.getChildren().add(convertTree(root.getChildren().get(i)));
-		}
-		return newRoot;
+		return new NodeTreeItem(root);
 	}
 
 	/**
@@ -261,13 +305,13 @@ public class PlanEditViewController
 		Optional<ButtonType> result = alert.showAndWait();
 		if (result.get() == okButton)
 		{
-			if (this.push())
+			this.push(() ->
 			{
 				model.setCookie(null);
 				model.setCurrNode(null);
 				model.setCurrPlanFile(null);
 				application.showLoginView();
-			}
+			});
 		}
 		else
 			if (result.get() == noButton)
@@ -302,12 +346,12 @@ public class PlanEditViewController
 		Optional<ButtonType> result = alert.showAndWait();
 		if (result.get() == okButton)
 		{
-			if (this.push())
+			this.push(() ->
 			{
 				model.setCurrNode(null);
 				model.setCurrPlanFile(null);
 				application.showPlanSelectionView();
-			}
+			});
 		}
 		else
 			if (result.get() == noButton)
@@ -3,6 +3,8 @@ package planReadOnlyView;
 import java.rmi.RemoteException;
 
 import application.Main;
+import application.ViewController;
+import application.NodeTreeItem;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TreeItem;
@@ -10,7 +12,7 @@ import javafx.scene.control.TreeView;
 import software_masters.model.PlannerModel;
 import software_masters.planner_networking.Node;
 
-public class PlanReadOnlyViewController
+public class PlanReadOnlyViewController implements ViewController
 {
 	Main application;
 	PlannerModel model;
@@ -22,22 +24,37 @@ public class PlanReadOnlyViewController
 	TextField dataField;
 	@FXML
 	TextField yearField;
+	boolean resetting;
 
 	/**
 	 * Let controller to know view
 	 * 
 	 * @param application
 	 */
+	@Override
 	public void setApplication(Main application)
 	{
 		this.application = application;
 		model = this.application.getModel();
+		resetting = true;// the new root's selection is not a change to keep
 		setTreeView();
+		resetting = false;
+		populateFields();
+	}
+
+	/**
+	 * Shows each node as it is selected. Called once, when the view is loaded.
+	 */
+	@FXML
+	void initialize()
+	{
 		treeView.getSelectionModel().selectedItemProperty().addListener((v) ->
 		{
-			changeSection();
+			if (!resetting && treeView.getSelectionModel().getSelectedItem() != null)
+			{
+				changeSection();
+			}
 		});
-		populateFields();
 	}
 
 	/**
@@ -80,17 +97,13 @@ public class PlanReadOnlyViewController
 
 	/**
 	 * @param root
-	 *                 build the treeview start from root node of business plan
+	 *                 build the treeview start from root node of business plan,
+	 *                 making items for the rest as branches are expanded
 	 * @return
 	 */
 	private TreeItem<Node> convertTree(Node root)
 	{
-		TreeItem<Node> newRoot = new TreeItem<Node>(root);
-		for (int i = 0; i < root.getChildren().size(); i++)
-		{
-			newRoot.getChildren().add(convertTree(root.getChildren().get(i)));
-		}
-		return newRoot;
+		return new NodeTreeItem(root);
 	}
 
 	/**
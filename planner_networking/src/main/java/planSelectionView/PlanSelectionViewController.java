@@ -1,20 +1,23 @@
 package planSelectionView;
 
 import java.rmi.RemoteException;
+import java.util.function.Consumer;
 
 import application.Main;
+import application.ViewController;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.ListView;
 import software_masters.model.PlannerModel;
+import software_masters.planner_networking.PlanChange;
 import software_masters.planner_networking.PlanFile;
 
 /**
  * @author lee.kendall MVC Controller for the plan selection view
  */
-public class PlanSelectionViewController
+public class PlanSelectionViewController implements ViewController
 {
 
 	@FXML
@@ -33,6 +36,16 @@ public class PlanSelectionViewController
 	 */
 	@FXML
 	public void Logout(ActionEvent event)
+	{
+		// the server drops listeners it cannot reach, so log out either way
+		app.runInBackground(() ->
+		{
+			app.getModel().stopListening();
+			return null;
+		}, done -> loggedOut(), failure -> loggedOut());
+	}
+
+	private void loggedOut()
 	{
 		app.getModel().setCookie(null);
 		app.getModel().setCurrNode(null);
@@ -43,36 +56,59 @@ public class PlanSelectionViewController
 	/**
 	 * Allows controller to access showPlanEditView, showPlanReadOnlyView, and the
 	 * showLoginView methods in the main application. Also populates the listviews
-	 * with genTemplateList and genPlansList
+	 * with genTemplateList and genPlansList, which fetch side by side off the FX
+	 * thread, and has the server say when the department's plans change so the
+	 * list is refreshed without polling
 	 * 
 	 * @param app
 	 *                main application
 	 */
+	@Override
 	public void setApplication(Main app)
 	{
 		this.app = app;
+		planTemplateList.setItems(FXCollections.observableArrayList());// not the last user's plans
+		departmentPlanList.setItems(FXCollections.observableArrayList());
 		genPlansList();
 		genTemplateList();
+		this.app.runInBackground(() ->
+		{
+			listenForChanges(change -> Platform.runLater(this::genPlansList));
+			return null;
+		}, done ->
+		{
+		}, failure ->
+		{
+		});
 	}
 
 	/**
-	 * This method generates a list view of developer templates
-	 * 
-	 * @return
+	 * Sets what to do when the server reports a change, null to ignore changes.
+	 * Without a listener the list is only refreshed when the view is shown. Calls
+	 * the server, so keep it off the FX thread.
 	 */
-	public void genTemplateList()
+	private void listenForChanges(Consumer<PlanChange> handler)
 	{
-		ObservableList<PlanFile> items = null;
 		try
 		{
-			items = FXCollections.observableArrayList(this.app.getModel().listPlanTemplates());
+			this.app.getModel().listen(handler);
 		}
-		catch (RemoteException e)
+		catch (IllegalArgumentException | RemoteException e)
 		{
-			this.app.showConnectToServer();
+			System.out.println("ERROR: Could not listen for plan changes");
 		}
-		planTemplateList.setItems(items);
-		
+	}
+
+	/**
+	 * This method generates a list view of developer templates
+	 * 
+	 * @return
+	 */
+	public void genTemplateList()
+	{
+		this.app.runInBackground(this.app.getModel()::listPlanTemplates,
+				templates -> planTemplateList.setItems(FXCollections.observableArrayList(templates)),
+				failure -> this.app.showConnectToServer());
 	}
 
 	/**
@@ -82,17 +118,9 @@ public class PlanSelectionViewController
 	 */
 	public void genPlansList()
 	{
-		ObservableList<PlanFile> items = null;
-		try
-		{
-			items = FXCollections.observableArrayList(this.app.getModel().listPlans());
-		}
-		catch (RemoteException e)
-		{
-			this.app.showConnectToServer();
-		}
-		departmentPlanList.setItems(items);
-
+		this.app.runInBackground(this.app.getModel()::listPlans,
+				plans -> departmentPlanList.setItems(FXCollections.observableArrayList(plans)),
+				failure -> this.app.showConnectToServer());
 	}
 
 	/**
@@ -102,23 +130,16 @@ public class PlanSelectionViewController
 	public void openPlanTemplate()
 	{
 		PlanFile selected = this.planTemplateList.getSelectionModel().getSelectedItem();
-		try
-		{
-			this.app.getModel().getPlanOutline(selected.getYear());
-		}
-		catch (IllegalArgumentException e)
+		if (selected == null)
 		{
-			System.out.println("Invalid plan template");
-			this.app.showPlanSelectionView();
 			return;
 		}
-		catch (RemoteException e)
+		this.app.runInBackground(() ->
 		{
-			this.app.showConnectToServer();
-			return;
-		}
-		this.app.showPlanEditView();
-		return;
+			listenForChanges(null);
+			this.app.getModel().getPlanOutline(selected.getYear());
+			return null;
+		}, done -> this.app.showPlanEditView(), this::openFailed);
 	}
 
 	/**
@@ -128,31 +149,38 @@ public class PlanSelectionViewController
 	public void openPlan()
 	{
 		PlanFile selected = this.departmentPlanList.getSelectionModel().getSelectedItem();
-		try
-		{
-			this.app.getModel().getPlan(selected.getYear());
-		}
-		catch (IllegalArgumentException e)
+		if (selected == null)
 		{
-			System.out.println("Invalid plan template");
-			this.app.showPlanSelectionView();
 			return;
 		}
-		catch (RemoteException e)
+		this.app.runInBackground(() ->
 		{
-			this.app.showConnectToServer();
-			return;
-		}
+			listenForChanges(null);
+			this.app.getModel().getPlan(selected.getYear());
+			return null;
+		}, done ->
+		{
+			if (selected.isCanEdit())
+			{
+				this.app.showPlanEditView();
+			}
+			else
+			{
+				this.app.showPlanReadOnlyView();
+			}
+		}, this::openFailed);
+	}
 
-		if (selected.isCanEdit())
+	private void openFailed(Throwable failure)
+	{
+		if (failure instanceof IllegalArgumentException)
 		{
-			this.app.showPlanEditView();
-			return;
+			System.out.println("Invalid plan template");
+			this.app.showPlanSelectionView();
 		}
 		else
 		{
-			this.app.showPlanReadOnlyView();
-			return;
+			this.app.showConnectToServer();
 		}
 	}
 
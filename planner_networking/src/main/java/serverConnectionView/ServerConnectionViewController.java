@@ -1,45 +1,63 @@
 package serverConnectionView;
 
-import java.rmi.NotBoundException;
-import java.rmi.RemoteException;
-
 import application.Main;
+import application.ViewController;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
 
-public class ServerConnectionViewController
+public class ServerConnectionViewController implements ViewController
 {
 	Main application;
 	@FXML
 	TextField ipAddress;
 	@FXML
 	TextField port;
+	private String defaultIpAddress;
+	private String defaultPort;
+
+	/**
+	 * Remembers the address the view starts with
+	 */
+	@FXML
+	void initialize()
+	{
+		defaultIpAddress = ipAddress.getText();
+		defaultPort = port.getText();
+	}
 
 	@FXML
 	public void connect()
 	{
+		String ip = ipAddress.getText();
+		int portNumber;
 		try
 		{
-			application.getModel().connectToServer(ipAddress.getText(), Integer.parseInt(port.getText()));
-			application.showLoginView();
+			portNumber = Integer.parseInt(port.getText());
 		}
 		catch (NumberFormatException e)
 		{
 			application.sendError("cannot connect to server");
+			return;
 		}
-		catch (RemoteException e)
+		application.runInBackground(() ->
 		{
-			application.sendError("cannot connect to server");
-		}
-		catch (NotBoundException e)
-		{
-			application.sendError("cannot connect to server");
-		}
+			application.getModel().connectToServer(ip, portNumber);
+			return null;
+		}, done -> application.showLoginView(), failure -> application.sendError("cannot connect to server"));
 	}
 
+	/**
+	 * Lets the controller reach the application, and puts back the starting
+	 * address
+	 * 
+	 * @param application
+	 */
+	@Override
 	public void setApplication(Main application)
 	{
 		this.application = application;
+		ipAddress.setText(defaultIpAddress);
+		port.setText(defaultPort);
 	}
 
 }
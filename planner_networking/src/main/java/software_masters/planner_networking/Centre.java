@@ -40,7 +40,7 @@ public class Centre extends Plan
 	 *                   parent of node that needs to be added
 	 * @return boolean true if added
 	 */
-	public boolean addNode(Node parent) throws RemoteException, IllegalArgumentException
+	protected boolean insertNode(Node parent) throws RemoteException, IllegalArgumentException
 	{
 		if (parent == null)
 		{
@@ -51,10 +51,7 @@ public class Centre extends Plan
 			for (int i = index_depth(parent) + 1; i < this.getList().size(); i++)
 			{
 
-				Node newNode = new Node(parent, this.getList().get(i), null, null);
-
-				parent.addChild(newNode);
-				parent = newNode;
+				parent = newChild(parent, this.getList().get(i));
 
 			}
 			return true;
@@ -71,7 +68,7 @@ public class Centre extends Plan
 	 *                       node to be removed
 	 * @return boolean true is removed
 	 */
-	public boolean removeNode(Node nodeRemove) throws IllegalArgumentException
+	protected boolean deleteNode(Node nodeRemove) throws IllegalArgumentException
 
 	{
 		if (nodeRemove == null)
@@ -94,8 +91,7 @@ public class Centre extends Plan
 				}
 				else
 				{
-					nodeRemove.getParent().removeChild(nodeRemove);
-					nodeRemove.setParent(null);
+					detach(nodeRemove);
 
 					return true;
 
@@ -4,7 +4,14 @@ import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * @author lee kendall and wesley murray
@@ -18,10 +25,42 @@ public class Client
 	 * methods for retrieving and editing business plans, keeping track of the
 	 * user's cookie after login.
 	 */
-	private String cookie;
-	private PlanFile currPlanFile;
-	private Node currNode;
-	private Server server;
+	private volatile String cookie;
+	private volatile PlanFile currPlanFile;
+	private volatile Node currNode;
+	private volatile Server server;
+
+	/**
+	 * Changes made to currPlanFile since it was fetched or last pushed. Only
+	 * tracked for plans fetched with getPlan; new plans from an outline are
+	 * pushed whole. These, the current plan and node, and the listener only
+	 * change while holding the lock on the client, so calls from the GUI and
+	 * from background threads see them whole. Calls that only read the cookie
+	 * and server, such as listPlans, take no lock and never wait on a slow call.
+	 */
+	private ArrayList<PlanEdit> pendingEdits = new ArrayList<PlanEdit>();
+	private String baseYear;
+	private long baseVersion;
+
+	/**
+	 * Plans, plan lists and templates fetched from the server, as they were on
+	 * the server. getPlan hands out a copy, so edits never reach the cache.
+	 */
+	private final ClientCache cache = new ClientCache();
+
+	/**
+	 * Listener registered with the server by listen, and the stub the server
+	 * calls it through
+	 */
+	private ChangeListener listener;
+	private PlanListener listenerStub;
+
+	/**
+	 * Completes once the last async call that changes what the client holds has
+	 * finished, so the next one can start
+	 */
+	private CompletableFuture<Void> lane = CompletableFuture.completedFuture(null);
+	private final Object laneLock = new Object();
 
 	/**
 	 * Default constructor.
@@ -53,6 +92,7 @@ public class Client
 		Registry registry = LocateRegistry.getRegistry(hostName, port);
 		Server stub = (Server) registry.lookup("PlannerServer");
 		this.server = stub;
+		this.cache.clear();
 	}
 
 	/**
@@ -63,52 +103,157 @@ public class Client
 	 * @return
 	 * @throws IllegalArgumentException
 	 */
-	public void login(String username, String password) throws IllegalArgumentException, RemoteException
+	public synchronized void login(String username, String password) throws IllegalArgumentException, RemoteException
 	{
+		stopListening();
 		this.currPlanFile = null;
 		this.currNode = null;
+		stopTracking();
 		this.cookie = server.logIn(username, password);
 	}
 
 	/**
 	 * Returns planFile object from the user's department given a year. Throws
-	 * exception if that planFile doesn't exist.
+	 * exception if that planFile doesn't exist. The plan is only downloaded if it
+	 * changed since this client last fetched it, and while the client listens
+	 * for changes the server is not asked at all until one comes in.
 	 * 
 	 * @param year
 	 * @return
 	 * @throws IllegalArgumentException
 	 */
-	public void getPlan(String year) throws IllegalArgumentException, RemoteException
+	public synchronized void getPlan(String year) throws IllegalArgumentException, RemoteException
 	{
-		this.currPlanFile = server.getPlan(year, this.cookie);
+		PlanFile known = this.cache.getPlan(this.cookie, year);
+		if (known == null || !this.cache.isFresh(this.cookie, year))
+		{
+			long stamp = this.cache.getChangeCount();
+			PlanFile reply = server.getPlanIfModified(year, known == null ? -1 : known.getVersion(), this.cookie);
+			if (known == null || reply.getPlan() != null)
+			{
+				known = reply;
+			}
+			else
+			{
+				known = known.withCanEdit(reply.isCanEdit());// flagging a plan leaves its version alone
+			}
+			this.cache.putPlan(this.cookie, known, stamp);
+		}
+		this.currPlanFile = known.copy();
 		this.currNode = this.currPlanFile.getPlan().getRoot();
+		this.pendingEdits.clear();
+		this.baseYear = year;
+		this.baseVersion = this.currPlanFile.getVersion();
 	}
 
 	/**
 	 * Returns a blank plan outline given a name. Throws exception if the plan
-	 * outline doesn't exist.
+	 * outline doesn't exist. Each outline is only downloaded once a session.
 	 * 
 	 * @param name
 	 * @return
 	 * @throws IllegalArgumentException
 	 */
-	public void getPlanOutline(String name) throws IllegalArgumentException, RemoteException
+	public synchronized void getPlanOutline(String name) throws IllegalArgumentException, RemoteException
 	{
-		this.currPlanFile = server.getPlanOutline(name, this.cookie);
+		PlanFile outline = this.cache.getOutline(name);
+		if (outline == null)
+		{
+			outline = server.getPlanOutline(name, this.cookie).copy();// a local server hands out its own
+			this.cache.putOutline(name, outline);
+		}
+		this.currPlanFile = outline.copy();
 		this.currNode = this.currPlanFile.getPlan().getRoot();
+		stopTracking();
 	}
 
 	/**
 	 * Saves planFile to the user's department if that planFile is marked as
 	 * editable. If not editable, an exception is thrown. An exception is also
-	 * thrown if a newly created planFile is not assigned a year.
+	 * thrown if a newly created planFile is not assigned a year. If someone else
+	 * saved the plan after it was loaded a PlanConflictException is thrown and
+	 * nothing is saved; fetch the plan again to see their changes. On success the
+	 * planFile takes the new version, so it can be pushed again.
 	 * 
 	 * @param plan
 	 * @throws IllegalArgumentException
+	 * @throws PlanConflictException
 	 */
-	public void pushPlan(PlanFile plan) throws IllegalArgumentException, RemoteException
+	public synchronized void pushPlan(PlanFile plan) throws IllegalArgumentException, RemoteException
 	{
-		server.savePlan(plan, this.cookie);
+		long stamp = this.cache.getChangeCount();
+		long version = server.savePlan(plan, this.cookie);
+		plan.setVersion(version);
+		this.cache.invalidatePlanList(this.cookie);// the year may be new
+		if (plan == this.currPlanFile && this.baseYear != null)
+		{
+			pushed(version, stamp);
+		}
+	}
+
+	/**
+	 * Saves the changes made to the current planFile. A plan fetched with getPlan
+	 * sends only the edits made since it was fetched or last pushed; anything
+	 * else is pushed whole.
+	 * 
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void pushEdits() throws IllegalArgumentException, RemoteException
+	{
+		if (this.baseYear == null)
+		{
+			pushPlan(this.currPlanFile);
+			return;
+		}
+		long stamp = this.cache.getChangeCount();
+		long version = server.editPlan(this.baseYear, this.baseVersion, this.pendingEdits, this.cookie);
+		this.cache.invalidatePlanList(this.cookie);
+		pushed(version, stamp);
+	}
+
+	/**
+	 * Makes the current planFile, now saved at version, the base for the next
+	 * edits
+	 * 
+	 * @param stamp
+	 *                  the cache's change count from before the save
+	 */
+	private void pushed(long version, long stamp)
+	{
+		this.pendingEdits.clear();
+		this.baseYear = this.currPlanFile.getYear();
+		this.baseVersion = version;
+		this.currPlanFile.setVersion(version);
+		this.cache.putPlan(this.cookie, this.currPlanFile.copy(), stamp);
+	}
+
+	/**
+	 * @return copy of the edits not yet pushed
+	 */
+	public synchronized List<PlanEdit> getPendingEdits()
+	{
+		return new ArrayList<PlanEdit>(this.pendingEdits);
+	}
+
+	/**
+	 * Records an edit to push later, if edits are being tracked
+	 */
+	private void recordEdit(PlanEdit edit)
+	{
+		if (this.baseYear != null)
+		{
+			this.pendingEdits.add(edit);
+		}
+	}
+
+	/**
+	 * Goes back to pushing the current planFile whole
+	 */
+	private void stopTracking()
+	{
+		this.pendingEdits.clear();
+		this.baseYear = null;
 	}
 
 	/**
@@ -161,9 +306,11 @@ public class Client
 	 * @throws IllegalArgumentException
 	 * @throws RemoteException
 	 */
-	public void addBranch() throws IllegalArgumentException, RemoteException
+	public synchronized void addBranch() throws IllegalArgumentException, RemoteException
 	{
-		this.currPlanFile.getPlan().addNode(this.currNode.getParent());
+		Node parent = this.currNode.getParent();
+		this.currPlanFile.getPlan().addNode(parent);
+		recordEdit(PlanEdit.addBranch(parent));
 	}
 
 	/**
@@ -171,19 +318,306 @@ public class Client
 	 * 
 	 * @throws IllegalArgumentException
 	 */
-	public void removeBranch() throws IllegalArgumentException
+	public synchronized void removeBranch() throws IllegalArgumentException
 	{
 		Node temp = this.currNode.getParent();
+		PlanEdit edit = temp == null ? null : PlanEdit.removeBranch(this.currNode);
 		this.currPlanFile.getPlan().removeNode(this.currNode);
+		recordEdit(edit);
 		this.currNode = temp.getChildren().get(0);
 	}
 
+	/**
+	 * Adds a branch below the current node's parent on the server straight
+	 * away, and then to the current planFile. Unlike addBranch nothing is left to
+	 * push, and only the new branch comes back rather than the plan. This and
+	 * the other send methods address nodes by id, so they apply whatever else
+	 * has been saved since the plan was fetched; the planFile only takes the new
+	 * version if nothing else had changed, on either side.
+	 * 
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void sendAddBranch() throws IllegalArgumentException, RemoteException
+	{
+		Node parent = this.currNode.getParent();
+		if (parent == null)
+		{
+			throw new IllegalArgumentException("Cannot add a branch next to the root");
+		}
+		long stamp = this.cache.getChangeCount();
+		merge(server.addBranch(trackedYear(), parent.getId(), this.cookie), stamp);
+	}
+
+	/**
+	 * Removes the current node's branch on the server straight away, and then
+	 * from the current planFile
+	 * 
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void sendRemoveBranch() throws IllegalArgumentException, RemoteException
+	{
+		Node parent = this.currNode.getParent();
+		long stamp = this.cache.getChangeCount();
+		merge(server.removeBranch(trackedYear(), this.currNode.getId(), this.cookie), stamp);
+		if (parent != null && !parent.getChildren().isEmpty())
+		{
+			this.currNode = parent.getChildren().get(0);
+		}
+	}
+
+	/**
+	 * Sets the current node's data on the server straight away
+	 * 
+	 * @param data
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void sendData(String data) throws IllegalArgumentException, RemoteException
+	{
+		long stamp = this.cache.getChangeCount();
+		merge(server.setNodeData(trackedYear(), this.currNode.getId(), data, this.cookie), stamp);
+	}
+
+	/**
+	 * Sets the current node's name on the server straight away
+	 * 
+	 * @param name
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void sendName(String name) throws IllegalArgumentException, RemoteException
+	{
+		long stamp = this.cache.getChangeCount();
+		merge(server.setNodeName(trackedYear(), this.currNode.getId(), name, this.cookie), stamp);
+	}
+
+	/**
+	 * Moves the current node's branch under newParent on the server straight
+	 * away, and then in the current planFile
+	 * 
+	 * @param newParent
+	 *                      node at the same level as the current node's parent
+	 * @param position
+	 *                      index among newParent's children once moved
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void sendMoveBranch(Node newParent, int position)
+			throws IllegalArgumentException, RemoteException
+	{
+		long stamp = this.cache.getChangeCount();
+		merge(server.moveBranch(trackedYear(), this.currNode.getId(), newParent.getId(), position, this.cookie),
+				stamp);
+	}
+
+	/**
+	 * Leases the current node and everything below it, so nobody else can edit
+	 * that branch until the lease is released or runs out. Renew it before then
+	 * to keep it.
+	 * 
+	 * @return time the lease ends unless renewed, in milliseconds since the epoch
+	 * @throws IllegalArgumentException
+	 * @throws LeaseConflictException
+	 *                                      if someone else holds a lease that
+	 *                                      overlaps it
+	 * @throws RemoteException
+	 */
+	public synchronized long acquireLease() throws IllegalArgumentException, RemoteException
+	{
+		return server.acquireLease(trackedYear(), this.currNode.getId(), this.cookie);
+	}
+
+	/**
+	 * @return time the lease on the current node now ends, in milliseconds since
+	 *         the epoch
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized long renewLease() throws IllegalArgumentException, RemoteException
+	{
+		return server.renewLease(trackedYear(), this.currNode.getId(), this.cookie);
+	}
+
+	/**
+	 * Gives up the lease on the current node
+	 * 
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void releaseLease() throws IllegalArgumentException, RemoteException
+	{
+		server.releaseLease(trackedYear(), this.currNode.getId(), this.cookie);
+	}
+
+	/**
+	 * Has the server tell handler about every change to the department's plans,
+	 * in place of polling listPlans or getPlan. Calls come from an RMI thread.
+	 * Calling again only swaps the handler; a null handler ignores changes.
+	 * While listening, getPlan and listPlans are answered from the cache until
+	 * a change comes in for them.
+	 * 
+	 * @param handler
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public synchronized void listen(Consumer<PlanChange> handler) throws IllegalArgumentException, RemoteException
+	{
+		if (this.listener == null)
+		{
+			ChangeListener created = new ChangeListener(this.cache, this.cookie);
+			PlanListener stub = (PlanListener) UnicastRemoteObject.exportObject(created, 0);
+			try
+			{
+				server.addPlanListener(stub, this.cookie);
+			}
+			catch (IllegalArgumentException | RemoteException e)
+			{
+				UnicastRemoteObject.unexportObject(created, true);
+				throw e;
+			}
+			this.listener = created;
+			this.listenerStub = stub;
+			this.cache.setListening(true);
+		}
+		this.listener.handler = handler;
+	}
+
+	/**
+	 * Stops the server calling the handler given to listen
+	 * 
+	 * @throws RemoteException
+	 */
+	public synchronized void stopListening() throws RemoteException
+	{
+		if (this.listener == null)
+		{
+			return;
+		}
+		try
+		{
+			server.removePlanListener(this.listenerStub, this.cookie);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// logged out; the server drops the listener once it cannot reach it
+		}
+		finally
+		{
+			this.cache.setListening(false);
+			UnicastRemoteObject.unexportObject(this.listener, true);
+			this.listener = null;
+			this.listenerStub = null;
+		}
+	}
+
+	/**
+	 * Receives changes from the server, marks what they affect in the cache as
+	 * stale and hands them to the current handler
+	 */
+	private static class ChangeListener implements PlanListener
+	{
+		final ClientCache cache;
+		final String owner;
+		volatile Consumer<PlanChange> handler;
+
+		ChangeListener(ClientCache cache, String owner)
+		{
+			this.cache = cache;
+			this.owner = owner;
+		}
+
+		@Override
+		public void planChanged(PlanChange change)
+		{
+			this.cache.changed(this.owner, change);
+			Consumer<PlanChange> current = this.handler;
+			if (current != null)
+			{
+				current.accept(change);
+			}
+		}
+	}
+
+	/**
+	 * @return year the current planFile was fetched as
+	 */
+	private String trackedYear()
+	{
+		if (this.baseYear == null)
+		{
+			throw new IllegalArgumentException("Plan must be fetched from the server first");
+		}
+		return this.baseYear;
+	}
+
+	/**
+	 * Applies what one of the server's node id edits did to the current planFile.
+	 * A node it already has takes the name, data and place the server gave it;
+	 * a new branch is added as sent; a removed one is taken out.
+	 */
+	private void merge(NodeUpdate update, long stamp)
+	{
+		Plan plan = this.currPlanFile.getPlan();
+		Node local = plan.getNode(update.getNodeId());
+		Node parent = plan.getNode(update.getParentId());
+		if (update.getNode() == null)
+		{
+			if (local != null && local.getParent() != null)
+			{
+				plan.detach(local);
+			}
+		}
+		else if (local == null)
+		{
+			if (parent != null)
+			{
+				plan.attach(parent, update.getPosition(), update.getNode());
+			}
+		}
+		else
+		{
+			local.setName(update.getNode().getName());
+			local.setData(update.getNode().getData());
+			if (parent != null && (local.getParent() != parent
+					|| parent.getChildren().indexOf(local) != update.getPosition()))
+			{
+				plan.detach(local);
+				plan.attach(parent, update.getPosition(), local);
+			}
+		}
+		plan.setLastNodeId(Math.max(plan.getLastNodeId(), update.getLastNodeId()));
+		if (this.pendingEdits.isEmpty() && update.getVersion() == this.baseVersion + 1)
+		{
+			pushed(update.getVersion(), stamp);
+		}
+	}
+
+	/**
+	 * @return call counts and latencies for each server method, admins only
+	 * @throws IllegalArgumentException
+	 * @throws RemoteException
+	 */
+	public String getServerStats() throws IllegalArgumentException, RemoteException
+	{
+		return server.getServerStats(this.cookie);
+	}
+
 	/**
 	 * @return collection of planfiles associated with the client's department
 	 */
 	public Collection<PlanFile> listPlans() throws RemoteException
 	{
-		return server.listPlans(this.cookie);
+		String owner = this.cookie;// read once, a login may change it meanwhile
+		Collection<PlanFile> list = this.cache.getPlanList(owner);
+		if (list == null)
+		{
+			long stamp = this.cache.getChangeCount();
+			list = server.listPlans(owner);
+			this.cache.putPlanList(owner, list, stamp);
+		}
+		return new ArrayList<PlanFile>(list);
 	}
 
 	/**
@@ -191,7 +625,159 @@ public class Client
 	 */
 	public Collection<PlanFile> listPlanTemplates() throws RemoteException
 	{
-		return server.listPlanTemplates();
+		Collection<PlanFile> templates = this.cache.getTemplates();
+		if (templates == null)
+		{
+			templates = server.listPlanTemplates();
+			this.cache.putTemplates(templates);
+		}
+		return new ArrayList<PlanFile>(templates);
+	}
+
+	/*
+	 * Async versions of the calls above, run on ClientExecutor so the caller
+	 * does not wait on the server. Calls that change the current plan, or who
+	 * the client is logged in as, run one at a time in the order they were made;
+	 * the others start straight away, so chain them on the future of any call
+	 * they depend on. Cancelling a future before its call starts means the call
+	 * is never made. Blocking calls may be made meanwhile from any thread, but
+	 * are not ordered with these.
+	 */
+
+	/**
+	 * @param username
+	 * @param password
+	 * @return completes once logged in
+	 */
+	public CompletableFuture<Void> loginAsync(String username, String password)
+	{
+		return inOrder(() ->
+		{
+			login(username, password);
+			return null;
+		});
+	}
+
+	/**
+	 * @param year
+	 * @return the plan, which is also the current planFile
+	 */
+	public CompletableFuture<PlanFile> getPlanAsync(String year)
+	{
+		return inOrder(() ->
+		{
+			synchronized (this)// so the result is the planFile this call left current
+			{
+				getPlan(year);
+				return this.currPlanFile;
+			}
+		});
+	}
+
+	/**
+	 * @param name
+	 * @return the outline, which is also the current planFile
+	 */
+	public CompletableFuture<PlanFile> getPlanOutlineAsync(String name)
+	{
+		return inOrder(() ->
+		{
+			synchronized (this)
+			{
+				getPlanOutline(name);
+				return this.currPlanFile;
+			}
+		});
+	}
+
+	/**
+	 * @param plan
+	 * @return the version the plan was saved at
+	 */
+	public CompletableFuture<Long> pushPlanAsync(PlanFile plan)
+	{
+		return inOrder(() ->
+		{
+			pushPlan(plan);
+			return plan.getVersion();
+		});
+	}
+
+	/**
+	 * @return the version the current planFile was saved at
+	 */
+	public CompletableFuture<Long> pushEditsAsync()
+	{
+		return inOrder(() ->
+		{
+			synchronized (this)
+			{
+				pushEdits();
+				return this.currPlanFile.getVersion();
+			}
+		});
+	}
+
+	/**
+	 * @return collection of planfiles associated with the client's department
+	 */
+	public CompletableFuture<Collection<PlanFile>> listPlansAsync()
+	{
+		return anyOrder(this::listPlans);
+	}
+
+	/**
+	 * @return collection of plan templates held by the server
+	 */
+	public CompletableFuture<Collection<PlanFile>> listPlanTemplatesAsync()
+	{
+		return anyOrder(this::listPlanTemplates);
+	}
+
+	/**
+	 * @param departmentName
+	 * @param year
+	 * @param canEdit
+	 * @return completes once the plan is flagged
+	 */
+	public CompletableFuture<Void> flagPlanAsync(String departmentName, String year, boolean canEdit)
+	{
+		return anyOrder(() ->
+		{
+			flagPlan(departmentName, year, canEdit);
+			return null;
+		});
+	}
+
+	/**
+	 * @return call counts and latencies for each server method, admins only
+	 */
+	public CompletableFuture<String> getServerStatsAsync()
+	{
+		return anyOrder(this::getServerStats);
+	}
+
+	/**
+	 * Runs call after the previous call queued this way
+	 */
+	private <T> CompletableFuture<T> inOrder(Callable<T> call)
+	{
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		synchronized (this.laneLock)// not the client's lock, which a running call may hold
+		{
+			this.lane = ClientExecutor.runAfter(this.lane, call, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Runs call as soon as a thread is free
+	 */
+	private <T> CompletableFuture<T> anyOrder(Callable<T> call)
+	{
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		ClientExecutor.runAfter(CompletableFuture.completedFuture(null), call, result);
+		return result;
 	}
 
 	/**
@@ -199,8 +785,12 @@ public class Client
 	 * 
 	 * @param data
 	 */
-	public void editData(String data)
+	public synchronized void editData(String data)
 	{
+		if (!Objects.equals(data, this.currNode.getData()))
+		{
+			recordEdit(PlanEdit.setData(this.currNode, data));
+		}
 		this.currNode.setData(data);
 	}
 
@@ -208,8 +798,12 @@ public class Client
 	 * @param name
 	 *                 to set node title to
 	 */
-	public void editName(String name)
+	public synchronized void editName(String name)
 	{
+		if (!Objects.equals(name, this.currNode.getName()))
+		{
+			recordEdit(PlanEdit.setName(this.currNode, name));
+		}
 		this.currNode.setName(name);
 	}
 
@@ -224,8 +818,12 @@ public class Client
 	/**
 	 * @param year
 	 */
-	public void setYear(String year)
+	public synchronized void setYear(String year)
 	{
+		if (!Objects.equals(year, this.currPlanFile.getYear()))
+		{
+			recordEdit(PlanEdit.setYear(year));
+		}
 		this.currPlanFile.setYear(year);
 	}
 
@@ -258,8 +856,12 @@ public class Client
 	 * @param currPlanFile
 	 *                         the currPlanFile to set
 	 */
-	public void setCurrPlanFile(PlanFile currPlanFile)
+	public synchronized void setCurrPlanFile(PlanFile currPlanFile)
 	{
+		if (currPlanFile != this.currPlanFile)
+		{
+			stopTracking();
+		}
 		this.currPlanFile = currPlanFile;
 	}
 
@@ -275,7 +877,7 @@ public class Client
 	 * @param currNode
 	 *                     the currNode to set
 	 */
-	public void setCurrNode(Node currNode)
+	public synchronized void setCurrNode(Node currNode)
 	{
 		this.currNode = currNode;
 	}
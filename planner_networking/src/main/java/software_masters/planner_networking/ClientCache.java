@@ -0,0 +1,268 @@
+package software_masters.planner_networking;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * What a Client has fetched from its server: plans, plan lists and templates.
+ * An entry is read without asking the server while the client listens and no
+ * change has come in for it, or for freshMillis after it was last checked if
+ * the client is not listening.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class ClientCache
+{
+
+	static final long FRESH_MILLIS = Long.getLong("planner.client.freshMillis", 0);
+
+	/**
+	 * Plans and lists are filed under the cookie they were fetched with, since
+	 * every account belongs to exactly one department and the client is never
+	 * told which
+	 */
+	private final ConcurrentHashMap<String, Entry<PlanFile>> plans = new ConcurrentHashMap<String, Entry<PlanFile>>();
+	private final ConcurrentHashMap<String, Entry<Collection<PlanFile>>> planLists = new ConcurrentHashMap<String, Entry<Collection<PlanFile>>>();
+	private final ConcurrentHashMap<String, PlanFile> outlines = new ConcurrentHashMap<String, PlanFile>();
+	private final AtomicLong changeCount = new AtomicLong();
+	private volatile Collection<PlanFile> templates;
+	private volatile boolean listening;
+	private final long freshMillis;
+	private final LongSupplier clock;
+
+	public ClientCache()
+	{
+		this(FRESH_MILLIS, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param freshMillis
+	 *                        how long an entry is trusted while not listening
+	 * @param clock
+	 *                        current time in milliseconds
+	 */
+	public ClientCache(long freshMillis, LongSupplier clock)
+	{
+		this.freshMillis = freshMillis;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param owner
+	 *                  cookie the plan was fetched with
+	 * @param year
+	 * @return last copy fetched, fresh or not, or null
+	 */
+	public PlanFile getPlan(String owner, String year)
+	{
+		Entry<PlanFile> entry = plans.get(keyOf(owner, year));
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * @param owner
+	 * @param year
+	 * @return true if the copy held can be used without asking the server
+	 */
+	public boolean isFresh(String owner, String year)
+	{
+		return isFresh(plans.get(keyOf(owner, year)));
+	}
+
+	/**
+	 * @return stamp to pass to putPlan or putPlanList, taken before asking the
+	 *         server
+	 */
+	public long getChangeCount()
+	{
+		return changeCount.get();
+	}
+
+	/**
+	 * Holds a copy just fetched or checked against the server. The caller must
+	 * not change it afterwards. If a change came in since stamp was taken the
+	 * copy may already be out of date, so it is held but not fresh.
+	 *
+	 * @param owner
+	 * @param planFile
+	 * @param stamp
+	 *                     getChangeCount from before asking the server
+	 */
+	public void putPlan(String owner, PlanFile planFile, long stamp)
+	{
+		Entry<PlanFile> entry = new Entry<PlanFile>(planFile, clock.getAsLong());
+		plans.put(keyOf(owner, planFile.getYear()), entry);
+		if (changeCount.get() != stamp)
+		{
+			entry.validated = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * @param owner
+	 * @return the department's plan list if fresh, otherwise null
+	 */
+	public Collection<PlanFile> getPlanList(String owner)
+	{
+		Entry<Collection<PlanFile>> entry = planLists.get(owner);
+		return isFresh(entry) ? entry.value : null;
+	}
+
+	/**
+	 * Holds a plan list, unless a change came in since stamp was taken
+	 *
+	 * @param owner
+	 * @param list
+	 * @param stamp
+	 *                  getChangeCount from before the list was fetched
+	 */
+	public void putPlanList(String owner, Collection<PlanFile> list, long stamp)
+	{
+		Entry<Collection<PlanFile>> entry = new Entry<Collection<PlanFile>>(list, clock.getAsLong());
+		planLists.put(owner, entry);
+		if (changeCount.get() != stamp)
+		{
+			planLists.remove(owner, entry);
+		}
+	}
+
+	/**
+	 * Forgets the plan list, for a client that may just have added a year
+	 *
+	 * @param owner
+	 */
+	public void invalidatePlanList(String owner)
+	{
+		planLists.remove(owner);
+	}
+
+	/**
+	 * @return templates listed this session, or null
+	 */
+	public Collection<PlanFile> getTemplates()
+	{
+		return templates;
+	}
+
+	/**
+	 * @param templates
+	 */
+	public void putTemplates(Collection<PlanFile> templates)
+	{
+		this.templates = templates;
+	}
+
+	/**
+	 * @param name
+	 * @return outline fetched this session, or null
+	 */
+	public PlanFile getOutline(String name)
+	{
+		return outlines.get(name);
+	}
+
+	/**
+	 * @param name
+	 * @param outline
+	 *                    must not be changed afterwards
+	 */
+	public void putOutline(String name, PlanFile outline)
+	{
+		outlines.put(name, outline);
+	}
+
+	/**
+	 * @param listening
+	 *                      true while the server is telling the client about
+	 *                      changes, so entries stay fresh until one comes in
+	 */
+	public void setListening(boolean listening)
+	{
+		this.listening = listening;
+		if (!listening)
+		{
+			markAllStale();
+		}
+	}
+
+	/**
+	 * Marks what a change from the server affects as stale. A change the entry
+	 * already reflects, such as the client's own save, leaves it fresh.
+	 *
+	 * @param owner
+	 *                   cookie the client was listening with
+	 * @param change
+	 */
+	public void changed(String owner, PlanChange change)
+	{
+		changeCount.incrementAndGet();
+		if (change.isMissed())
+		{
+			markAllStale();
+			return;
+		}
+		planLists.remove(owner);
+		Entry<PlanFile> entry = plans.get(keyOf(owner, change.getYear()));
+		if (entry != null && (entry.value.getVersion() < change.getVersion()
+				|| entry.value.isCanEdit() != change.isCanEdit()))
+		{
+			entry.validated = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Forgets everything, for a client connecting to another server
+	 */
+	public void clear()
+	{
+		plans.clear();
+		planLists.clear();
+		outlines.clear();
+		templates = null;
+	}
+
+	private void markAllStale()
+	{
+		changeCount.incrementAndGet();
+		planLists.clear();
+		for (Entry<PlanFile> entry : new ArrayList<Entry<PlanFile>>(plans.values()))
+		{
+			entry.validated = Long.MIN_VALUE;
+		}
+	}
+
+	private boolean isFresh(Entry<?> entry)
+	{
+		if (entry == null || entry.validated == Long.MIN_VALUE)
+		{
+			return false;
+		}
+		return listening || clock.getAsLong() - entry.validated < freshMillis;
+	}
+
+	private static String keyOf(String owner, String year)
+	{
+		return owner + "/" + year;
+	}
+
+	/**
+	 * A value and when it was last known to match the server, Long.MIN_VALUE
+	 * once a change made it stale
+	 */
+	private static final class Entry<T>
+	{
+		final T value;
+		volatile long validated;
+
+		Entry(T value, long validated)
+		{
+			this.value = value;
+			this.validated = validated;
+		}
+	}
+
+}
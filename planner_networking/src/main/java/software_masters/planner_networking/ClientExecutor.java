@@ -0,0 +1,143 @@
+package software_masters.planner_networking;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the server calls behind Client's async methods, so a caller such as the
+ * JavaFX thread never waits on the network. At most MAX_CALLS calls run at once
+ * and each future fails after TIMEOUT_MILLIS.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public final class ClientExecutor
+{
+
+	static final int MAX_CALLS = Integer.getInteger("planner.client.asyncCalls", 8);
+	static final long TIMEOUT_MILLIS = Long.getLong("planner.client.timeoutMillis", 30000);
+
+	private static final ExecutorService EXECUTOR = newExecutor();
+	private static final Semaphore PERMITS = new Semaphore(MAX_CALLS);
+	private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+	private ClientExecutor()
+	{
+	}
+
+	/**
+	 * Makes call once previous has finished, however it finished
+	 *
+	 * @param previous
+	 *                     call this one must wait for
+	 * @param call
+	 * @param result
+	 *                     completed with the call's result or exception, and
+	 *                     failed if the call takes longer than TIMEOUT_MILLIS
+	 * @return completes when the call has finished or was skipped, whatever
+	 *         happened to result
+	 */
+	static <T> CompletableFuture<Void> runAfter(CompletableFuture<?> previous, Callable<T> call,
+			CompletableFuture<T> result)
+	{
+		failAfter(result, TIMEOUT_MILLIS);
+		return previous.handle((value, failure) -> null).thenRunAsync(() -> run(call, result), EXECUTOR);
+	}
+
+	/**
+	 * Fails result with a TimeoutException unless it completes in time. Set by
+	 * a timer thread since Java 8 has no CompletableFuture.orTimeout.
+	 *
+	 * @param result
+	 * @param millis
+	 */
+	static void failAfter(CompletableFuture<?> result, long millis)
+	{
+		ScheduledFuture<?> timeout = TIMER.schedule(() -> result.completeExceptionally(new TimeoutException()),
+				millis, TimeUnit.MILLISECONDS);
+		result.whenComplete((value, failure) -> timeout.cancel(false));
+	}
+
+	/**
+	 * Skips call if result was cancelled or timed out before it started. A call
+	 * already under way runs to the end, since an RMI call cannot be
+	 * interrupted, and its result is dropped.
+	 *
+	 * @param call
+	 * @param result
+	 */
+	private static <T> void run(Callable<T> call, CompletableFuture<T> result)
+	{
+		if (result.isDone())
+		{
+			return;// cancelled or timed out while waiting
+		}
+		try
+		{
+			PERMITS.acquire();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			result.completeExceptionally(e);
+			return;
+		}
+		try
+		{
+			result.complete(call.call());
+		}
+		catch (Throwable e)
+		{
+			result.completeExceptionally(e);
+		}
+		finally
+		{
+			PERMITS.release();
+		}
+	}
+
+	/**
+	 * @return one daemon thread that fails futures which time out, dropping a
+	 *         timeout as soon as its future completes
+	 */
+	private static ScheduledThreadPoolExecutor newTimer()
+	{
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable ->
+		{
+			Thread thread = new Thread(runnable, "planner-client-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * @return a virtual thread per call where available, otherwise a pool of
+	 *         MAX_CALLS daemon threads
+	 */
+	private static ExecutorService newExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(MAX_CALLS, runnable ->
+			{
+				Thread thread = new Thread(runnable, "planner-client-call");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+}
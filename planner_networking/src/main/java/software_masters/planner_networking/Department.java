@@ -5,6 +5,7 @@ package software_masters.planner_networking;
 
 import java.util.Enumeration;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author lee.kendall
@@ -18,12 +19,25 @@ public class Department
 	 * Object which stores the planFiles of a particular department based on year
 	 */
 	private ConcurrentHashMap<String, PlanFile> planFileMap;
+	private String name;
+	long checkpointSequence;
+	final ReentrantReadWriteLock shardLock = new ReentrantReadWriteLock();
 
 	public Department()
 	{
 		planFileMap = new ConcurrentHashMap<String, PlanFile>();
 	}
 
+	/**
+	 * @param name
+	 *                 key of this department in the server's departmentMap
+	 */
+	public Department(String name)
+	{
+		this();
+		this.name = name;
+	}
+
 	/**
 	 * Retrieves planFile from department based on year
 	 * 
@@ -50,7 +64,11 @@ public class Department
 	 */
 	public void addPlan(String year, PlanFile plan)
 	{
-		planFileMap.put(year, plan);
+		PlanFile old = planFileMap.put(year, plan);
+		if (old != null && old != plan)
+		{
+			PlanCache.getShared().removed(old);
+		}
 	}
 
 	/**
@@ -61,7 +79,11 @@ public class Department
 	 */
 	public void removePlan(String year)
 	{
-		planFileMap.remove(year);
+		PlanFile old = planFileMap.remove(year);
+		if (old != null)
+		{
+			PlanCache.getShared().removed(old);
+		}
 	}
 
 	/**
@@ -92,6 +114,23 @@ public class Department
 		this.planFileMap = planFileMap;
 	}
 
+	/**
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @param name
+	 *                 the name to set
+	 */
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
@@ -0,0 +1,269 @@
+package software_masters.planner_networking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Directory holding one snapshot file per department, named after the url
+ * encoded department name. Files are written beside the old copy and renamed
+ * over it, and are read and written in parallel.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class DepartmentShards
+{
+
+	static final String SUFFIX = ".dept";
+
+	private static final ExecutorService pool = Executors
+			.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable ->
+			{
+				Thread thread = new Thread(runnable, "planner-shard-io");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final File directory;
+
+	/**
+	 * @param directory
+	 */
+	public DepartmentShards(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Writes each department to its own file in parallel
+	 *
+	 * @param departments
+	 * @param sequence
+	 *                        newest mutation log record included in the files
+	 * @throws IOException
+	 */
+	public void write(Collection<Department> departments, final long sequence) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Unable to create " + directory);
+		}
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final Department department : departments)
+		{
+			tasks.add(() ->
+			{
+				writeDepartment(department, sequence);
+				department.checkpointSequence = sequence;
+				return null;
+			});
+		}
+		runAll(tasks);
+	}
+
+	/**
+	 * Reads the index of every department file in parallel. Plan bodies stay on
+	 * disk until they are asked for.
+	 *
+	 * @return departments by name
+	 * @throws IOException
+	 */
+	public ConcurrentHashMap<String, Department> readAll() throws IOException
+	{
+		final ConcurrentHashMap<String, Department> departments = new ConcurrentHashMap<String, Department>();
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final File file : files())
+		{
+			tasks.add(() ->
+			{
+				try (InputStream in = new BufferedInputStream(new FileInputStream(file)))
+				{
+					Department department = SnapshotFormat.readDepartment(in, file);
+					departments.put(department.getName(), department);
+				}
+				return null;
+			});
+		}
+		runAll(tasks);
+		return departments;
+	}
+
+	/**
+	 * Deletes the files of departments that are no longer on the server
+	 *
+	 * @param names
+	 *                  departments to keep
+	 * @throws IOException
+	 */
+	public void retainOnly(Collection<String> names) throws IOException
+	{
+		Set<String> keep = new HashSet<String>();
+		for (String name : names)
+		{
+			keep.add(fileFor(name).getName());
+		}
+		for (File file : files())
+		{
+			if (!keep.contains(file.getName()))
+			{
+				Files.delete(file.toPath());
+			}
+		}
+	}
+
+	/**
+	 * @param name
+	 *                 department name
+	 * @return file holding that department
+	 */
+	public File fileFor(String name)
+	{
+		try
+		{
+			return new File(directory, URLEncoder.encode(name, "UTF-8") + SUFFIX);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the directory
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Writes one department file via a temporary file, then points its plans and
+	 * the plan cache at their bodies in the new file. The department's write
+	 * lock keeps plans from being read while the file is swapped.
+	 */
+	private void writeDepartment(Department department, long sequence) throws IOException
+	{
+		File target = fileFor(department.getName());
+		File temp = new File(target.getPath() + ".tmp");
+		List<PlanFile> plans = new ArrayList<PlanFile>(department.getPlanFileMap().values());
+		long[] offsets;
+		try (FileOutputStream file = new FileOutputStream(temp))
+		{
+			BufferedOutputStream out = new BufferedOutputStream(file, 1 << 16);
+			offsets = SnapshotFormat.writeDepartment(department, plans, sequence, out);
+			out.flush();
+			file.getFD().sync();
+		}
+		department.shardLock.writeLock().lock();
+		try
+		{
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			Set<PlanSource> current = Collections.newSetFromMap(new IdentityHashMap<PlanSource, Boolean>());
+			for (int i = 0; i < plans.size(); i++)
+			{
+				PlanFile plan = plans.get(i);
+				PlanSource moved = new PlanSource(target, department.shardLock, offsets[i],
+						(int) (offsets[i + 1] - offsets[i]));
+				PlanSource previous = plan.getSource();
+				plan.setSource(moved);
+				PlanCache.getShared().moved(plan, previous, moved);
+				current.add(moved);
+			}
+			PlanCache.getShared().rewritten(target, current);
+		}
+		finally
+		{
+			department.shardLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return department files currently in the directory
+	 */
+	private List<File> files()
+	{
+		ArrayList<File> files = new ArrayList<File>();
+		File[] listed = directory.listFiles();
+		if (listed != null)
+		{
+			for (File file : listed)
+			{
+				if (file.isFile() && file.getName().endsWith(SUFFIX))
+				{
+					files.add(file);
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Runs tasks on the shard pool and waits for all of them
+	 *
+	 * @throws IOException
+	 *                         first failure of any task
+	 */
+	private static void runAll(List<Callable<Void>> tasks) throws IOException
+	{
+		if (tasks.size() == 1)
+		{
+			try
+			{
+				tasks.get(0).call();
+				return;
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new IOException(e);
+			}
+		}
+		try
+		{
+			for (Future<Void> result : pool.invokeAll(tasks))
+			{
+				result.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted during shard i/o", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+}
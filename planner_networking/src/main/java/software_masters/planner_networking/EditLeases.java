@@ -0,0 +1,415 @@
+package software_masters.planner_networking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-bounded leases on branches of a plan, so several users can edit
+ * different parts of it. A lease on a node covers everything below it and
+ * follows the node through moves; parts nobody holds a lease on can be edited
+ * by anyone.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class EditLeases
+{
+
+	static final long LEASE_MILLIS = Long.getLong("planner.leaseMillis", 120000);
+	static final long TICK_MILLIS = Long.getLong("planner.leaseTickMillis", 1000);
+	private static final int SLOTS = 512;
+
+	private final long leaseMillis;
+	private final long tickMillis;
+	private final LongSupplier clock;
+	private final HashMap<String, HashMap<Long, Lease>> byPlan = new HashMap<String, HashMap<Long, Lease>>();
+	/**
+	 * One slot per tick holding the leases due in it, swept by a single daemon
+	 * thread. A lease past its time counts as gone before its slot is swept.
+	 */
+	private final ArrayList<HashSet<Lease>> wheel = new ArrayList<HashSet<Lease>>(SLOTS);
+	private long currentTick;
+	private ScheduledExecutorService timer;
+
+	/**
+	 * Leases of LEASE_MILLIS on the system clock
+	 */
+	public EditLeases()
+	{
+		this(LEASE_MILLIS, TICK_MILLIS, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param leaseMillis
+	 *                        how long a lease lasts unless renewed
+	 * @param tickMillis
+	 *                        width of one slot of the wheel
+	 * @param clock
+	 *                        current time in milliseconds
+	 */
+	public EditLeases(long leaseMillis, long tickMillis, LongSupplier clock)
+	{
+		this.leaseMillis = leaseMillis;
+		this.tickMillis = Math.max(1, tickMillis);
+		this.clock = clock;
+		for (int i = 0; i < SLOTS; i++)
+		{
+			this.wheel.add(new HashSet<Lease>());
+		}
+		this.currentTick = clock.getAsLong() / this.tickMillis;
+	}
+
+	/**
+	 * Leases a node and everything below it, or renews the lease if the owner
+	 * already holds it. The owner may already hold leases above or below the
+	 * node.
+	 *
+	 * @param department
+	 * @param year
+	 * @param plan
+	 *                       current version of the plan
+	 * @param nodeId
+	 * @param owner
+	 *                       cookie of the user taking the lease
+	 * @return time the lease ends unless renewed, in milliseconds since the epoch
+	 * @throws IllegalArgumentException
+	 *                                      if the node does not exist
+	 * @throws LeaseConflictException
+	 *                                      if someone else holds a lease above,
+	 *                                      on or below the node
+	 */
+	public synchronized long acquire(String department, String year, Plan plan, long nodeId, String owner)
+			throws IllegalArgumentException
+	{
+		expire();
+		long[] ids = ancestors(plan, nodeId);
+		if (ids == null)
+		{
+			throw new IllegalArgumentException("Node doesn't exist");
+		}
+		String key = keyOf(department, year);
+		HashMap<Long, Lease> leases = this.byPlan.get(key);
+		if (leases != null)
+		{
+			checkIds(leases, ids, year, owner);
+			checkBelow(leases, plan, nodeId, year, owner);
+		}
+		else
+		{
+			leases = new HashMap<Long, Lease>();
+			this.byPlan.put(key, leases);
+		}
+		Lease lease = leases.get(nodeId);
+		if (lease == null)
+		{
+			lease = new Lease(key, nodeId, owner);
+			leases.put(nodeId, lease);
+		}
+		schedule(lease, this.clock.getAsLong() + this.leaseMillis);
+		startTimer();
+		return lease.deadline;
+	}
+
+	/**
+	 * @param department
+	 * @param year
+	 * @param nodeId
+	 * @param owner
+	 * @return time the lease now ends, in milliseconds since the epoch
+	 * @throws IllegalArgumentException
+	 *                                      if the owner does not hold a lease on
+	 *                                      the node, or it has run out
+	 */
+	public synchronized long renew(String department, String year, long nodeId, String owner)
+			throws IllegalArgumentException
+	{
+		expire();
+		Lease lease = held(department, year, nodeId);
+		if (lease == null || !lease.owner.equals(owner))
+		{
+			throw new IllegalArgumentException("You do not hold a lease on this node");
+		}
+		schedule(lease, this.clock.getAsLong() + this.leaseMillis);
+		return lease.deadline;
+	}
+
+	/**
+	 * Gives up a lease. Releasing a lease that already ran out does nothing.
+	 *
+	 * @param department
+	 * @param year
+	 * @param nodeId
+	 * @param owner
+	 * @throws IllegalArgumentException
+	 *                                      if someone else holds the lease
+	 */
+	public synchronized void release(String department, String year, long nodeId, String owner)
+			throws IllegalArgumentException
+	{
+		Lease lease = held(department, year, nodeId);
+		if (lease == null)
+		{
+			return;
+		}
+		if (!lease.owner.equals(owner))
+		{
+			throw new IllegalArgumentException("You do not hold a lease on this node");
+		}
+		remove(lease);
+	}
+
+	/**
+	 * Checks that an edit about to be applied stays out of other users'
+	 * branches. A name, data or new branch must not be inside one; a removed or
+	 * moved branch must also not contain one, and a moved branch must not land
+	 * in one. Changes of year are left to checkPlan on the year written.
+	 *
+	 * @param department
+	 * @param year
+	 * @param plan
+	 *                       plan as it is just before the edit
+	 * @param edit
+	 * @param owner
+	 *                       cookie of the user making the edit
+	 * @throws LeaseConflictException
+	 */
+	public synchronized void check(String department, String year, Plan plan, PlanEdit edit, String owner)
+	{
+		HashMap<Long, Lease> leases = this.byPlan.get(keyOf(department, year));
+		if (leases == null || edit.getType() == PlanEdit.Type.SET_YEAR)
+		{
+			return;
+		}
+		int[] path = edit.getPath();
+		long[] ids = PlanEdit.idsAlong(plan, path, path.length);
+		checkIds(leases, ids, year, owner);
+		if (ids.length != path.length + 1)
+		{
+			return;// no such node, the edit itself will be refused
+		}
+		if (edit.getType() == PlanEdit.Type.REMOVE_BRANCH || edit.getType() == PlanEdit.Type.MOVE_BRANCH)
+		{
+			checkBelow(leases, plan, ids[ids.length - 1], year, owner);
+		}
+		int[] target = edit.getTarget();
+		if (edit.getType() == PlanEdit.Type.MOVE_BRANCH && target != null && target.length > 0)
+		{
+			checkIds(leases, PlanEdit.idsAlong(plan, target, target.length - 1), year, owner);
+		}
+	}
+
+	/**
+	 * Checks that nobody else holds a lease anywhere in a plan, before it is
+	 * replaced whole
+	 *
+	 * @param department
+	 * @param year
+	 * @param owner
+	 * @throws LeaseConflictException
+	 */
+	public synchronized void checkPlan(String department, String year, String owner)
+	{
+		HashMap<Long, Lease> leases = this.byPlan.get(keyOf(department, year));
+		if (leases == null)
+		{
+			return;
+		}
+		long now = this.clock.getAsLong();
+		for (Lease lease : leases.values())
+		{
+			if (lease.deadline > now && !lease.owner.equals(owner))
+			{
+				throw new LeaseConflictException(year, lease.nodeId, lease.deadline);
+			}
+		}
+	}
+
+	/**
+	 * @return leases held and not yet swept
+	 */
+	public synchronized int size()
+	{
+		int size = 0;
+		for (HashMap<Long, Lease> leases : this.byPlan.values())
+		{
+			size += leases.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Turns the wheel up to the current time, dropping the leases that ran out.
+	 * Each tick passed costs one slot, however many leases are held.
+	 */
+	public synchronized void expire()
+	{
+		long now = this.clock.getAsLong();
+		long nowTick = now / this.tickMillis;
+		long first = Math.max(this.currentTick + 1, nowTick - SLOTS + 1);
+		for (long tick = first; tick <= nowTick; tick++)
+		{
+			Iterator<Lease> due = this.wheel.get((int) (tick % SLOTS)).iterator();
+			while (due.hasNext())
+			{
+				Lease lease = due.next();
+				if (lease.deadline <= now)// later rounds stay in the slot
+				{
+					due.remove();
+					lease.slot = null;
+					remove(lease);
+				}
+			}
+		}
+		this.currentTick = Math.max(this.currentTick, nowTick);
+	}
+
+	/**
+	 * Stops the sweeping thread, if started
+	 */
+	public synchronized void close()
+	{
+		if (this.timer != null)
+		{
+			this.timer.shutdownNow();
+			this.timer = null;
+		}
+	}
+
+	private Lease held(String department, String year, long nodeId)
+	{
+		HashMap<Long, Lease> leases = this.byPlan.get(keyOf(department, year));
+		Lease lease = leases == null ? null : leases.get(nodeId);
+		return lease == null || lease.deadline <= this.clock.getAsLong() ? null : lease;
+	}
+
+	/**
+	 * Refuses if someone else holds a live lease on any of ids
+	 */
+	private void checkIds(HashMap<Long, Lease> leases, long[] ids, String year, String owner)
+	{
+		long now = this.clock.getAsLong();
+		for (long id : ids)
+		{
+			Lease lease = leases.get(id);
+			if (lease != null && lease.deadline > now && !lease.owner.equals(owner))
+			{
+				throw new LeaseConflictException(year, id, lease.deadline);
+			}
+		}
+	}
+
+	/**
+	 * Refuses if someone else holds a live lease below nodeId. Looks up each
+	 * other lease's ancestors rather than walking the branch, since a plan has
+	 * few leases but a branch may be large.
+	 */
+	private void checkBelow(HashMap<Long, Lease> leases, Plan plan, long nodeId, String year, String owner)
+	{
+		long now = this.clock.getAsLong();
+		for (Lease lease : leases.values())
+		{
+			if (lease.deadline <= now || lease.owner.equals(owner))
+			{
+				continue;
+			}
+			long[] ids = ancestors(plan, lease.nodeId);
+			if (ids == null)
+			{
+				continue;// its node was removed
+			}
+			for (long id : ids)
+			{
+				if (id == nodeId)
+				{
+					throw new LeaseConflictException(year, lease.nodeId, lease.deadline);
+				}
+			}
+		}
+	}
+
+	private void schedule(Lease lease, long deadline)
+	{
+		if (lease.slot != null)
+		{
+			lease.slot.remove(lease);
+		}
+		lease.deadline = deadline;
+		long tick = Math.max((deadline + this.tickMillis - 1) / this.tickMillis, this.currentTick + 1);
+		lease.slot = this.wheel.get((int) (tick % SLOTS));
+		lease.slot.add(lease);
+	}
+
+	private void remove(Lease lease)
+	{
+		if (lease.slot != null)
+		{
+			lease.slot.remove(lease);
+			lease.slot = null;
+		}
+		HashMap<Long, Lease> leases = this.byPlan.get(lease.plan);
+		if (leases != null && leases.get(lease.nodeId) == lease)
+		{
+			leases.remove(lease.nodeId);
+			if (leases.isEmpty())
+			{
+				this.byPlan.remove(lease.plan);
+			}
+		}
+	}
+
+	private void startTimer()
+	{
+		if (this.timer != null)
+		{
+			return;
+		}
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "planner-lease-wheel");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.timer.scheduleAtFixedRate(this::expire, this.tickMillis, this.tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static String keyOf(String department, String year)
+	{
+		return department + "/" + year;
+	}
+
+	/**
+	 * @return ids of the node and each of its ancestors, from the root down, or
+	 *         null if the plan has no such node
+	 */
+	private static long[] ancestors(Plan plan, long nodeId)
+	{
+		int[] path = plan.pathTo(nodeId);
+		return path == null ? null : PlanEdit.idsAlong(plan, path, path.length);
+	}
+
+	/**
+	 * One lease, filed under its plan and in the wheel slot of its deadline
+	 */
+	private static final class Lease
+	{
+		final String plan;
+		final long nodeId;
+		final String owner;
+		long deadline;
+		HashSet<Lease> slot;
+
+		Lease(String plan, long nodeId, String owner)
+		{
+			this.plan = plan;
+			this.nodeId = nodeId;
+			this.owner = owner;
+		}
+	}
+
+}
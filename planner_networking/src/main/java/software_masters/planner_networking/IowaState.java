@@ -43,7 +43,7 @@ public class IowaState extends Plan
 	 *                   parent of node to be added
 	 * @return boolean true if added
 	 */
-	public boolean addNode(Node parent) throws RemoteException, IllegalArgumentException
+	protected boolean insertNode(Node parent) throws RemoteException, IllegalArgumentException
 	{
 		if (parent == null)
 		{
@@ -62,10 +62,7 @@ public class IowaState extends Plan
 				for (int i = index_depth(parent) + 1; i < this.getList().size(); i++)
 				{
 
-					Node newNode = new Node(parent, this.getList().get(i), null, null);
-
-					parent.addChild(newNode);
-					parent = newNode;
+					parent = newChild(parent, this.getList().get(i));
 
 				}
 				return true;
@@ -79,7 +76,7 @@ public class IowaState extends Plan
 	 *                       node to be removed
 	 * @return boolean true is removed
 	 */
-	public boolean removeNode(Node nodeRemove) throws IllegalArgumentException
+	protected boolean deleteNode(Node nodeRemove) throws IllegalArgumentException
 
 	{
 		if (nodeRemove == null)
@@ -102,8 +99,7 @@ public class IowaState extends Plan
 				}
 				else
 				{
-					nodeRemove.getParent().removeChild(nodeRemove);
-					nodeRemove.setParent(null);
+					detach(nodeRemove);
 
 					return true;
 
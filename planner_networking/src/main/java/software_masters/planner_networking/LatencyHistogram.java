@@ -0,0 +1,126 @@
+package software_masters.planner_networking;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in buckets that split each power of two into eight, so a
+ * percentile is within an eighth of the true value. Recording takes no locks.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class LatencyHistogram
+{
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value
+	 *                  latency, in any unit, not negative
+	 */
+	public void record(long value)
+	{
+		counts.incrementAndGet(bucketOf(value));
+		total.increment();
+		sum.add(value);
+		long seen = max.get();
+		while (value > seen && !max.compareAndSet(seen, value))
+		{
+			seen = max.get();
+		}
+	}
+
+	/**
+	 * @return number of values recorded
+	 */
+	public long getCount()
+	{
+		return total.sum();
+	}
+
+	/**
+	 * @return largest value recorded
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * @return mean of the values recorded, 0 if none
+	 */
+	public long getMean()
+	{
+		long count = total.sum();
+		return count == 0 ? 0 : sum.sum() / count;
+	}
+
+	/**
+	 * @param percentile
+	 *                       between 0 and 100
+	 * @return value at or below which that share of the recorded values fall,
+	 *         rounded up to the top of its bucket
+	 */
+	public long getPercentile(double percentile)
+	{
+		long count = 0;
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+			{
+				return Math.min(highestIn(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Values below SUB_BUCKETS get a bucket each; above that the bucket is the
+	 * power of two and the next three bits
+	 */
+	static int bucketOf(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) Math.max(0, value);
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return largest value that falls in the bucket
+	 */
+	static long highestIn(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+}
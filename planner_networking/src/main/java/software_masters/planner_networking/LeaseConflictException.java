@@ -0,0 +1,59 @@
+package software_masters.planner_networking;
+
+/**
+ * Thrown when a lease or an edit reaches into part of a plan someone else holds
+ * a lease on. Nothing is changed; the caller can try again once the lease ends.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class LeaseConflictException extends IllegalArgumentException
+{
+
+	private static final long serialVersionUID = -4718190377164650233L;
+	private final String year;
+	private final long nodeId;
+	private final long expires;
+
+	/**
+	 * @param year
+	 * @param nodeId
+	 *                    node the other lease is on
+	 * @param expires
+	 *                    time the other lease ends unless renewed, in
+	 *                    milliseconds since the epoch
+	 */
+	public LeaseConflictException(String year, long nodeId, long expires)
+	{
+		super("Part of plan " + year + " is leased by another user (node " + nodeId + ")");
+		this.year = year;
+		this.nodeId = nodeId;
+		this.expires = expires;
+	}
+
+	/**
+	 * @return the year
+	 */
+	public String getYear()
+	{
+		return year;
+	}
+
+	/**
+	 * @return node the other lease is on
+	 */
+	public long getNodeId()
+	{
+		return nodeId;
+	}
+
+	/**
+	 * @return time the other lease ends unless renewed, in milliseconds since the
+	 *         epoch
+	 */
+	public long getExpires()
+	{
+		return expires;
+	}
+
+}
@@ -0,0 +1,760 @@
+package software_masters.planner_networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to a server since its last checkpoint.
+ * Each record is framed as [length][sequence number][type][payload][crc32], and
+ * records are written in batches by a single writer thread with one fsync per
+ * batch.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class MutationLog
+{
+
+	static final byte SAVE_PLAN = 1;
+	static final byte ADD_USER = 2;
+	static final byte ADD_DEPARTMENT = 3;
+	static final byte FLAG_PLAN = 4;
+	static final byte EDIT_PLAN = 5;
+
+	static final int BATCH_SIZE = Integer.getInteger("planner.log.batchSize", 256);
+	static final long BATCH_MILLIS = Long.getLong("planner.log.batchMillis", 0);
+
+	private final File file;
+	private RandomAccessFile out;
+	private long committedLength;
+	private volatile IOException failure;
+	private long lastSequence;
+	private int recordsSinceCheckpoint;
+
+	private final LinkedBlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<PendingRecord>();
+	private final int batchSize;
+	private final long batchNanos;
+	private final Thread writer;
+	private volatile boolean running;
+	private CompletableFuture<Long> lastCommit;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong committedRecords = new AtomicLong();
+	private final AtomicLong largestBatch = new AtomicLong();
+	private final AtomicLong commitNanos = new AtomicLong();
+	private final AtomicLong maxCommitNanos = new AtomicLong();
+
+	/**
+	 * Opens the log at the given path, creating it if necessary. Any torn record at
+	 * the end of the file is truncated away; a damaged record with intact data
+	 * after it fails the open, since dropping it would lose the records behind
+	 * it.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public MutationLog(File file) throws IOException
+	{
+		this(file, BATCH_SIZE, BATCH_MILLIS);
+	}
+
+	/**
+	 * @param file
+	 * @param batchSize
+	 *                        most records committed by one fsync
+	 * @param batchMillis
+	 *                        longest a record waits for others to join its batch
+	 * @throws IOException
+	 */
+	public MutationLog(File file, int batchSize, long batchMillis) throws IOException
+	{
+		this.file = file;
+		this.out = new RandomAccessFile(file, "rw");
+		this.lastSequence = 0;
+		this.recordsSinceCheckpoint = 0;
+		this.batchSize = Math.max(1, batchSize);
+		this.batchNanos = TimeUnit.MILLISECONDS.toNanos(batchMillis);
+		this.lastCommit = CompletableFuture.completedFuture(Long.valueOf(0));
+		try
+		{
+			long end = scan(null);
+			this.out.setLength(end);
+			this.out.seek(end);
+			this.committedLength = end;
+		}
+		catch (IOException e)
+		{
+			this.out.close();
+			throw e;
+		}
+
+		this.running = true;
+		this.writer = new Thread(this::writeBatches, "planner-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Logs a plan saved to a department
+	 *
+	 * @param departmentName
+	 * @param plan
+	 * @return completes with the record's sequence number once it is on disk
+	 * @throws IOException
+	 */
+	public synchronized CompletableFuture<Long> logSavePlan(String departmentName, PlanFile plan) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeUTF(departmentName);
+		data.flush();
+		PlanEncoder encoder = new PlanEncoder(bytes, false);
+		encoder.writePlanFile(plan);
+		encoder.flush();
+		return append(SAVE_PLAN, bytes.toByteArray());
+	}
+
+	/**
+	 * Logs a new account
+	 *
+	 * @param username
+	 * @param account
+	 * @param departmentName
+	 * @return completes with the record's sequence number once it is on disk
+	 * @throws IOException
+	 */
+	public synchronized CompletableFuture<Long> logAddUser(String username, Account account, String departmentName) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeUTF(username);
+		data.writeUTF(account.getPassword());
+		data.writeUTF(account.getCookie());
+		data.writeUTF(departmentName);
+		data.writeBoolean(account.isAdmin());
+		data.close();
+		return append(ADD_USER, bytes.toByteArray());
+	}
+
+	/**
+	 * Logs a new department
+	 *
+	 * @param departmentName
+	 * @return completes with the record's sequence number once it is on disk
+	 * @throws IOException
+	 */
+	public synchronized CompletableFuture<Long> logAddDepartment(String departmentName) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeUTF(departmentName);
+		data.close();
+		return append(ADD_DEPARTMENT, bytes.toByteArray());
+	}
+
+	/**
+	 * Logs a change to a plan's canEdit flag
+	 *
+	 * @param departmentName
+	 * @param year
+	 * @param canEdit
+	 * @return completes with the record's sequence number once it is on disk
+	 * @throws IOException
+	 */
+	public synchronized CompletableFuture<Long> logFlagPlan(String departmentName, String year, boolean canEdit) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeUTF(departmentName);
+		data.writeUTF(year);
+		data.writeBoolean(canEdit);
+		data.close();
+		return append(FLAG_PLAN, bytes.toByteArray());
+	}
+
+	/**
+	 * Logs node level edits applied to a plan
+	 *
+	 * @param departmentName
+	 * @param year
+	 *                           year of the plan the edits were applied to
+	 * @param edits
+	 * @return completes with the record's sequence number once it is on disk
+	 * @throws IOException
+	 */
+	public synchronized CompletableFuture<Long> logEditPlan(String departmentName, String year, List<PlanEdit> edits) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeUTF(departmentName);
+		data.writeUTF(year);
+		data.writeInt(edits.size());
+		for (PlanEdit edit : edits)
+		{
+			edit.writeTo(data);
+		}
+		data.close();
+		return append(EDIT_PLAN, bytes.toByteArray());
+	}
+
+	/**
+	 * Frames a record and queues it for the writer thread. Sequence numbers are
+	 * handed out in call order, which is the order records reach the file.
+	 *
+	 * @param type
+	 * @param payload
+	 * @return completes with the record's sequence number once it is on disk
+	 * @throws IOException
+	 */
+	private CompletableFuture<Long> append(byte type, byte[] payload) throws IOException
+	{
+		if (!running)
+		{
+			throw new IOException("Log is closed");
+		}
+		checkFailed();
+		long sequence = lastSequence + 1;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 25);
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeInt(payload.length + 9);
+		record.writeLong(sequence);
+		record.writeByte(type);
+		record.write(payload);
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray(), 4, payload.length + 9);
+		record.writeInt((int) crc.getValue());
+		record.close();
+
+		PendingRecord pending = new PendingRecord(sequence, bytes.toByteArray());
+		lastSequence = sequence;
+		recordsSinceCheckpoint++;
+		lastCommit = pending.done;
+		queue.add(pending);
+		return pending.done;
+	}
+
+	/**
+	 * Body of the writer thread. Collects a batch of queued records, writes them
+	 * with a single write and fsync, then completes every caller in the batch.
+	 */
+	private void writeBatches()
+	{
+		ArrayList<PendingRecord> batch = new ArrayList<PendingRecord>();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		while (running || !queue.isEmpty())
+		{
+			try
+			{
+				PendingRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null)
+				{
+					continue;
+				}
+				batch.add(first);
+				long deadline = first.queuedAt + batchNanos;
+				while (batch.size() < batchSize)
+				{
+					queue.drainTo(batch, batchSize - batch.size());
+					long wait = deadline - System.nanoTime();
+					if (batch.size() >= batchSize || wait <= 0)
+					{
+						break;
+					}
+					PendingRecord next = queue.poll(wait, TimeUnit.NANOSECONDS);
+					if (next == null)
+					{
+						break;
+					}
+					batch.add(next);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				continue;
+			}
+
+			bytes.reset();
+			for (PendingRecord pending : batch)
+			{
+				bytes.write(pending.record, 0, pending.record.length);
+			}
+			try
+			{
+				synchronized (out)
+				{
+					checkFailed();
+					try
+					{
+						out.write(bytes.toByteArray());
+						out.getFD().sync();
+						committedLength = out.getFilePointer();
+					}
+					catch (IOException e)
+					{
+						fail(e);
+						throw e;
+					}
+				}
+				long now = System.nanoTime();
+				batches.incrementAndGet();
+				committedRecords.addAndGet(batch.size());
+				largestBatch.accumulateAndGet(batch.size(), Math::max);
+				for (PendingRecord pending : batch)
+				{
+					recordCommit(now - pending.queuedAt);
+					pending.done.complete(Long.valueOf(pending.sequence));
+				}
+			}
+			catch (IOException e)
+			{
+				for (PendingRecord pending : batch)
+				{
+					pending.done.completeExceptionally(e);
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Puts the log in its failed state and cuts the file back to the last batch
+	 * that was fully written, so no torn bytes are left for later records to
+	 * follow. Every later record is refused, since the server has already
+	 * applied the changes queued behind the failed batch and nothing after it
+	 * could be replayed on top of what is on disk. Caller must hold the lock on
+	 * out.
+	 *
+	 * @param cause
+	 *                  why the batch could not be written
+	 */
+	private void fail(IOException cause)
+	{
+		failure = cause;
+		try
+		{
+			out.setLength(committedLength);
+			out.seek(committedLength);
+			out.getFD().sync();
+		}
+		catch (IOException e)
+		{
+			cause.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 *                         if a batch has failed to write
+	 */
+	private void checkFailed() throws IOException
+	{
+		IOException cause = failure;
+		if (cause != null)
+		{
+			throw new IOException("Log failed on an earlier write", cause);
+		}
+	}
+
+	/**
+	 * @return true once a batch has failed to write and the log refuses records
+	 */
+	public boolean isFailed()
+	{
+		return failure != null;
+	}
+
+	/**
+	 * @param nanos
+	 *                  time from a record being queued to it being on disk
+	 */
+	private void recordCommit(long nanos)
+	{
+		commitNanos.addAndGet(nanos);
+		maxCommitNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Blocks until every record queued so far is on disk
+	 *
+	 * @throws IOException
+	 *                         if any of them could not be written
+	 */
+	public void flush() throws IOException
+	{
+		checkFailed();
+		CompletableFuture<Long> commit;
+		synchronized (this)
+		{
+			commit = lastCommit;
+		}
+		await(commit);
+		checkFailed();
+	}
+
+	/**
+	 * Blocks until a queued record is on disk
+	 *
+	 * @param commit
+	 *                   returned by one of the log methods
+	 * @throws IOException
+	 *                         if the batch holding the record could not be
+	 *                         written
+	 */
+	public static void await(CompletableFuture<Long> commit) throws IOException
+	{
+		try
+		{
+			commit.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for the log", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Unable to write to the log", e.getCause());
+		}
+	}
+
+	/**
+	 * Applies every record the server's checkpoint files do not already hold. The
+	 * server and each department remember the newest record in their own file, so
+	 * a record is skipped only if the file it belongs to has it.
+	 *
+	 * @param server
+	 *                   server restored from the checkpoint
+	 * @throws IOException
+	 */
+	public synchronized void replay(ServerImplementation server) throws IOException
+	{
+		scan(server);
+		long checkpoint = server.getNewestCheckpoint();
+		if (lastSequence < checkpoint)
+		{
+			lastSequence = checkpoint;
+		}
+	}
+
+	/**
+	 * Empties the log once a checkpoint holding every record up to sequence has
+	 * been written.
+	 *
+	 * @param sequence
+	 * @throws IOException
+	 */
+	public synchronized void checkpointed(long sequence) throws IOException
+	{
+		flush();
+		synchronized (out)
+		{
+			out.setLength(0);
+			out.seek(0);
+			out.getFD().sync();
+			committedLength = 0;
+		}
+		if (lastSequence < sequence)
+		{
+			lastSequence = sequence;
+		}
+		recordsSinceCheckpoint = 0;
+	}
+
+	/**
+	 * Reads the log from the start, handing records to the server when one is
+	 * given. A bad record is a torn write if nothing but zeros follows it,
+	 * and reading stops there; otherwise the log is corrupt.
+	 *
+	 * @return offset just past the last intact record
+	 * @throws IOException
+	 *                         if a record before the end of the log is damaged or
+	 *                         cannot be replayed
+	 */
+	private long scan(ServerImplementation server) throws IOException
+	{
+		synchronized (out)
+		{
+			long position = 0;
+			long length = out.length();
+			recordsSinceCheckpoint = 0;
+			out.seek(0);
+			while (position + 4 <= length)
+			{
+				int size = out.readInt();
+				if (size < 9 || position + 8 + size > length)
+				{
+					checkTornFrom(position + 4, length, position);
+					break;
+				}
+				byte[] body = new byte[size];
+				out.readFully(body);
+				int storedCrc = out.readInt();
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if ((int) crc.getValue() != storedCrc)
+				{
+					checkTornFrom(position + 8 + size, length, position);
+					break;
+				}
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+				long sequence = record.readLong();
+				byte type = record.readByte();
+				if (server != null)
+				{
+					try
+					{
+						apply(server, sequence, type, record);
+					}
+					catch (RuntimeException e)
+					{
+						throw new IOException("Unable to replay log record " + sequence, e);
+					}
+				}
+				if (sequence > lastSequence)
+				{
+					lastSequence = sequence;
+				}
+				recordsSinceCheckpoint++;
+				position += 8 + size;
+			}
+			out.seek(position);
+			return position;
+		}
+	}
+
+	/**
+	 * Checks that a bad record is a torn write at the end of the log, that is
+	 * that only zeros follow it. Caller holds the lock on out.
+	 *
+	 * @param from
+	 *                     offset just past the bad record, or its length field if
+	 *                     the length itself is bad
+	 * @param length
+	 *                     length of the file
+	 * @param record
+	 *                     offset of the bad record
+	 * @throws IOException
+	 *                         if anything else follows it
+	 */
+	private void checkTornFrom(long from, long length, long record) throws IOException
+	{
+		byte[] rest = new byte[8192];
+		out.seek(from);
+		for (long position = from; position < length; position += rest.length)
+		{
+			int count = (int) Math.min(rest.length, length - position);
+			out.readFully(rest, 0, count);
+			for (int i = 0; i < count; i++)
+			{
+				if (rest[i] != 0)
+				{
+					throw new IOException("Log record at offset " + record + " of " + file + " is damaged");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes a record payload and replays it against the server unless the
+	 * checkpoint it belongs to already holds it
+	 *
+	 * @param server
+	 * @param sequence
+	 * @param type
+	 * @param record
+	 * @throws IOException
+	 */
+	private static void apply(ServerImplementation server, long sequence, byte type, DataInputStream record)
+			throws IOException
+	{
+		switch (type)
+		{
+		case SAVE_PLAN:
+			String department = record.readUTF();
+			if (!server.isCheckpointed(department, sequence))
+			{
+				server.applySavePlan(department, new PlanDecoder(record, null).readPlanFile());
+			}
+			break;
+		case ADD_USER:
+			String username = record.readUTF();
+			String password = record.readUTF();
+			String cookie = record.readUTF();
+			String departmentName = record.readUTF();
+			boolean isAdmin = record.readBoolean();
+			if (!server.isCheckpointed(null, sequence))
+			{
+				server.applyAddUser(username, password, cookie, departmentName, isAdmin);
+			}
+			break;
+		case ADD_DEPARTMENT:
+			String added = record.readUTF();
+			if (!server.isCheckpointed(added, sequence))
+			{
+				server.applyAddDepartment(added);
+			}
+			break;
+		case FLAG_PLAN:
+			String dept = record.readUTF();
+			String year = record.readUTF();
+			boolean canEdit = record.readBoolean();
+			if (!server.isCheckpointed(dept, sequence))
+			{
+				server.applyFlagPlan(dept, year, canEdit);
+			}
+			break;
+		case EDIT_PLAN:
+			String edited = record.readUTF();
+			String editedYear = record.readUTF();
+			int count = record.readInt();
+			ArrayList<PlanEdit> edits = new ArrayList<PlanEdit>(count);
+			for (int i = 0; i < count; i++)
+			{
+				edits.add(PlanEdit.readFrom(record));
+			}
+			if (!server.isCheckpointed(edited, sequence))
+			{
+				server.applyEditPlan(edited, editedYear, edits);
+			}
+			break;
+		default:
+			throw new IOException("Unknown log record type " + type);
+		}
+	}
+
+	/**
+	 * @return sequence number of the newest record
+	 */
+	public synchronized long getLastSequence()
+	{
+		return lastSequence;
+	}
+
+	/**
+	 * @return number of records appended since the last checkpoint
+	 */
+	public synchronized int getRecordsSinceCheckpoint()
+	{
+		return recordsSinceCheckpoint;
+	}
+
+	/**
+	 * @return number of fsyncs issued by the writer thread
+	 */
+	public long getBatchCount()
+	{
+		return batches.get();
+	}
+
+	/**
+	 * @return number of records written by the writer thread
+	 */
+	public long getCommittedRecords()
+	{
+		return committedRecords.get();
+	}
+
+	/**
+	 * @return most records committed by a single fsync
+	 */
+	public long getLargestBatch()
+	{
+		return largestBatch.get();
+	}
+
+	/**
+	 * @return mean time in microseconds from queueing a record to it being durable
+	 */
+	public long getAverageCommitMicros()
+	{
+		long records = committedRecords.get();
+		return records == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(commitNanos.get() / records);
+	}
+
+	/**
+	 * @return longest time in microseconds from queueing a record to it being
+	 *         durable
+	 */
+	public long getMaxCommitMicros()
+	{
+		return TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get());
+	}
+
+	/**
+	 * @return one line summary of batch sizes and commit latency
+	 */
+	public String getStats()
+	{
+		long batchCount = getBatchCount();
+		double averageBatch = batchCount == 0 ? 0 : (double) getCommittedRecords() / batchCount;
+		return String.format("log: %d records in %d batches (avg %.1f, max %d), commit avg %d us, max %d us",
+				getCommittedRecords(), batchCount, averageBatch, getLargestBatch(), getAverageCommitMicros(),
+				getMaxCommitMicros());
+	}
+
+	/**
+	 * @return the file backing this log
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Commits anything still queued, stops the writer thread and closes the log
+	 * file
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		synchronized (this)
+		{
+			running = false;
+		}
+		try
+		{
+			writer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		synchronized (out)
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * A framed record waiting for the writer thread
+	 */
+	private static class PendingRecord
+	{
+		final long sequence;
+		final byte[] record;
+		final long queuedAt;
+		final CompletableFuture<Long> done = new CompletableFuture<Long>();
+
+		PendingRecord(long sequence, byte[] record)
+		{
+			this.sequence = sequence;
+			this.record = record;
+			this.queuedAt = System.nanoTime();
+		}
+	}
+
+}
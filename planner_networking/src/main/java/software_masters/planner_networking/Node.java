@@ -1,6 +1,8 @@
 package software_masters.planner_networking;
 
 import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.rmi.RemoteException;
 
@@ -11,10 +13,16 @@ import java.rmi.RemoteException;
 
 public class Node implements Serializable {
 	private static final long serialVersionUID = 5908372020728915437L;
-	private Node parent;
+	// not serialized: a node shared between plan snapshots may still point at
+	// its parent in an older one, so readObject sets it from the node read
+	private transient Node parent;
 	private String name;
 	private String data;
 	private ArrayList<Node> children = new ArrayList<Node>();
+	// stable id within the node's plan, 0 until the plan indexes the node
+	private long id;
+	// distance from the root, -1 until worked out from the parent
+	private int depth = -1;
 
 	/**
 	 * Takes a Node parent, String name, String data, and list of children Sets
@@ -33,12 +41,50 @@ public class Node implements Serializable {
 		this.name = name;
 		this.parent = parent;
 		this.data = data;
+		this.depth = parent == null ? 0 : parent.getDepth() + 1;
 
 	}
 
 	// empty constructor for XML
 	public Node() throws RemoteException { this(null, "blank", "empty", null); }
 
+	/**
+	 * Copies a node under a new parent, sharing the original's children
+	 * 
+	 * @param original node to copy
+	 * @param parent   parent of the copy
+	 */
+	private Node(Node original, Node parent) {
+		this.parent = parent;
+		this.name = original.name;
+		this.data = original.data;
+		this.children = new ArrayList<Node>(original.children);
+		this.id = original.id;
+		this.depth = original.depth;
+	}
+
+	/**
+	 * Returns a copy of this node under parent that shares this node's children.
+	 * Used by a plan copying the path down to a node it edits, so the nodes it
+	 * does not touch stay shared with the snapshot it was made from.
+	 * 
+	 * @param parent parent of the copy
+	 * @return the copy
+	 */
+	Node copyUnder(Node parent) { return new Node(this, parent); }
+
+	/**
+	 * Returns a deep copy of this node and everything below it, ids included
+	 * 
+	 * @param parent parent of the copy
+	 * @return the copy
+	 */
+	Node copyTree(Node parent) {
+		Node copy = new Node(this, parent);
+		for (int i = 0; i < copy.children.size(); i++) { copy.children.set(i, children.get(i).copyTree(copy)); }
+		return copy;
+	}
+
 	/**
 	 * returns a String name of node
 	 * 
@@ -79,7 +125,39 @@ public class Node implements Serializable {
 	 * 
 	 * @param parent parent to set as parent of node
 	 */
-	public void setParent(Node parent) { this.parent = parent; }
+	public void setParent(Node parent) { this.parent = parent; this.depth = -1; }
+
+	/**
+	 * Returns the node's id, unique within its plan and kept across saves
+	 * 
+	 * @return long id of node
+	 */
+	public long getId() { return id; }
+
+	/**
+	 * @param id id to set, normally assigned by the plan
+	 */
+	public void setId(long id) { this.id = id; }
+
+	/**
+	 * Returns the node's distance from the root. Cached, so a node must not be
+	 * moved under a parent at another depth while it has children.
+	 * 
+	 * @return int depth of node, 0 for the root
+	 */
+	public int getDepth()
+	{
+		if (depth < 0)
+		{
+			depth = parent == null ? 0 : parent.getDepth() + 1;
+		}
+		return depth;
+	}
+
+	/**
+	 * @param depth depth to cache, set by the plan when it indexes the node
+	 */
+	void setDepth(int depth) { this.depth = depth; }
 
 	/**
 	 * Returns a list of children nodes
@@ -108,6 +186,13 @@ public class Node implements Serializable {
 	@Override
 	public String toString() { return name; }
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (children != null) {
+			for (Node child : children) { child.parent = this; }
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * For testing only.
@@ -0,0 +1,109 @@
+package software_masters.planner_networking;
+
+import java.io.Serializable;
+
+/**
+ * What one of the server's node id edits did, sent back in place of the plan:
+ * the plan's new version and just the part of the tree that changed.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class NodeUpdate implements Serializable
+{
+
+	private static final long serialVersionUID = -7193542881346720512L;
+	private final String year;
+	private final long version;
+	private final long nodeId;
+	private final long parentId;
+	private final int position;
+	private final Node node;
+	private final long lastNodeId;
+
+	/**
+	 * @param year
+	 * @param version
+	 *                       version of the plan after the edit
+	 * @param nodeId
+	 *                       id of the node created, changed, moved or removed
+	 * @param parentId
+	 *                       id of its parent, -1 for the root (whose id is 0)
+	 * @param position
+	 *                       index among the parent's children
+	 * @param node
+	 *                       copy of the changed part of the tree, or null
+	 * @param lastNodeId
+	 *                       highest node id the plan has handed out
+	 */
+	public NodeUpdate(String year, long version, long nodeId, long parentId, int position, Node node,
+			long lastNodeId)
+	{
+		this.year = year;
+		this.version = version;
+		this.nodeId = nodeId;
+		this.parentId = parentId;
+		this.position = position;
+		this.node = node;
+		this.lastNodeId = lastNodeId;
+	}
+
+	/**
+	 * @return the year
+	 */
+	public String getYear()
+	{
+		return year;
+	}
+
+	/**
+	 * @return version of the plan after the edit
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return id of the node created, changed, moved or removed
+	 */
+	public long getNodeId()
+	{
+		return nodeId;
+	}
+
+	/**
+	 * @return id of the node's parent, -1 for the root
+	 */
+	public long getParentId()
+	{
+		return parentId;
+	}
+
+	/**
+	 * @return index of the node among its parent's children, or where it was
+	 *         before removeBranch
+	 */
+	public int getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * @return copy of the branch for addBranch and moveBranch, of the node on
+	 *         its own for setNodeName and setNodeData, and null for removeBranch
+	 */
+	public Node getNode()
+	{
+		return node;
+	}
+
+	/**
+	 * @return highest node id the plan has handed out
+	 */
+	public long getLastNodeId()
+	{
+		return lastNodeId;
+	}
+
+}
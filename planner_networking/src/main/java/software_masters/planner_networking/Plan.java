@@ -2,18 +2,30 @@ package software_masters.planner_networking;
 
 import java.io.Serializable;
 import java.rmi.RemoteException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * @author Courtney and Jack
  * @author wesley and lee.
  */
-public abstract class Plan implements Serializable// extends UnicastRemoteObject
+public abstract class Plan implements Serializable, Cloneable// extends UnicastRemoteObject
 {
 	private static final long serialVersionUID = 1538776243780396317L;
 	private String name;
 	private ArrayList<String> defaultNodes = new ArrayList<String>();
 	private Node root;
+	private long lastNodeId;
+	// id to node, built on first use after the root is set and kept up to date
+	// by newChild, attach and detach once built
+	private transient volatile HashMap<Long, Node> nodeIndex;
+	// nodes this copy may change in place, null unless the plan came from edit
+	// and has not been published since
+	private transient Set<Node> owned;
 
 	/**
 	 * @throws RemoteException
@@ -35,31 +47,385 @@ public abstract class Plan implements Serializable// extends UnicastRemoteObject
 	 */
 	protected void addDefaultNodes() throws RemoteException
 	{
-		root = new Node(null, defaultNodes.get(0), null, null);
-		Node newParent = new Node(root, defaultNodes.get(1), null, null);
-		root.addChild(newParent);
-		addNode(newParent);
+		setRoot(new Node(null, defaultNodes.get(0), null, null));
+		Node newParent = newChild(root, defaultNodes.get(1));
+		insertNode(newParent);
 	}
 
-	protected int index_depth(Node node) {
-		if(node.getParent() == null)
-			return 0;
+	/**
+	 * @param node
+	 * @return distance of node from the root, cached in the node
+	 */
+	protected int index_depth(Node node)
+	{
+		return node.getDepth();
+	}
+
+	/**
+	 * Creates a node under parent, giving it the next id
+	 * 
+	 * @param parent
+	 * @param name
+	 * @return the new node
+	 * @throws RemoteException
+	 */
+	protected Node newChild(Node parent, String name) throws RemoteException
+	{
+		Node child = new Node(parent, name, null, null);
+		child.setId(++lastNodeId);
+		parent.addChild(child);
+		track(child);
+		return child;
+	}
+
+	/**
+	 * Puts a node taken out by detach, and everything below it, under parent
+	 * 
+	 * @param parent
+	 * @param position
+	 *                     index among parent's children
+	 * @param node
+	 */
+	protected void attach(Node parent, int position, Node node)
+	{
+		parent.getChildren().add(position, node);
+		node.setParent(parent);
+		HashMap<Long, Node> index = nodeIndex;
+		if (index != null)
+		{
+			indexSubtree(node, index);
+		}
+	}
+
+	/**
+	 * Takes a node and everything below it out of the plan
+	 * 
+	 * @param node
+	 */
+	protected void detach(Node node)
+	{
+		node.getParent().removeChild(node);
+		node.setParent(null);
+		HashMap<Long, Node> index = nodeIndex;
+		if (index == null)
+		{
+			return;
+		}
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(node);
+		while (!pending.isEmpty())
+		{
+			Node removed = pending.pop();
+			index.remove(removed.getId());
+			for (Node child : removed.getChildren())
+			{
+				pending.push(child);
+			}
+		}
+	}
+
+	/**
+	 * Copy of this plan to make changes to while this one is still being read.
+	 * Nothing is copied yet: the copy shares every node with this plan until
+	 * ownRoot and ownChild copy the path down to a node it changes, so an edit
+	 * costs the depth of the node rather than the size of the plan. The server
+	 * makes its changes this way and swaps in the result with publish, so a
+	 * plan it has published is never changed again. The id index, if built, is
+	 * handed to the copy and kept up to date there rather than rebuilt, so it
+	 * must only be used by the thread making the copy; this plan builds a new
+	 * one if asked.
+	 * 
+	 * @return the copy
+	 */
+	public Plan edit()
+	{
+		try
+		{
+			Plan copy = (Plan) super.clone();
+			this.nodeIndex = null;
+			copy.owned = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+			return copy;
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Ends a copy made by edit. Afterwards the plan must be treated as read
+	 * only, and is changed by editing it again.
+	 */
+	public void publish()
+	{
+		this.owned = null;
+	}
+
+	/**
+	 * @return the root, first copied if this plan came from edit and still
+	 *         shares it
+	 */
+	Node ownRoot()
+	{
+		if (owned != null && root != null && !owned.contains(root))
+		{
+			root = root.copyUnder(null);
+			track(root);
+		}
+		return root;
+	}
+
+	/**
+	 * @param parent
+	 *                   node already returned by ownRoot or ownChild
+	 * @param position
+	 *                   index among parent's children
+	 * @return the child, first copied under parent if this plan came from edit
+	 *         and still shares it
+	 */
+	Node ownChild(Node parent, int position)
+	{
+		Node child = parent.getChildren().get(position);
+		if (owned != null && !owned.contains(child))
+		{
+			child = child.copyUnder(parent);
+			parent.getChildren().set(position, child);
+			track(child);
+		}
+		return child;
+	}
+
+	/**
+	 * Adds a node created or copied in this plan to the index, if built, and to
+	 * the nodes it may change
+	 */
+	private void track(Node node)
+	{
+		HashMap<Long, Node> index = nodeIndex;
+		if (index != null)
+		{
+			index.put(node.getId(), node);
+		}
+		if (owned != null)
+		{
+			owned.add(node);
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return node with that id, or null if the plan has none
+	 */
+	public Node getNode(long id)
+	{
+		return index().get(id);
+	}
+
+	/**
+	 * Finds a node's path in this plan from its id. Works in plans made by edit,
+	 * where a node shared with an older plan may still point at its parent
+	 * there: the parent is looked up again by id, which copying never changes.
+	 * 
+	 * @param id
+	 * @return index of the node and each of its ancestors among their siblings,
+	 *         from the root down, or null if the plan has no such node
+	 */
+	public int[] pathTo(long id)
+	{
+		HashMap<Long, Node> index = index();
+		Node node = index.get(id);
+		if (node == null)
+		{
+			return null;
+		}
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		while (node != root)
+		{
+			Node parent = index.get(node.getParent().getId());
+			positions.add(parent.getChildren().indexOf(node));
+			node = parent;
+		}
+		int[] path = new int[positions.size()];
+		for (int i = 0; i < path.length; i++)
+		{
+			path[i] = positions.get(path.length - 1 - i);
+		}
+		return path;
+	}
+
+	/**
+	 * @return number of nodes in the plan
+	 */
+	public int getNodeCount()
+	{
+		return index().size();
+	}
+
+	/**
+	 * Builds the id index if needed. Nodes without an id, from files written
+	 * before nodes had ids, are given one here. The root's id is always 0, since
+	 * it may be shared with other versions of the plan.
+	 * 
+	 * @return the index
+	 */
+	private HashMap<Long, Node> index()
+	{
+		HashMap<Long, Node> index = nodeIndex;
+		if (index == null)
+		{
+			index = new HashMap<Long, Node>();
+			if (root != null)
+			{
+				root.setDepth(0);
+				indexSubtree(root, index);
+			}
+			nodeIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Adds node and everything below it to the index, caching their depths
+	 */
+	private void indexSubtree(Node node, HashMap<Long, Node> index)
+	{
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		ArrayList<Node> unnumbered = new ArrayList<Node>();
+		pending.push(node);
+		while (!pending.isEmpty())
+		{
+			Node next = pending.pop();
+			if (next.getParent() != null)
+			{
+				next.setDepth(next.getParent().getDepth() + 1);
+			}
+			if (next.getId() == 0 && next != root)// the root keeps 0, it may be shared with other versions
+			{
+				unnumbered.add(next);
+			}
+			else
+			{
+				lastNodeId = Math.max(lastNodeId, next.getId());
+				index.put(next.getId(), next);
+			}
+			for (int i = next.getChildren().size() - 1; i >= 0; i--)
+			{
+				pending.push(next.getChildren().get(i));
+			}
+		}
+		for (Node next : unnumbered)
+		{
+			next.setId(++lastNodeId);
+			index.put(next.getId(), next);
+		}
+	}
+
+	/**
+	 * Adds the branch the plan type requires below parent, recording a flight
+	 * recorder event when one is enabled
+	 * 
+	 * @param parent
+	 * @return
+	 */
+	public boolean addNode(Node parent) throws RemoteException, IllegalArgumentException
+	{
+		PlannerEvents.NodeEditEvent event = start("add", parent);
+		boolean added = insertNode(parent);
+		commit(event);
+		return added;
+	}
+
+	/**
+	 * Removes node and everything below it if the plan type allows, recording a
+	 * flight recorder event when one is enabled
+	 * 
+	 * @param Node
+	 * @return
+	 */
+	public boolean removeNode(Node Node) throws IllegalArgumentException
+	{
+		PlannerEvents.NodeEditEvent event = start("remove", Node);
+		boolean removed = deleteNode(Node);
+		commit(event);
+		return removed;
+	}
+
+	/**
+	 * Moves node and everything below it under newParent, which must be at the
+	 * same level as its old parent. Taking it from a different parent is allowed
+	 * only where removeNode would allow it.
+	 * 
+	 * @param node
+	 * @param newParent
+	 * @param position
+	 *                      index among newParent's children once node is moved
+	 * @return true if moved
+	 * @throws IllegalArgumentException
+	 */
+	public boolean moveNode(Node node, Node newParent, int position) throws IllegalArgumentException
+	{
+		if (node == null || newParent == null || node.getParent() == null
+				|| newParent.getDepth() != node.getDepth() - 1)
+		{
+			throw new IllegalArgumentException("Cannot move this node");
+		}
+		boolean sameParent = node.getParent() == newParent;
+		if (position < 0 || position > newParent.getChildren().size() - (sameParent ? 1 : 0))
+		{
+			throw new IllegalArgumentException("Cannot move this node");
+		}
+		PlannerEvents.NodeEditEvent event = start("move", node);
+		if (sameParent)
+		{
+			detach(node);
+		}
 		else
-			return index_depth(node.getParent()) +1;
-		
-		
+		{
+			deleteNode(node);
+		}
+		attach(newParent, position, node);
+		commit(event);
+		return true;
 	}
+
 	/**
 	 * @param parent
 	 * @return
 	 */
-	abstract public boolean addNode(Node parent) throws RemoteException, IllegalArgumentException;
+	abstract protected boolean insertNode(Node parent) throws RemoteException, IllegalArgumentException;
 
 	/**
 	 * @param Node
 	 * @return
 	 */
-	abstract public boolean removeNode(Node Node) throws IllegalArgumentException;
+	abstract protected boolean deleteNode(Node Node) throws IllegalArgumentException;
+
+	/**
+	 * Starts an edit event, describing the node before the edit moves it
+	 */
+	private PlannerEvents.NodeEditEvent start(String operation, Node node)
+	{
+		PlannerEvents.NodeEditEvent event = new PlannerEvents.NodeEditEvent();
+		if (event.isEnabled() && node != null)
+		{
+			event.operation = operation;
+			event.planType = getClass().getSimpleName();
+			event.nodeId = node.getId();
+			event.depth = node.getDepth();
+		}
+		event.begin();
+		return event;
+	}
+
+	private void commit(PlannerEvents.NodeEditEvent event)
+	{
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.nodes = getNodeCount();
+			event.commit();
+		}
+	}
 
 	/**
 	 * Takes a Node node and String data Sets data for the node
@@ -128,7 +494,17 @@ public abstract class Plan implements Serializable// extends UnicastRemoteObject
 	/**
 	 * @param root the root to set
 	 */
-	public void setRoot(Node root) { this.root = root; }
+	public void setRoot(Node root) { this.root = root; this.nodeIndex = null; }
+
+	/**
+	 * @return the highest node id handed out so far
+	 */
+	public long getLastNodeId() { return lastNodeId; }
+
+	/**
+	 * @param lastNodeId the highest node id handed out so far
+	 */
+	public void setLastNodeId(long lastNodeId) { this.lastNodeId = lastNodeId; }
 
 	/*
 	 * (non-Javadoc)
@@ -0,0 +1,344 @@
+package software_masters.planner_networking;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the plan bodies read from department files within a memory budget,
+ * dropping the least recently used to be read from their file again on the next
+ * getPlan. Only planFiles with a PlanSource, whose bodies are still unchanged
+ * on disk, are tracked.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanCache
+{
+
+	static final long DEFAULT_BUDGET = Long.getLong("planner.planCacheBytes", 64L << 20);
+
+	private static final PlanCache shared = new PlanCache(DEFAULT_BUDGET);
+
+	private final LinkedHashMap<PlanSource, Entry> entries = new LinkedHashMap<PlanSource, Entry>(16, 0.75f, true);
+	private long budget;
+	private long size;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param budget
+	 *                   estimated bytes of plan bodies to keep in memory
+	 */
+	public PlanCache(long budget)
+	{
+		this.budget = budget;
+	}
+
+	/**
+	 * @return the cache used by every planFile
+	 */
+	public static PlanCache getShared()
+	{
+		return shared;
+	}
+
+	/**
+	 * Records a getPlan answered from memory
+	 *
+	 * @param source
+	 *                   where the body is stored on disk
+	 */
+	public void hit(PlanSource source)
+	{
+		hits.incrementAndGet();
+		synchronized (this)
+		{
+			entries.get(source);
+		}
+	}
+
+	/**
+	 * Records a body read from disk and drops older ones if that puts the cache
+	 * over budget. The caller must not hold any planFile's lock.
+	 *
+	 * @param planFile
+	 * @param source
+	 *                     where the body was read from
+	 * @param plan
+	 *                     the body
+	 */
+	public void loaded(PlanFile planFile, PlanSource source, Plan plan)
+	{
+		misses.incrementAndGet();
+		long weight = estimateSize(plan);
+		synchronized (this)
+		{
+			put(source, new Entry(planFile, source, weight));
+		}
+		evictOverBudget();
+	}
+
+	/**
+	 * Follows a body to its place in a new department file. A body written for the
+	 * first time starts being tracked here. Never drops anything, since the
+	 * caller holds the department's write lock.
+	 *
+	 * @param planFile
+	 * @param from
+	 *                     previous source, or null if the body was new
+	 * @param to
+	 *                     source in the new file
+	 */
+	public void moved(PlanFile planFile, PlanSource from, PlanSource to)
+	{
+		Entry entry = null;
+		synchronized (this)
+		{
+			if (from != null)
+			{
+				entry = entries.remove(from);
+				if (entry != null)
+				{
+					size -= entry.weight;
+				}
+			}
+		}
+		long weight = entry != null ? entry.weight : -1;
+		if (weight < 0)
+		{
+			Plan plan = planFile.peekPlan();
+			if (plan == null)
+			{
+				return;
+			}
+			weight = estimateSize(plan);
+		}
+		synchronized (this)
+		{
+			put(to, new Entry(planFile, to, weight));
+		}
+	}
+
+	/**
+	 * Stops tracking the body of a planFile its department no longer holds, so a
+	 * plan replaced by a save, edit or flag is not kept in memory and counted
+	 * against the budget until it is the eldest. The body is left in the planFile
+	 * for anyone still reading it.
+	 *
+	 * @param planFile
+	 */
+	public void removed(PlanFile planFile)
+	{
+		PlanSource source = planFile.getSource();
+		if (source == null)
+		{
+			return;
+		}
+		synchronized (this)
+		{
+			Entry entry = entries.get(source);
+			if (entry != null && entry.planFile == planFile)
+			{
+				entries.remove(source);
+				size -= entry.weight;
+			}
+		}
+	}
+
+	/**
+	 * Stops tracking every body stored in a department file a checkpoint has just
+	 * rewritten, other than the ones it moved into the new file. Never drops
+	 * anything, since the caller holds the department's write lock.
+	 *
+	 * @param file
+	 *                    the department file
+	 * @param current
+	 *                    sources of the bodies in the new file
+	 */
+	public void rewritten(File file, Collection<PlanSource> current)
+	{
+		synchronized (this)
+		{
+			Iterator<Map.Entry<PlanSource, Entry>> all = entries.entrySet().iterator();
+			while (all.hasNext())
+			{
+				Map.Entry<PlanSource, Entry> next = all.next();
+				if (next.getKey().getFile().equals(file) && !current.contains(next.getKey()))
+				{
+					size -= next.getValue().weight;
+					all.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param budget
+	 *                   estimated bytes of plan bodies to keep in memory
+	 */
+	public void setBudget(long budget)
+	{
+		synchronized (this)
+		{
+			this.budget = budget;
+		}
+		evictOverBudget();
+	}
+
+	/**
+	 * @return the budget
+	 */
+	public synchronized long getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * @return estimated bytes of the bodies held
+	 */
+	public synchronized long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return number of bodies held
+	 */
+	public synchronized int getCount()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return getPlan calls answered from memory
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return bodies read from disk
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return bodies dropped to stay within the budget
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * @return counters in a form suited to the server console
+	 */
+	public String getStats()
+	{
+		return "plan cache: " + getCount() + " plans, " + getSize() + " of " + getBudget() + " bytes, hits "
+				+ getHits() + ", misses " + getMisses() + ", evictions " + getEvictions();
+	}
+
+	/**
+	 * Rough heap size of a plan body: object headers and fields for each node and
+	 * its child list, plus its strings.
+	 *
+	 * @param plan
+	 * @return estimated bytes
+	 */
+	static long estimateSize(Plan plan)
+	{
+		long bytes = 64;
+		if (plan.getRoot() == null)
+		{
+			return bytes;
+		}
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(plan.getRoot());
+		while (!pending.isEmpty())
+		{
+			Node node = pending.pop();
+			bytes += 96 + 4 * node.getChildren().size() + stringSize(node.getName()) + stringSize(node.getData());
+			for (Node child : node.getChildren())
+			{
+				pending.push(child);
+			}
+		}
+		return bytes;
+	}
+
+	private static long stringSize(String value)
+	{
+		return value == null ? 0 : 40 + 2L * value.length();
+	}
+
+	/**
+	 * Adds an entry, replacing any for the same source. Caller holds the cache
+	 * lock.
+	 */
+	private void put(PlanSource source, Entry entry)
+	{
+		Entry old = entries.put(source, entry);
+		if (old != null)
+		{
+			size -= old.weight;
+		}
+		size += entry.weight;
+	}
+
+	/**
+	 * Drops least recently used bodies until the cache is within budget. The most
+	 * recent body is always kept, however large. Bodies are dropped by the thread
+	 * that pushed the cache over budget, after it has let go of the cache lock.
+	 */
+	private void evictOverBudget()
+	{
+		ArrayList<Entry> victims = new ArrayList<Entry>();
+		synchronized (this)
+		{
+			Iterator<Map.Entry<PlanSource, Entry>> eldest = entries.entrySet().iterator();
+			while (size > budget && entries.size() > 1)
+			{
+				Entry entry = eldest.next().getValue();
+				eldest.remove();
+				size -= entry.weight;
+				victims.add(entry);
+			}
+		}
+		for (Entry victim : victims)
+		{
+			if (victim.planFile.evict(victim.source))
+			{
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * A body held in memory and the source it can be read back from
+	 */
+	private static class Entry
+	{
+		final PlanFile planFile;
+		final PlanSource source;
+		final long weight;
+
+		Entry(PlanFile planFile, PlanSource source, long weight)
+		{
+			this.planFile = planFile;
+			this.source = source;
+			this.weight = weight;
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package software_masters.planner_networking;
+
+import java.io.Serializable;
+
+/**
+ * One change to a plan, sent to the department's listeners. It says what
+ * changed, not how; a change with no year means some were dropped and every
+ * plan should be fetched again.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanChange implements Serializable
+{
+
+	private static final long serialVersionUID = 5281179093245370316L;
+	private final String year;
+	private final long version;
+	private final long[] nodeIds;
+	private final boolean canEdit;
+
+	/**
+	 * @param year
+	 * @param version
+	 *                    version of the plan after the change
+	 * @param nodeIds
+	 *                    ids of the nodes edited, or the parents of branches
+	 *                    added; null if the whole plan was saved
+	 * @param canEdit
+	 */
+	public PlanChange(String year, long version, long[] nodeIds, boolean canEdit)
+	{
+		this.year = year;
+		this.version = version;
+		this.nodeIds = nodeIds;
+		this.canEdit = canEdit;
+	}
+
+	/**
+	 * @return change standing in for changes a listener missed
+	 */
+	static PlanChange missed()
+	{
+		return new PlanChange(null, 0, null, false);
+	}
+
+	/**
+	 * @return true if changes were dropped and every plan should be fetched again
+	 */
+	public boolean isMissed()
+	{
+		return year == null;
+	}
+
+	/**
+	 * @return the year
+	 */
+	public String getYear()
+	{
+		return year;
+	}
+
+	/**
+	 * @return version of the plan after the change
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return ids of the nodes edited, or null if the whole plan was saved
+	 */
+	public long[] getNodeIds()
+	{
+		return nodeIds;
+	}
+
+	/**
+	 * @return whether the plan can be edited after the change
+	 */
+	public boolean isCanEdit()
+	{
+		return canEdit;
+	}
+
+}
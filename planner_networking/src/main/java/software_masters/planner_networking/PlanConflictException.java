@@ -0,0 +1,59 @@
+package software_masters.planner_networking;
+
+/**
+ * Thrown by savePlan and editPlan when the plan was changed by someone else
+ * after the caller loaded it. Nothing is saved; the caller should fetch the
+ * plan again and reapply its changes.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanConflictException extends IllegalArgumentException
+{
+
+	private static final long serialVersionUID = 3650922398514417127L;
+	private final String year;
+	private final long loadedVersion;
+	private final long currentVersion;
+
+	/**
+	 * @param year
+	 * @param loadedVersion
+	 *                           version the caller's changes were made to
+	 * @param currentVersion
+	 *                           version stored on the server
+	 */
+	public PlanConflictException(String year, long loadedVersion, long currentVersion)
+	{
+		super("Plan " + year + " has changed since it was loaded (version " + currentVersion + ", loaded "
+				+ loadedVersion + ")");
+		this.year = year;
+		this.loadedVersion = loadedVersion;
+		this.currentVersion = currentVersion;
+	}
+
+	/**
+	 * @return the year
+	 */
+	public String getYear()
+	{
+		return year;
+	}
+
+	/**
+	 * @return version the caller's changes were made to
+	 */
+	public long getLoadedVersion()
+	{
+		return loadedVersion;
+	}
+
+	/**
+	 * @return version stored on the server
+	 */
+	public long getCurrentVersion()
+	{
+		return currentVersion;
+	}
+
+}
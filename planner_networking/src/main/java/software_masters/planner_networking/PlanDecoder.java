@@ -0,0 +1,251 @@
+package software_masters.planner_networking;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads plans written by PlanEncoder. A decoder given a string table resolves
+ * string references against it, otherwise strings are read inline.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanDecoder
+{
+
+	private static final ConcurrentHashMap<String, Constructor<? extends Plan>> planTypes = new ConcurrentHashMap<String, Constructor<? extends Plan>>();
+
+	private final DataInputStream in;
+	private final String[] strings;
+
+	/**
+	 * @param in
+	 * @param strings
+	 *                    table read with readDictionary, or null for inline strings
+	 */
+	public PlanDecoder(InputStream in, String[] strings)
+	{
+		this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+		this.strings = strings;
+	}
+
+	/**
+	 * Reads a string table written by PlanEncoder.writeDictionary
+	 *
+	 * @param in
+	 * @return table indexed from one, entry zero is null
+	 * @throws IOException
+	 */
+	public static String[] readDictionary(InputStream in) throws IOException
+	{
+		PlanDecoder table = new PlanDecoder(in, null);
+		int count = table.readVarInt();
+		String[] strings = new String[count + 1];
+		for (int i = 1; i <= count; i++)
+		{
+			strings[i] = table.readString();
+		}
+		return strings;
+	}
+
+	/**
+	 * @return planFile read from a length prefixed record
+	 * @throws IOException
+	 */
+	public PlanFile readPlanFile() throws IOException
+	{
+		readVarInt();
+		String year = readString();
+		boolean canEdit = in.readBoolean();
+		return new PlanFile(year, canEdit, readPlan());
+	}
+
+	/**
+	 * Skips a length prefixed planFile record without decoding it
+	 *
+	 * @throws IOException
+	 */
+	public void skipPlanFile() throws IOException
+	{
+		int length = readVarInt();
+		while (length > 0)
+		{
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0)
+			{
+				in.readByte();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	/**
+	 * @return plan, or null if none was written
+	 * @throws IOException
+	 */
+	public Plan readPlan() throws IOException
+	{
+		String type = readString();
+		if (type == null)
+		{
+			return null;
+		}
+		Plan plan = newPlan(type);
+		plan.setName(readString());
+		int defaultCount = readVarInt();
+		ArrayList<String> defaults = new ArrayList<String>(defaultCount);
+		for (int i = 0; i < defaultCount; i++)
+		{
+			defaults.add(readString());
+		}
+		plan.setDefaultNodes(defaults);
+		int root = in.readUnsignedByte();
+		switch (root)
+		{
+		case PlanEncoder.NO_ROOT:
+			plan.setLastNodeId(0);
+			plan.setRoot(null);
+			break;
+		case PlanEncoder.ROOT_WITHOUT_IDS:
+			plan.setLastNodeId(0);
+			plan.setRoot(readNode(null, false));
+			break;
+		case PlanEncoder.ROOT_WITH_IDS:
+			plan.setLastNodeId(readVarLong());
+			plan.setRoot(readNode(null, true));
+			break;
+		default:
+			throw new IOException("Unknown root marker " + root);
+		}
+		return plan;
+	}
+
+	/**
+	 * @param parent
+	 *                    parent of the node being read
+	 * @param withIds
+	 *                    false for plans written before nodes had ids
+	 * @return node with all of its children
+	 * @throws IOException
+	 */
+	public Node readNode(Node parent, boolean withIds) throws IOException
+	{
+		long id = withIds ? readVarLong() : 0;
+		String name = readString();
+		String data = readString();
+		Node node = new Node(parent, name, data, null);
+		node.setId(id);
+		int childCount = readVarInt();
+		node.getChildren().ensureCapacity(childCount);
+		for (int i = 0; i < childCount; i++)
+		{
+			node.addChild(readNode(node, withIds));
+		}
+		return node;
+	}
+
+	/**
+	 * @return string read inline or looked up in the string table
+	 * @throws IOException
+	 */
+	public String readString() throws IOException
+	{
+		int value = readVarInt();
+		if (value == 0)
+		{
+			return null;
+		}
+		if (strings != null)
+		{
+			if (value >= strings.length)
+			{
+				throw new IOException("String reference out of range: " + value);
+			}
+			return strings[value];
+		}
+		byte[] bytes = new byte[value - 1];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return boolean
+	 * @throws IOException
+	 */
+	public boolean readBoolean() throws IOException
+	{
+		return in.readBoolean();
+	}
+
+	/**
+	 * @return int written by PlanEncoder.writeVarInt
+	 * @throws IOException
+	 */
+	public int readVarInt() throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * @return long written by PlanEncoder.writeVarLong
+	 * @throws IOException
+	 */
+	public long readVarLong() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Creates an empty plan of the named type. Constructors are looked up once per
+	 * type.
+	 *
+	 * @param type
+	 *                 class name of a Plan subclass
+	 * @return new plan
+	 * @throws IOException
+	 */
+	private static Plan newPlan(String type) throws IOException
+	{
+		try
+		{
+			Constructor<? extends Plan> constructor = planTypes.get(type);
+			if (constructor == null)
+			{
+				constructor = Class.forName(type).asSubclass(Plan.class).getConstructor();
+				planTypes.put(type, constructor);
+			}
+			return constructor.newInstance();
+		}
+		catch (ReflectiveOperationException | ClassCastException e)
+		{
+			throw new IOException("Unknown plan type " + type, e);
+		}
+	}
+
+}
@@ -0,0 +1,385 @@
+package software_masters.planner_networking;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * One change to a plan, sent to Server.editPlan in place of the whole planFile.
+ * Nodes are addressed by their path from the root, the index of each node among
+ * its parent's children; a move's target is the new parent's path followed by
+ * the node's index once moved.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanEdit implements Serializable
+{
+
+	private static final long serialVersionUID = -2459157320476014123L;
+
+	/**
+	 * Kinds of change a client can make while editing
+	 */
+	public enum Type
+	{
+		SET_NAME, SET_DATA, ADD_BRANCH, REMOVE_BRANCH, SET_YEAR, MOVE_BRANCH
+	}
+
+	private final Type type;
+	private final int[] path;
+	private final String value;
+	private final int[] target;
+
+	/**
+	 * @param type
+	 * @param path
+	 *                  path of the node changed, unused for SET_YEAR
+	 * @param value
+	 *                  new name, data or year, unused for branches
+	 */
+	public PlanEdit(Type type, int[] path, String value)
+	{
+		this(type, path, value, null);
+	}
+
+	/**
+	 * @param type
+	 * @param path
+	 *                   path of the node changed, unused for SET_YEAR
+	 * @param value
+	 *                   new name, data or year, unused for branches
+	 * @param target
+	 *                   for MOVE_BRANCH, path of the new parent followed by the
+	 *                   node's index among its children
+	 * @throws IllegalArgumentException
+	 *                                      if path is null
+	 */
+	public PlanEdit(Type type, int[] path, String value, int[] target)
+	{
+		if (path == null)
+		{
+			throw new IllegalArgumentException("An edit needs a path, empty for the root");
+		}
+		this.type = type;
+		this.path = path;
+		this.value = value;
+		this.target = target;
+	}
+
+	/**
+	 * @param node
+	 * @param name
+	 * @return edit renaming node
+	 */
+	public static PlanEdit setName(Node node, String name)
+	{
+		return new PlanEdit(Type.SET_NAME, pathOf(node), name);
+	}
+
+	/**
+	 * @param node
+	 * @param data
+	 * @return edit setting node's data
+	 */
+	public static PlanEdit setData(Node node, String data)
+	{
+		return new PlanEdit(Type.SET_DATA, pathOf(node), data);
+	}
+
+	/**
+	 * @param parent
+	 * @return edit adding a branch below parent, as Plan.addNode does
+	 */
+	public static PlanEdit addBranch(Node parent)
+	{
+		return new PlanEdit(Type.ADD_BRANCH, pathOf(parent), null);
+	}
+
+	/**
+	 * @param node
+	 * @return edit removing node and everything below it
+	 */
+	public static PlanEdit removeBranch(Node node)
+	{
+		return new PlanEdit(Type.REMOVE_BRANCH, pathOf(node), null);
+	}
+
+	/**
+	 * @param node
+	 * @param newParent
+	 * @param position
+	 *                      index among newParent's children once node is moved
+	 * @return edit moving node and everything below it
+	 */
+	public static PlanEdit moveBranch(Node node, Node newParent, int position)
+	{
+		int[] parentPath = pathOf(newParent);
+		int[] target = new int[parentPath.length + 1];
+		System.arraycopy(parentPath, 0, target, 0, parentPath.length);
+		target[parentPath.length] = position;
+		return new PlanEdit(Type.MOVE_BRANCH, pathOf(node), null, target);
+	}
+
+	/**
+	 * @param year
+	 * @return edit saving the plan under another year
+	 */
+	public static PlanEdit setYear(String year)
+	{
+		return new PlanEdit(Type.SET_YEAR, new int[0], year);
+	}
+
+	/**
+	 * @param node
+	 * @return index of node and each of its ancestors among their siblings, from
+	 *         the root down
+	 */
+	public static int[] pathOf(Node node)
+	{
+		ArrayList<Integer> indexes = new ArrayList<Integer>();
+		while (node.getParent() != null)
+		{
+			indexes.add(node.getParent().getChildren().indexOf(node));
+			node = node.getParent();
+		}
+		int[] path = new int[indexes.size()];
+		for (int i = 0; i < path.length; i++)
+		{
+			path[i] = indexes.get(path.length - 1 - i);
+		}
+		return path;
+	}
+
+	/**
+	 * Applies the edit to a planFile. The server applies edits to a working copy
+	 * from Plan.edit and drops the copy if any of them fails, so nothing here is
+	 * undone.
+	 *
+	 * @param planFile
+	 * @throws IllegalArgumentException
+	 *                                      if the node does not exist or the
+	 *                                      plan's rules forbid the change
+	 * @throws RemoteException
+	 */
+	public void apply(PlanFile planFile) throws IllegalArgumentException, RemoteException
+	{
+		if (type == Type.SET_YEAR)
+		{
+			planFile.setYear(value);
+			return;
+		}
+		Plan plan = planFile.getPlan();
+		Node node = own(plan, path, path.length);
+		switch (type)
+		{
+		case SET_NAME:
+			node.setName(value);
+			break;
+		case SET_DATA:
+			plan.setNodeData(node, value);
+			break;
+		case ADD_BRANCH:
+			plan.addNode(node);
+			break;
+		case REMOVE_BRANCH:
+			plan.removeNode(node);
+			break;
+		case MOVE_BRANCH:
+			if (target == null || target.length == 0)
+			{
+				throw new IllegalArgumentException("Node doesn't exist");
+			}
+			plan.moveNode(node, own(plan, target, target.length - 1), target[target.length - 1]);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown edit " + type);
+		}
+	}
+
+	/**
+	 * @param plan
+	 * @return the node this edit addresses
+	 * @throws IllegalArgumentException
+	 *                                      if there is no such node
+	 */
+	public Node find(Plan plan) throws IllegalArgumentException
+	{
+		Node node = plan.getRoot();
+		for (int index : path)
+		{
+			if (node == null || index < 0 || index >= node.getChildren().size())
+			{
+				throw new IllegalArgumentException("Node doesn't exist");
+			}
+			node = node.getChildren().get(index);
+		}
+		if (node == null)
+		{
+			throw new IllegalArgumentException("Node doesn't exist");
+		}
+		return node;
+	}
+
+	/**
+	 * Finds the node to change. In a plan made by Plan.edit the path down to it
+	 * is copied on the way, so the plan the copy was made from is untouched.
+	 *
+	 * @param plan
+	 * @param path
+	 * @param length
+	 *                   number of steps of path to follow
+	 * @return the node at the end of those steps
+	 * @throws IllegalArgumentException
+	 *                                      if there is no such node
+	 */
+	private static Node own(Plan plan, int[] path, int length) throws IllegalArgumentException
+	{
+		Node node = plan.ownRoot();
+		for (int i = 0; i < length; i++)
+		{
+			int index = path[i];
+			if (node == null || index < 0 || index >= node.getChildren().size())
+			{
+				throw new IllegalArgumentException("Node doesn't exist");
+			}
+			node = plan.ownChild(node, index);
+		}
+		if (node == null)
+		{
+			throw new IllegalArgumentException("Node doesn't exist");
+		}
+		return node;
+	}
+
+	/**
+	 * @return ids of the root and of each node reached by following the first
+	 *         length steps of path, stopping early at a step that does not exist
+	 */
+	static long[] idsAlong(Plan plan, int[] path, int length)
+	{
+		long[] ids = new long[length + 1];
+		Node node = plan.getRoot();
+		int found = 0;
+		while (node != null)
+		{
+			ids[found++] = node.getId();
+			if (found > length)
+			{
+				break;
+			}
+			int index = path[found - 1];
+			node = index < 0 || index >= node.getChildren().size() ? null : node.getChildren().get(index);
+		}
+		return found == ids.length ? ids : Arrays.copyOf(ids, found);
+	}
+
+	/**
+	 * Writes the edit to a mutation log record
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutputStream out) throws IOException
+	{
+		out.writeByte(type.ordinal());
+		out.writeShort(path.length);
+		for (int index : path)
+		{
+			out.writeInt(index);
+		}
+		if (value == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		if (type == Type.MOVE_BRANCH)
+		{
+			out.writeShort(target.length);
+			for (int index : target)
+			{
+				out.writeInt(index);
+			}
+		}
+	}
+
+	/**
+	 * @param in
+	 * @return edit written by writeTo
+	 * @throws IOException
+	 */
+	public static PlanEdit readFrom(DataInputStream in) throws IOException
+	{
+		int ordinal = in.readUnsignedByte();
+		if (ordinal >= Type.values().length)
+		{
+			throw new IOException("Unknown edit type " + ordinal);
+		}
+		int[] path = new int[in.readUnsignedShort()];
+		for (int i = 0; i < path.length; i++)
+		{
+			path[i] = in.readInt();
+		}
+		String value = null;
+		int length = in.readInt();
+		if (length >= 0)
+		{
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		int[] target = null;
+		if (Type.values()[ordinal] == Type.MOVE_BRANCH)
+		{
+			target = new int[in.readUnsignedShort()];
+			for (int i = 0; i < target.length; i++)
+			{
+				target[i] = in.readInt();
+			}
+		}
+		return new PlanEdit(Type.values()[ordinal], path, value, target);
+	}
+
+	/**
+	 * @return the type
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the path
+	 */
+	public int[] getPath()
+	{
+		return path;
+	}
+
+	/**
+	 * @return the value
+	 */
+	public String getValue()
+	{
+		return value;
+	}
+
+	/**
+	 * @return the target of a move, null for other edits
+	 */
+	public int[] getTarget()
+	{
+		return target;
+	}
+
+}
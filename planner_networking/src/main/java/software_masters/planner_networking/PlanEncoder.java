@@ -0,0 +1,220 @@
+package software_masters.planner_networking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes plans in the compact binary form shared by snapshots and the mutation
+ * log. Counts and lengths are varints, and strings are either written once to
+ * a table and referenced by index, or written in place for small standalone
+ * records.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanEncoder
+{
+
+	/**
+	 * Root markers. Plans written before nodes had ids use ROOT_WITHOUT_IDS, so
+	 * bodies copied from older files still read.
+	 */
+	static final int NO_ROOT = 0;
+	static final int ROOT_WITHOUT_IDS = 1;
+	static final int ROOT_WITH_IDS = 2;
+
+	private final DataOutputStream out;
+	private final HashMap<String, Integer> dictionary;
+	private final ArrayList<String> strings;
+
+	/**
+	 * @param out
+	 * @param useDictionary
+	 *                          true to collect strings into a table written
+	 *                          separately with writeDictionary
+	 */
+	public PlanEncoder(OutputStream out, boolean useDictionary)
+	{
+		this.out = new DataOutputStream(out);
+		this.dictionary = useDictionary ? new HashMap<String, Integer>() : null;
+		this.strings = useDictionary ? new ArrayList<String>() : null;
+	}
+
+	/**
+	 * Writes a planFile as a length prefixed record so readers can skip it
+	 *
+	 * @param planFile
+	 * @throws IOException
+	 */
+	public void writePlanFile(PlanFile planFile) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PlanEncoder body = new PlanEncoder(bytes, this.dictionary, this.strings);
+		body.writeString(planFile.getYear());
+		body.out.writeBoolean(planFile.isCanEdit());
+		body.writePlan(planFile.getPlan());
+		body.out.flush();
+		writeVarInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	/**
+	 * @param plan
+	 * @throws IOException
+	 */
+	public void writePlan(Plan plan) throws IOException
+	{
+		if (plan == null)
+		{
+			writeString(null);
+			return;
+		}
+		writeString(plan.getClass().getName());
+		writeString(plan.getName());
+		ArrayList<String> defaults = plan.getDefaultNodes();
+		writeVarInt(defaults.size());
+		for (String name : defaults)
+		{
+			writeString(name);
+		}
+		if (plan.getRoot() == null)
+		{
+			out.writeByte(NO_ROOT);
+			return;
+		}
+		out.writeByte(ROOT_WITH_IDS);
+		writeVarLong(plan.getLastNodeId());
+		writeNode(plan.getRoot());
+	}
+
+	/**
+	 * Writes a node and all of its children depth first
+	 *
+	 * @param node
+	 * @throws IOException
+	 */
+	public void writeNode(Node node) throws IOException
+	{
+		writeVarLong(node.getId());
+		writeString(node.getName());
+		writeString(node.getData());
+		ArrayList<Node> children = node.getChildren();
+		writeVarInt(children.size());
+		for (Node child : children)
+		{
+			writeNode(child);
+		}
+	}
+
+	/**
+	 * Writes a string reference in dictionary mode, or the string itself in inline
+	 * mode. Zero stands for null in both.
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			writeVarInt(0);
+			return;
+		}
+		if (dictionary == null)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes.length + 1);
+			out.write(bytes);
+			return;
+		}
+		Integer index = dictionary.get(value);
+		if (index == null)
+		{
+			strings.add(value);
+			index = strings.size();
+			dictionary.put(value, index);
+		}
+		writeVarInt(index);
+	}
+
+	/**
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeBoolean(boolean value) throws IOException
+	{
+		out.writeBoolean(value);
+	}
+
+	/**
+	 * @param value
+	 *                  unsigned long written seven bits to a byte
+	 * @throws IOException
+	 */
+	public void writeVarLong(long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Writes a non-negative int in one to five bytes, seven bits at a time
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeVarInt(int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Writes the string table collected so far. Dictionary mode only.
+	 *
+	 * @param target
+	 * @throws IOException
+	 */
+	public void writeDictionary(OutputStream target) throws IOException
+	{
+		PlanEncoder table = new PlanEncoder(target, false);
+		table.writeVarInt(strings.size());
+		for (String value : strings)
+		{
+			table.writeString(value);
+		}
+		table.flush();
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	/**
+	 * Encoder for a nested record sharing its parent's string table
+	 */
+	private PlanEncoder(OutputStream out, HashMap<String, Integer> dictionary, ArrayList<String> strings)
+	{
+		this.out = new DataOutputStream(out);
+		this.dictionary = dictionary;
+		this.strings = strings;
+	}
+
+}
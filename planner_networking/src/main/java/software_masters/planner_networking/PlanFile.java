@@ -1,6 +1,11 @@
 package software_masters.planner_networking;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.locks.Lock;
 
 /**
  * @author lee.kendall
@@ -12,7 +17,9 @@ public class PlanFile implements Serializable
 	private static final long serialVersionUID = 8679415216780269027L;
 	private String year;
 	private boolean canEdit;
-	private Plan plan;
+	private long version;
+	private volatile Plan plan;
+	private transient volatile PlanSource source;
 
 	/**
 	 * @param year
@@ -71,22 +78,233 @@ public class PlanFile implements Serializable
 	}
 
 	/**
+	 * Counts the changes saved to this year's plan. The server sets it on every
+	 * savePlan and editPlan; it is not part of equals.
+	 * 
+	 * @return the version
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @param version
+	 *                    the version to set
+	 */
+	public void setVersion(long version)
+	{
+		this.version = version;
+	}
+
+	/**
+	 * Plans loaded from a department file start out as just their year and
+	 * canEdit flag; the body is read from the file the first time it is asked
+	 * for, and may be dropped again by the PlanCache while it is unchanged.
+	 * 
 	 * @return the plan
 	 */
 	public Plan getPlan()
 	{
-		return plan;
+		Plan body = this.plan;
+		PlanSource current = this.source;
+		if (current == null)
+		{
+			return body;
+		}
+		if (body != null)
+		{
+			PlanCache.getShared().hit(current);
+			return body;
+		}
+		return loadPlan();
 	}
 
 	/**
+	 * Replacing the body detaches the planFile from its department file until the
+	 * next checkpoint writes it out.
+	 * 
 	 * @param plan
 	 *                 the plan to set
 	 */
-	public void setPlan(Plan plan)
+	public synchronized void setPlan(Plan plan)
 	{
+		this.source = null;
 		this.plan = plan;
 	}
 
+	/**
+	 * @return true if the body is in memory
+	 */
+	public boolean isLoaded()
+	{
+		return this.plan != null || this.source == null;
+	}
+
+	/**
+	 * @return the body if it is in memory, without reading it from disk
+	 */
+	Plan peekPlan()
+	{
+		return this.plan;
+	}
+
+	/**
+	 * @return where the body is stored on disk, null if it has changed since the
+	 *         last checkpoint
+	 */
+	PlanSource getSource()
+	{
+		return this.source;
+	}
+
+	/**
+	 * Not synchronized: a checkpoint calls this while holding the department's
+	 * write lock, which a thread in loadPlan may be waiting for.
+	 * 
+	 * @param source
+	 *                   where the current body is stored on disk
+	 */
+	void setSource(PlanSource source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * Detaches the planFile from its department file after its body was changed
+	 * in place, so the next checkpoint writes the new body and the cache keeps it
+	 * in memory until then
+	 */
+	synchronized void markChanged()
+	{
+		this.source = null;
+	}
+
+	/**
+	 * Drops the body if it is still the one stored at source
+	 * 
+	 * @param from
+	 *                 source the cache tracked the body under
+	 * @return true if the body was dropped
+	 */
+	synchronized boolean evict(PlanSource from)
+	{
+		if (this.source != from || this.plan == null)
+		{
+			return false;
+		}
+		this.plan = null;
+		return true;
+	}
+
+	/**
+	 * Reads the body once, however many threads ask for it at the same time. If a
+	 * checkpoint moved the body while this thread waited for the file, it is read
+	 * from its new place. The cache is told after this planFile's lock is let go,
+	 * since it may drop other plans.
+	 * 
+	 * @return the plan, or null if it could not be read
+	 */
+	private Plan loadPlan()
+	{
+		PlanSource loadedFrom = null;
+		Plan body;
+		synchronized (this)
+		{
+			while (this.plan == null && this.source != null)
+			{
+				PlanSource current = this.source;
+				Lock lock = current.getLock().readLock();
+				lock.lock();
+				try
+				{
+					if (current == this.source)
+					{
+						this.plan = current.load();
+						loadedFrom = current;
+					}
+				}
+				catch (IOException e)
+				{
+					System.out.println("ERROR: While reading plan " + year + " from " + current.getFile());
+					return null;
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+			body = this.plan;
+		}
+		if (loadedFrom != null)
+		{
+			PlanCache.getShared().loaded(this, loadedFrom, body);
+		}
+		return body;
+	}
+
+	/**
+	 * @return deep copy of the planFile, version included, detached from any
+	 *         department file
+	 */
+	public PlanFile copy()
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			PlanEncoder encoder = new PlanEncoder(bytes, false);
+			encoder.writePlanFile(new PlanFile(year, canEdit, getPlan()));
+			encoder.flush();
+			PlanFile copy = new PlanDecoder(new ByteArrayInputStream(bytes.toByteArray()), null).readPlanFile();
+			copy.setVersion(version);
+			return copy;
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Unable to copy plan " + year, e);
+		}
+	}
+
+	/**
+	 * Copy with another canEdit flag, made by flagPlan in place of changing a
+	 * planFile clients may be reading. The body is shared, not copied; one that
+	 * is still stored in a department file is left there to be read again when
+	 * asked for, so the plan cache keeps track of a single copy.
+	 * 
+	 * @param canEdit
+	 * @return the copy, with the same version
+	 */
+	public PlanFile withCanEdit(boolean canEdit)
+	{
+		PlanFile flagged = new PlanFile(year, canEdit, null);
+		flagged.version = version;
+		synchronized (this)
+		{
+			flagged.source = source;
+			flagged.plan = source == null ? plan : null;
+		}
+		return flagged;
+	}
+
+	/**
+	 * Reads the body in before the planFile is sent to a client. The server
+	 * never changes a planFile once it is stored in a department, it stores a new
+	 * one instead, so nothing can change while it is written.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		Plan body = getPlan();
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("year", year);
+		fields.put("canEdit", canEdit);
+		fields.put("version", version);
+		fields.put("plan", body);
+		out.writeFields();
+	}
+
 	@Override
 	public String toString()
 	{
@@ -117,13 +335,14 @@ public class PlanFile implements Serializable
 		PlanFile other = (PlanFile) obj;
 		if (canEdit != other.canEdit)
 			return false;
+		Plan plan = getPlan();
 		if (plan == null)
 		{
-			if (other.plan != null)
+			if (other.getPlan() != null)
 				return false;
 		}
 		else
-			if (!plan.equals(other.plan))
+			if (!plan.equals(other.getPlan()))
 				return false;
 		if (year == null)
 		{
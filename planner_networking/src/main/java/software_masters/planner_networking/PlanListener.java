@@ -0,0 +1,23 @@
+package software_masters.planner_networking;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public interface PlanListener extends Remote
+{
+
+	/**
+	 * Called by the server, on one of its own threads, after a plan in the
+	 * listener's department changes. Changes arrive in the order they were made.
+	 * A listener that throws or cannot be reached is dropped.
+	 * 
+	 * @param change
+	 * @throws RemoteException
+	 */
+	void planChanged(PlanChange change) throws RemoteException;
+
+}
@@ -0,0 +1,190 @@
+package software_masters.planner_networking;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Passes plan changes on to the listeners registered for each department,
+ * without ever waiting on a client. Each listener is called in order from its
+ * own queue; one whose queue fills up gets a single missed change instead, and
+ * one that fails is dropped.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanNotifier
+{
+
+	static final int QUEUE_SIZE = Integer.getInteger("planner.notify.queueSize", 256);
+
+	private final ConcurrentHashMap<String, CopyOnWriteArrayList<Subscriber>> byDepartment = new ConcurrentHashMap<String, CopyOnWriteArrayList<Subscriber>>();
+	private final int queueSize;
+	private final ExecutorService deliveries = Executors.newCachedThreadPool(runnable ->
+	{
+		Thread thread = new Thread(runnable, "planner-notify");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public PlanNotifier()
+	{
+		this(QUEUE_SIZE);
+	}
+
+	/**
+	 * @param queueSize
+	 *                      most changes waiting for any one listener
+	 */
+	public PlanNotifier(int queueSize)
+	{
+		this.queueSize = Math.max(1, queueSize);
+	}
+
+	/**
+	 * @param department
+	 * @param listener
+	 */
+	public void subscribe(String department, PlanListener listener)
+	{
+		byDepartment.computeIfAbsent(department, name -> new CopyOnWriteArrayList<Subscriber>())
+				.addIfAbsent(new Subscriber(department, listener));
+	}
+
+	/**
+	 * @param department
+	 * @param listener
+	 */
+	public void unsubscribe(String department, PlanListener listener)
+	{
+		CopyOnWriteArrayList<Subscriber> subscribers = byDepartment.get(department);
+		if (subscribers != null)
+		{
+			subscribers.remove(new Subscriber(department, listener));
+		}
+	}
+
+	/**
+	 * Queues a change for every listener of the department
+	 * 
+	 * @param department
+	 * @param change
+	 */
+	public void publish(String department, PlanChange change)
+	{
+		CopyOnWriteArrayList<Subscriber> subscribers = byDepartment.get(department);
+		if (subscribers == null)
+		{
+			return;
+		}
+		for (Subscriber subscriber : subscribers)
+		{
+			subscriber.offer(change);
+		}
+	}
+
+	/**
+	 * @param department
+	 * @return number of listeners registered for the department
+	 */
+	public int getSubscriberCount(String department)
+	{
+		CopyOnWriteArrayList<Subscriber> subscribers = byDepartment.get(department);
+		return subscribers == null ? 0 : subscribers.size();
+	}
+
+	/**
+	 * Stops delivering changes
+	 */
+	public void close()
+	{
+		deliveries.shutdownNow();
+	}
+
+	/**
+	 * One listener and the changes waiting for it
+	 */
+	private final class Subscriber
+	{
+		final String department;
+		final PlanListener listener;
+		final ArrayBlockingQueue<PlanChange> queue;
+		final AtomicBoolean scheduled = new AtomicBoolean();
+
+		Subscriber(String department, PlanListener listener)
+		{
+			this.department = department;
+			this.listener = listener;
+			this.queue = new ArrayBlockingQueue<PlanChange>(queueSize);
+		}
+
+		void offer(PlanChange change)
+		{
+			if (!queue.offer(change))
+			{
+				queue.clear();
+				queue.offer(PlanChange.missed());
+			}
+			schedule();
+		}
+
+		void schedule()
+		{
+			if (scheduled.compareAndSet(false, true))
+			{
+				try
+				{
+					deliveries.execute(this::drain);
+				}
+				catch (RejectedExecutionException e)
+				{
+					scheduled.set(false);// closed
+				}
+			}
+		}
+
+		void drain()
+		{
+			try
+			{
+				PlanChange change;
+				while ((change = queue.poll()) != null)
+				{
+					listener.planChanged(change);
+				}
+			}
+			catch (RemoteException | RuntimeException e)
+			{
+				unsubscribe(department, listener);
+				queue.clear();
+				return;
+			}
+			finally
+			{
+				scheduled.set(false);
+			}
+			if (!queue.isEmpty())// offered after the last poll but before scheduled was cleared
+			{
+				schedule();
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof Subscriber && ((Subscriber) obj).listener.equals(listener);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return listener.hashCode();
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package software_masters.planner_networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Location of a plan body inside a department file. Bodies are read under the
+ * department's read lock; a checkpoint takes the write lock while it renames a
+ * new department file into place and points the plans at their new offsets.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class PlanSource
+{
+
+	private final File file;
+	private final ReadWriteLock lock;
+	private final long offset;
+	private final int length;
+
+	/**
+	 * @param file
+	 *                   department file
+	 * @param lock
+	 *                   lock guarding the file's layout
+	 * @param offset
+	 *                   start of the body in the file
+	 * @param length
+	 *                   size of the body in bytes
+	 */
+	public PlanSource(File file, ReadWriteLock lock, long offset, int length)
+	{
+		this.file = file;
+		this.lock = lock;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Reads and decodes the plan body
+	 *
+	 * @return plan
+	 * @throws IOException
+	 */
+	public Plan load() throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(read()));
+		return new PlanDecoder(in, PlanDecoder.readDictionary(in)).readPlan();
+	}
+
+	/**
+	 * Reads the encoded body without decoding it, so a checkpoint can copy it to
+	 * a new file as is
+	 *
+	 * @return encoded body
+	 * @throws IOException
+	 */
+	public byte[] read() throws IOException
+	{
+		lock.readLock().lock();
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+		{
+			byte[] bytes = new byte[length];
+			in.seek(offset);
+			in.readFully(bytes);
+			return bytes;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return lock guarding the file's layout
+	 */
+	public ReadWriteLock getLock()
+	{
+		return lock;
+	}
+
+	/**
+	 * @return the length
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+}
@@ -0,0 +1,198 @@
+package software_masters.planner_networking;
+
+/**
+ * Flight recorder events for the server. Java 8 has no jdk.jfr, so these are
+ * plain holders handed to the FlightRecorder in src/main/jfr, which the
+ * flight-recorder profile compiles on JDK 11 and later. Without it every event
+ * is disabled and costs a null check.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public final class PlannerEvents
+{
+
+	/**
+	 * FlightRecorder, or null. With it an event that is not enabled costs a
+	 * field check, and anything expensive is only worked out once shouldCommit
+	 * says the event will be kept. Record with, for example,
+	 * -XX:StartFlightRecording=filename=planner.jfr and look under Planner in
+	 * Mission Control.
+	 */
+	static final Recorder RECORDER = loadRecorder();
+
+	private PlannerEvents()
+	{
+	}
+
+	/**
+	 * @return the flight recorder binding, or null if it is missing or this JVM
+	 *         cannot load it
+	 */
+	private static Recorder loadRecorder()
+	{
+		try
+		{
+			return (Recorder) Class.forName("software_masters.planner_networking.FlightRecorder")
+					.getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Passes events on to the flight recorder
+	 */
+	interface Recorder
+	{
+		/**
+		 * @param type
+		 * @return true if events of type are kept by a running recording
+		 */
+		boolean isEnabled(Class<? extends PlannerEvent> type);
+
+		/**
+		 * @param type
+		 * @return a started flight recorder event, or null if type is not enabled
+		 */
+		Object begin(Class<? extends PlannerEvent> type);
+
+		/**
+		 * @param recorded
+		 *                     returned by begin
+		 */
+		void end(Object recorded);
+
+		/**
+		 * @param recorded
+		 *                     returned by begin
+		 * @return true if the event will be kept
+		 */
+		boolean shouldCommit(Object recorded);
+
+		/**
+		 * Copies the event's fields to the flight recorder event and commits it
+		 *
+		 * @param recorded
+		 *                     returned by begin
+		 * @param event
+		 */
+		void commit(Object recorded, PlannerEvent event);
+	}
+
+	/**
+	 * Timing and commit calls shared by the events, with the same meaning as
+	 * jdk.jfr.Event's
+	 */
+	public abstract static class PlannerEvent
+	{
+		private Object recorded;
+
+		public boolean isEnabled()
+		{
+			return RECORDER != null && RECORDER.isEnabled(getClass());
+		}
+
+		public void begin()
+		{
+			if (RECORDER != null)
+			{
+				recorded = RECORDER.begin(getClass());
+			}
+		}
+
+		public void end()
+		{
+			if (recorded != null)
+			{
+				RECORDER.end(recorded);
+			}
+		}
+
+		public boolean shouldCommit()
+		{
+			return recorded != null && RECORDER.shouldCommit(recorded);
+		}
+
+		public void commit()
+		{
+			if (recorded != null)
+			{
+				RECORDER.commit(recorded, this);
+			}
+		}
+	}
+
+	/**
+	 * One checkpoint, from ServerImplementation.save or a checkpoint the log
+	 * asked for
+	 */
+	public static class SaveEvent extends PlannerEvent
+	{
+		public long bytesWritten;
+		public int departments;
+		public int plans;
+		public boolean serverFile;
+
+		/**
+		 * Newest mutation log record the checkpoint covers
+		 */
+		public long sequence;
+	}
+
+	/**
+	 * Start up in ServerImplementation.load, including the log replay
+	 */
+	public static class LoadEvent extends PlannerEvent
+	{
+		/**
+		 * Size of the server file and department files, plan bodies are read later
+		 */
+		public long bytesRead;
+		public int departments;
+		public int plans;
+		public int accounts;
+	}
+
+	/**
+	 * One call through the server's instrumented proxy
+	 */
+	public static class RpcEvent extends PlannerEvent
+	{
+		public String method;
+
+		/**
+		 * Department of the caller's cookie, if it has one
+		 */
+		public String department;
+
+		/**
+		 * Estimated size of the plans passed in and returned
+		 */
+		public long payloadSize;
+
+		/**
+		 * Simple name of the exception thrown, if any
+		 */
+		public String error;
+	}
+
+	/**
+	 * One Plan.addNode, Plan.removeNode or Plan.moveNode
+	 */
+	public static class NodeEditEvent extends PlannerEvent
+	{
+		public String operation;
+		public String planType;
+
+		/**
+		 * Parent added to, or node removed or moved
+		 */
+		public long nodeId;
+		public int depth;
+		public int nodes;
+	}
+
+}
@@ -5,6 +5,7 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -28,7 +29,9 @@ public interface Server extends Remote
 
 	/**
 	 * Returns planFile object from the user's department given a year. Throws
-	 * exception if that planFile doesn't exist.
+	 * exception if that planFile doesn't exist. The server never changes a stored
+	 * planFile, it stores a new one, so the result is a consistent snapshot; a
+	 * caller in the same process must copy it before making changes.
 	 * 
 	 * @param year
 	 * @param cookie
@@ -37,6 +40,21 @@ public interface Server extends Remote
 	 */
 	PlanFile getPlan(String year, String cookie) throws IllegalArgumentException, RemoteException;
 
+	/**
+	 * Returns the planFile for a year only if it has changed since the client
+	 * fetched knownVersion. When it has not, the reply is just the year, canEdit
+	 * flag and version with no plan, so the client can reuse its copy.
+	 * 
+	 * @param year
+	 * @param knownVersion
+	 *                         version of the copy the client holds, or -1 for none
+	 * @param cookie
+	 * @return the planFile, or a planFile without a plan if unchanged
+	 * @throws IllegalArgumentException
+	 */
+	PlanFile getPlanIfModified(String year, long knownVersion, String cookie)
+			throws IllegalArgumentException, RemoteException;
+
 	/**
 	 * Returns a blank plan outline given a name. Throws exception if the plan
 	 * outline doesn't exist.
@@ -51,13 +69,164 @@ public interface Server extends Remote
 	/**
 	 * Saves planFile to the user's department if that planFile is marked as
 	 * editable. If not editable, an exception is thrown. An exception is also
-	 * thrown if a newly created planFile is not assigned a year.
+	 * thrown if a newly created planFile is not assigned a year. A planFile
+	 * replacing one already stored must carry the version it was loaded at; if
+	 * the stored one has moved on since, nothing is saved and a
+	 * PlanConflictException is thrown. Flagging a plan does not change its
+	 * version.
 	 * 
 	 * @param plan
 	 * @param cookie
+	 * @return the plan's new version
+	 * @throws IllegalArgumentException
+	 * @throws PlanConflictException
+	 *                                      if someone else saved the plan first
+	 */
+	long savePlan(PlanFile plan, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * Applies node level edits to a plan in the user's department, so only the
+	 * changes cross the network. The edits are applied all or none, and only if
+	 * the plan is still at baseVersion. A SET_YEAR edit saves the edited plan
+	 * under that year instead, leaving the original untouched.
+	 * 
+	 * @param year
+	 *                        year of the plan the edits were made to
+	 * @param baseVersion
+	 *                        version of the plan the client edited
+	 * @param edits
+	 * @param cookie
+	 * @return the plan's new version
+	 * @throws IllegalArgumentException
+	 * @throws PlanConflictException
+	 *                                      if the plan is no longer at baseVersion,
+	 *                                      or a SET_YEAR edit would overwrite a
+	 *                                      plan that is not at baseVersion
+	 */
+	long editPlan(String year, long baseVersion, List<PlanEdit> edits, String cookie)
+			throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * Adds a branch below a node of a plan in the user's department, following
+	 * the plan's rules as Plan.addNode does. This and the other node id edits
+	 * apply to the plan as it is now, with no base version: a node keeps its id
+	 * whatever else changes, and ids are never reused.
+	 * 
+	 * @param year
+	 * @param parentId
+	 * @param cookie
+	 * @return the new branch and the plan's new version
 	 * @throws IllegalArgumentException
+	 *                                      if the node does not exist or the rules
+	 *                                      forbid the change
 	 */
-	void savePlan(PlanFile plan, String cookie) throws IllegalArgumentException, RemoteException;
+	NodeUpdate addBranch(String year, long parentId, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * Removes a node and everything below it, as Plan.removeNode does
+	 * 
+	 * @param year
+	 * @param nodeId
+	 * @param cookie
+	 * @return where the node was and the plan's new version
+	 * @throws IllegalArgumentException
+	 */
+	NodeUpdate removeBranch(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * @param year
+	 * @param nodeId
+	 * @param data
+	 * @param cookie
+	 * @return the node, without its children, and the plan's new version
+	 * @throws IllegalArgumentException
+	 */
+	NodeUpdate setNodeData(String year, long nodeId, String data, String cookie)
+			throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * @param year
+	 * @param nodeId
+	 * @param name
+	 * @param cookie
+	 * @return the node, without its children, and the plan's new version
+	 * @throws IllegalArgumentException
+	 */
+	NodeUpdate setNodeName(String year, long nodeId, String name, String cookie)
+			throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * Moves a node and everything below it under another node at the same level
+	 * as its parent, as Plan.moveNode does
+	 * 
+	 * @param year
+	 * @param nodeId
+	 * @param newParentId
+	 * @param position
+	 *                        index among the new parent's children once moved
+	 * @param cookie
+	 * @return the moved branch and the plan's new version
+	 * @throws IllegalArgumentException
+	 */
+	NodeUpdate moveBranch(String year, long nodeId, long newParentId, int position, String cookie)
+			throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * Registers a listener to be told about every change to the plans of the
+	 * user's department: saves, edits and changes to canEdit. Calls come from
+	 * the server's own threads, and a listener that falls behind is sent a
+	 * missed change in place of the ones it could not keep up with rather than
+	 * holding up the change itself.
+	 * 
+	 * @param listener
+	 *                     exported by the client
+	 * @param cookie
+	 * @throws IllegalArgumentException
+	 */
+	void addPlanListener(PlanListener listener, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * @param listener
+	 * @param cookie
+	 * @throws IllegalArgumentException
+	 */
+	void removePlanListener(PlanListener listener, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * Leases a node and everything below it in a plan of the user's department.
+	 * Until the lease is released or runs out nobody else can edit or lease
+	 * inside that branch, or save the plan whole; other branches stay open to
+	 * everyone. Taking a lease the user already holds renews it.
+	 * 
+	 * @param year
+	 * @param nodeId
+	 * @param cookie
+	 * @return time the lease ends unless renewed, in milliseconds since the epoch
+	 * @throws IllegalArgumentException
+	 * @throws LeaseConflictException
+	 *                                      if someone else holds a lease above,
+	 *                                      on or below the node
+	 */
+	long acquireLease(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * @param year
+	 * @param nodeId
+	 * @param cookie
+	 * @return time the lease now ends, in milliseconds since the epoch
+	 * @throws IllegalArgumentException
+	 *                                      if the user's lease on the node has run
+	 *                                      out or was never taken
+	 */
+	long renewLease(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException;
+
+	/**
+	 * @param year
+	 * @param nodeId
+	 * @param cookie
+	 * @throws IllegalArgumentException
+	 */
+	void releaseLease(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException;
 
 	/**
 	 * Adds new user to loginMap, generates new cookie for user and adds to
@@ -105,7 +274,7 @@ public interface Server extends Remote
 	void addPlanTemplate(String name, PlanFile plan) throws RemoteException;
 
 	/**
-	 * Serializes server to xml
+	 * Writes a binary snapshot of the server and empties the mutation log
 	 * 
 	 * @throws FileNotFoundException
 	 */
@@ -155,6 +324,17 @@ public interface Server extends Remote
 	 */
 	void setPlanTemplateMap(ConcurrentHashMap<String, PlanFile> planTemplateMap) throws RemoteException;
 
+	/**
+	 * Returns call counts, errors and latencies for each server method, along
+	 * with the mutation log and plan cache figures. Throws exception if the user
+	 * isn't an admin.
+	 * 
+	 * @param cookie
+	 * @return statistics as text, one line per method
+	 * @throws IllegalArgumentException
+	 */
+	String getServerStats(String cookie) throws IllegalArgumentException, RemoteException;
+
 	/**
 	 * @return collection of plan templates held by the server
 	 */
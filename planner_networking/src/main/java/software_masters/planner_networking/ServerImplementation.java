@@ -1,23 +1,34 @@
 package software_masters.planner_networking;
 
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.rmi.AlreadyBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 
 /**
  * @author Lee Kendall
@@ -32,12 +43,36 @@ public class ServerImplementation implements Server
 	private ConcurrentHashMap<String, Department> departmentMap = new ConcurrentHashMap<String, Department>();
 	private ConcurrentHashMap<String, PlanFile> planTemplateMap = new ConcurrentHashMap<String, PlanFile>();
 
+	/**
+	 * Checkpoint and mutation log locations. Every change is appended to the log;
+	 * checkpoints are only written every CHECKPOINT_INTERVAL records or when save
+	 * is called. Accounts and templates are checkpointed to SERVER_FILE and each
+	 * department to its own file in SHARD_DIRECTORY, and a checkpoint only
+	 * rewrites the files whose contents changed since the last one. All three
+	 * live in the directory named by the planner.dataDir property, by default the
+	 * working directory.
+	 */
+	static final String SERVER_FILE = "PlannerServer.serv";
+	static final String LOG_FILE = "PlannerServer.log";
+	static final String SHARD_DIRECTORY = "PlannerServer.departments";
+	static final int CHECKPOINT_INTERVAL = Integer.getInteger("planner.checkpointInterval", 1000);
+
+	private MutationLog log;
+	private final Object mutationLock = new Object();
+	long checkpointSequence;
+	private final Set<String> dirtyDepartments = ConcurrentHashMap.newKeySet();
+	private boolean globalDirty = true;
+	private boolean allDirty = true;
+	private final ServerMetrics metrics = new ServerMetrics();
+	private final EditLeases leases = new EditLeases();
+	private final PlanNotifier notifier = new PlanNotifier();
+
 	/**
 	 * Initializes server with default objects for testing purposes.
 	 */
 	public ServerImplementation() throws RemoteException
 	{
-		Department dpt = new Department();
+		Department dpt = new Department("default");
 		this.departmentMap.put("default", dpt);
 
 		Account admin = new Account("admin", "0", dpt, true);
@@ -103,6 +138,25 @@ public class ServerImplementation implements Server
 		return department.getPlan(year);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#getPlanIfModified(java.lang.
+	 * String, long, java.lang.String)
+	 */
+	public PlanFile getPlanIfModified(String year, long knownVersion, String cookie)
+	{
+		PlanFile plan = getPlan(year, cookie);
+		long version = plan.getVersion();
+		if (version != knownVersion)
+		{
+			return plan;
+		}
+		PlanFile notModified = new PlanFile(plan.getYear(), plan.isCanEdit(), null);
+		notModified.setVersion(version);
+		return notModified;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -127,7 +181,7 @@ public class ServerImplementation implements Server
 	 * @see software_masters.planner_networking.Server#savePlan(software_masters.
 	 * planner_networking.PlanFile, java.lang.String)
 	 */
-	public void savePlan(PlanFile plan, String cookie)
+	public long savePlan(PlanFile plan, String cookie) throws RemoteException
 	{
 		Integer.parseInt(plan.getYear());
 		cookieChecker(cookie);// checks that cookie is valid
@@ -140,17 +194,38 @@ public class ServerImplementation implements Server
 		Account userAccount = this.cookieMap.get(cookie);
 		Department dept = userAccount.getDepartment();
 
-		if (dept.containsPlan(plan.getYear()))
+		CompletableFuture<Long> commit;
+		long version;
+		synchronized (mutationLock)// the checks and the save happen as one step
 		{
-			PlanFile oldPlan = dept.getPlan(plan.getYear());
-			if (!oldPlan.isCanEdit())// checks planFile is editable
+			if (dept.containsPlan(plan.getYear()))
 			{
-				throw new IllegalArgumentException("Not allowed to edit this plan");
+				PlanFile oldPlan = dept.getPlan(plan.getYear());
+				if (!oldPlan.isCanEdit())// checks planFile is editable
+				{
+					throw new IllegalArgumentException("Not allowed to edit this plan");
+				}
+				if (oldPlan.getVersion() != plan.getVersion())// checks nobody saved it since it was loaded
+				{
+					throw new PlanConflictException(plan.getYear(), plan.getVersion(), oldPlan.getVersion());
+				}
 			}
-
+			leases.checkPlan(dept.getName(), plan.getYear(), cookie);
+			try
+			{
+				commit = log().logSavePlan(dept.getName(), plan);
+			}
+			catch (IOException e)
+			{
+				throw logFailure(e);
+			}
+			applySavePlan(dept.getName(), plan);
+			version = plan.getVersion();
+			publishOnCommit(commit, dept.getName(), new PlanChange(plan.getYear(), version, null, plan.isCanEdit()));
+			checkpointIfDue();
 		}
-		dept.addPlan(plan.getYear(), plan);
-		this.save();
+		awaitCommit(commit);
+		return version;
 	}
 
 	/*
@@ -159,18 +234,29 @@ public class ServerImplementation implements Server
 	 * java.lang.String, java.lang.String, boolean, java.lang.String)
 	 */
 	public void addUser(String username, String password, String departmentName, boolean isAdmin, String cookie)
+			throws RemoteException
 	{
 		cookieChecker(cookie);// checks that cookie is valid and that user is admin
 		adminChecker(cookie);
 
 		departmentChecker(departmentName);
 
-		String newCookie = cookieMaker();
-		Department newDept = this.departmentMap.get(departmentName);
-		Account newAccount = new Account(password, newCookie, newDept, isAdmin);
-		this.loginMap.put(username, newAccount);
-		this.cookieMap.put(newAccount.getCookie(), newAccount);
-
+		CompletableFuture<Long> commit;
+		synchronized (mutationLock)
+		{
+			Account newAccount = new Account(password, cookieMaker(), this.departmentMap.get(departmentName), isAdmin);
+			try
+			{
+				commit = log().logAddUser(username, newAccount, departmentName);
+			}
+			catch (IOException e)
+			{
+				throw logFailure(e);
+			}
+			applyAddUser(username, newAccount);
+			checkpointIfDue();
+		}
+		awaitCommit(commit);
 	}
 
 	/**
@@ -212,7 +298,7 @@ public class ServerImplementation implements Server
 	 * @see software_masters.planner_networking.Server#flagPlan(java.lang.String,
 	 * java.lang.String, boolean, java.lang.String)
 	 */
-	public void flagPlan(String departmentName, String year, boolean canEdit, String cookie)
+	public void flagPlan(String departmentName, String year, boolean canEdit, String cookie) throws RemoteException
 	{
 		cookieChecker(cookie);// checks that cookie is valid and that user is admin
 		adminChecker(cookie);
@@ -225,7 +311,23 @@ public class ServerImplementation implements Server
 
 		}
 
-		dept.getPlan(year).setCanEdit(canEdit);
+		CompletableFuture<Long> commit;
+		synchronized (mutationLock)
+		{
+			try
+			{
+				commit = log().logFlagPlan(departmentName, year, canEdit);
+			}
+			catch (IOException e)
+			{
+				throw logFailure(e);
+			}
+			applyFlagPlan(departmentName, year, canEdit);
+			publishOnCommit(commit, departmentName,
+					new PlanChange(year, dept.getPlan(year).getVersion(), new long[0], canEdit));
+			checkpointIfDue();
+		}
+		awaitCommit(commit);
 	}
 
 	/*
@@ -234,13 +336,522 @@ public class ServerImplementation implements Server
 	 * software_masters.planner_networking.Server#addDepartment(java.lang.String,
 	 * java.lang.String)
 	 */
-	public void addDepartment(String departmentName, String cookie)
+	public void addDepartment(String departmentName, String cookie) throws RemoteException
 	{
 		cookieChecker(cookie);// checks that cookie is valid and that user is admin
 		adminChecker(cookie);
 
-		this.departmentMap.put(departmentName, new Department());
+		CompletableFuture<Long> commit;
+		synchronized (mutationLock)
+		{
+			try
+			{
+				commit = log().logAddDepartment(departmentName);
+			}
+			catch (IOException e)
+			{
+				throw logFailure(e);
+			}
+			applyAddDepartment(departmentName);
+			checkpointIfDue();
+		}
+		awaitCommit(commit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see software_masters.planner_networking.Server#editPlan(java.lang.String,
+	 * long, java.util.List, java.lang.String)
+	 */
+	public long editPlan(String year, long baseVersion, List<PlanEdit> edits, String cookie)
+			throws IllegalArgumentException, RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+
+		Department dept = this.cookieMap.get(cookie).getDepartment();
+		if (!dept.containsPlan(year))
+		{
+			throw new IllegalArgumentException("Plan doesn't exist within your department");
+		}
+		String target = targetYear(year, edits);
+		Integer.parseInt(target);
+
+		CompletableFuture<Long> commit;
+		long version;
+		synchronized (mutationLock)
+		{
+			PlanFile current = dept.getPlan(year);
+			if (current.getVersion() != baseVersion)
+			{
+				throw new PlanConflictException(year, baseVersion, current.getVersion());
+			}
+			if (!current.isCanEdit())// checks planFile is editable
+			{
+				throw new IllegalArgumentException("Not allowed to edit this plan");
+			}
+			if (!target.equals(year) && dept.containsPlan(target))
+			{
+				PlanFile replaced = dept.getPlan(target);
+				if (!replaced.isCanEdit())
+				{
+					throw new IllegalArgumentException("Not allowed to edit this plan");
+				}
+				if (replaced.getVersion() != baseVersion)// same check savePlan makes on the plan it overwrites
+				{
+					throw new PlanConflictException(target, baseVersion, replaced.getVersion());
+				}
+			}
+			if (edits.isEmpty())
+			{
+				return current.getVersion();
+			}
+			LinkedHashSet<Long> changed = new LinkedHashSet<Long>();
+			PlanFile edited = prepareEditPlan(dept.getName(), year, edits, cookie, changed);
+			try
+			{
+				commit = log().logEditPlan(dept.getName(), year, edits);
+			}
+			catch (IOException e)
+			{
+				throw logFailure(e);
+			}
+			version = installEditPlan(dept.getName(), edited);
+			publishOnCommit(commit, dept.getName(), changeOf(edited, changed));
+			checkpointIfDue();
+		}
+		awaitCommit(commit);
+		return version;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see software_masters.planner_networking.Server#addBranch(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public NodeUpdate addBranch(String year, long parentId, String cookie)
+			throws IllegalArgumentException, RemoteException
+	{
+		return editNode(year, parentId, cookie, (plan, path) -> new PlanEdit(PlanEdit.Type.ADD_BRANCH, path, null));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#removeBranch(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public NodeUpdate removeBranch(String year, long nodeId, String cookie)
+			throws IllegalArgumentException, RemoteException
+	{
+		return editNode(year, nodeId, cookie, (plan, path) -> new PlanEdit(PlanEdit.Type.REMOVE_BRANCH, path, null));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#setNodeData(java.lang.String,
+	 * long, java.lang.String, java.lang.String)
+	 */
+	public NodeUpdate setNodeData(String year, long nodeId, String data, String cookie)
+			throws IllegalArgumentException, RemoteException
+	{
+		return editNode(year, nodeId, cookie, (plan, path) -> new PlanEdit(PlanEdit.Type.SET_DATA, path, data));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#setNodeName(java.lang.String,
+	 * long, java.lang.String, java.lang.String)
+	 */
+	public NodeUpdate setNodeName(String year, long nodeId, String name, String cookie)
+			throws IllegalArgumentException, RemoteException
+	{
+		return editNode(year, nodeId, cookie, (plan, path) -> new PlanEdit(PlanEdit.Type.SET_NAME, path, name));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#moveBranch(java.lang.String,
+	 * long, long, int, java.lang.String)
+	 */
+	public NodeUpdate moveBranch(String year, long nodeId, long newParentId, int position, String cookie)
+			throws IllegalArgumentException, RemoteException
+	{
+		return editNode(year, nodeId, cookie, (plan, path) ->
+		{
+			int[] parentPath = plan.pathTo(newParentId);
+			if (parentPath == null)
+			{
+				throw new IllegalArgumentException("Node doesn't exist");
+			}
+			int[] target = Arrays.copyOf(parentPath, parentPath.length + 1);
+			target[parentPath.length] = position;
+			return new PlanEdit(PlanEdit.Type.MOVE_BRANCH, path, null, target);
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#addPlanListener(software_masters.
+	 * planner_networking.PlanListener, java.lang.String)
+	 */
+	public void addPlanListener(PlanListener listener, String cookie) throws RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+		notifier.subscribe(this.cookieMap.get(cookie).getDepartment().getName(), listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#removePlanListener(software_masters.
+	 * planner_networking.PlanListener, java.lang.String)
+	 */
+	public void removePlanListener(PlanListener listener, String cookie) throws RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+		notifier.unsubscribe(this.cookieMap.get(cookie).getDepartment().getName(), listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#acquireLease(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public long acquireLease(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+
+		Department dept = this.cookieMap.get(cookie).getDepartment();
+		if (!dept.containsPlan(year))
+		{
+			throw new IllegalArgumentException("Plan doesn't exist within your department");
+		}
+		synchronized (mutationLock)// the plan's id index is only used under the lock
+		{
+			PlanFile current = dept.getPlan(year);
+			if (!current.isCanEdit())// checks planFile is editable
+			{
+				throw new IllegalArgumentException("Not allowed to edit this plan");
+			}
+			return leases.acquire(dept.getName(), year, current.getPlan(), nodeId, cookie);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#renewLease(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public long renewLease(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+		return leases.renew(this.cookieMap.get(cookie).getDepartment().getName(), year, nodeId, cookie);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#releaseLease(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public void releaseLease(String year, long nodeId, String cookie) throws IllegalArgumentException, RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+		leases.release(this.cookieMap.get(cookie).getDepartment().getName(), year, nodeId, cookie);
+	}
+
+	/**
+	 * Applies one edit addressed by node id to the current version of a plan.
+	 * The id is turned into a path in that version and the edit goes through
+	 * the log just as editPlan's do, so replay needs nothing new. The reply is
+	 * built under the lock, since the next edit takes over the plan's id index.
+	 * 
+	 * @param year
+	 * @param nodeId
+	 * @param cookie
+	 * @param toEdit
+	 *                   makes the edit from the current plan and the node's path
+	 * @return what changed
+	 * @throws RemoteException
+	 */
+	private NodeUpdate editNode(String year, long nodeId, String cookie, BiFunction<Plan, int[], PlanEdit> toEdit)
+			throws IllegalArgumentException, RemoteException
+	{
+		cookieChecker(cookie);// checks that cookie is valid
+
+		Department dept = this.cookieMap.get(cookie).getDepartment();
+		if (!dept.containsPlan(year))
+		{
+			throw new IllegalArgumentException("Plan doesn't exist within your department");
+		}
+		CompletableFuture<Long> commit;
+		NodeUpdate update;
+		synchronized (mutationLock)
+		{
+			PlanFile current = dept.getPlan(year);
+			if (!current.isCanEdit())// checks planFile is editable
+			{
+				throw new IllegalArgumentException("Not allowed to edit this plan");
+			}
+			Plan plan = current.getPlan();
+			int[] path = plan.pathTo(nodeId);
+			if (path == null)
+			{
+				throw new IllegalArgumentException("Node doesn't exist");
+			}
+			PlanEdit edit = toEdit.apply(plan, path);
+			long oldParentId = path.length == 0 ? -1 : plan.getNode(nodeId).getParent().getId();
+			List<PlanEdit> edits = Collections.singletonList(edit);
+			LinkedHashSet<Long> changed = new LinkedHashSet<Long>();
+			PlanFile edited = prepareEditPlan(dept.getName(), year, edits, cookie, changed);
+			try
+			{
+				commit = log().logEditPlan(dept.getName(), year, edits);
+			}
+			catch (IOException e)
+			{
+				throw logFailure(e);
+			}
+			long version = installEditPlan(dept.getName(), edited);
+			publishOnCommit(commit, dept.getName(), changeOf(edited, changed));
+			update = describe(dept.getPlan(year).getPlan(), year, version, edit, nodeId, oldParentId);
+			checkpointIfDue();
+		}
+		awaitCommit(commit);
+		return update;
+	}
+
+	/**
+	 * @return the reply to a node id edit, from the plan it produced
+	 * @throws RemoteException
+	 */
+	private static NodeUpdate describe(Plan plan, String year, long version, PlanEdit edit, long nodeId,
+			long oldParentId) throws RemoteException
+	{
+		if (edit.getType() == PlanEdit.Type.REMOVE_BRANCH)
+		{
+			int[] path = edit.getPath();
+			return new NodeUpdate(year, version, nodeId, oldParentId, path[path.length - 1], null,
+					plan.getLastNodeId());
+		}
+		Node node = plan.getNode(nodeId);
+		Node sent;
+		switch (edit.getType())
+		{
+		case ADD_BRANCH:
+			node = node.getChildren().get(node.getChildren().size() - 1);
+			sent = node.copyTree(null);
+			break;
+		case MOVE_BRANCH:
+			sent = node.copyTree(null);
+			break;
+		default:
+			sent = new Node(null, node.getName(), node.getData(), null);
+			sent.setId(node.getId());
+		}
+		Node parent = node.getParent();
+		return new NodeUpdate(year, version, node.getId(), parent == null ? -1 : parent.getId(),
+				parent == null ? 0 : parent.getChildren().indexOf(node), sent, plan.getLastNodeId());
+	}
+
+	/**
+	 * Stores a plan in a department, one version after the plan it replaces.
+	 * Shared by savePlan and log replay.
+	 * 
+	 * @param departmentName
+	 * @param plan
+	 */
+	void applySavePlan(String departmentName, PlanFile plan)
+	{
+		Department dept = this.departmentMap.get(departmentName);
+		PlanFile old = dept.getPlanFileMap().get(plan.getYear());
+		plan.setVersion(old == null ? 1 : old.getVersion() + 1);
+		plan.markChanged();
+		dept.addPlan(plan.getYear(), plan);
+		this.dirtyDepartments.add(departmentName);
+	}
+
+	/**
+	 * Applies node level edits to a plan, all or none. The edits are made to a
+	 * copy from Plan.edit, which copies only the path to each node changed, and
+	 * the copy replaces the plan in one step once they have all applied, so
+	 * threads reading the plan meanwhile see the old version whole and a failed
+	 * edit leaves nothing to undo. A copy whose year was changed is stored under
+	 * the new year beside the original, as savePlan would. Used by log replay.
+	 * 
+	 * @param departmentName
+	 * @param year
+	 *                           year of the plan to edit
+	 * @param edits
+	 * @return version of the edited plan
+	 * @throws IllegalArgumentException
+	 *                                      if any edit cannot be applied
+	 * @throws RemoteException
+	 */
+	long applyEditPlan(String departmentName, String year, List<PlanEdit> edits)
+			throws IllegalArgumentException, RemoteException
+	{
+		return installEditPlan(departmentName, prepareEditPlan(departmentName, year, edits, null, null));
+	}
+
+	/**
+	 * Makes the edited copy of a plan without storing it, first checking each
+	 * edit against the leases other users hold. Edits that save a copy under
+	 * another year are checked against the leases on the year they replace.
+	 * 
+	 * @param departmentName
+	 * @param year
+	 * @param edits
+	 * @param cookie
+	 *                           cookie of the user making the edits, null to skip
+	 *                           the lease checks as log replay does
+	 * @param changed
+	 *                           collects the id of each node edited, may be null
+	 * @return the edited copy
+	 * @throws IllegalArgumentException
+	 * @throws LeaseConflictException
+	 * @throws RemoteException
+	 */
+	private PlanFile prepareEditPlan(String departmentName, String year, List<PlanEdit> edits, String cookie,
+			Set<Long> changed) throws IllegalArgumentException, RemoteException
+	{
+		PlanFile current = this.departmentMap.get(departmentName).getPlan(year);
+		String target = targetYear(year, edits);
+		if (cookie != null && !target.equals(year))
+		{
+			leases.checkPlan(departmentName, target, cookie);
+		}
+		PlanFile working = new PlanFile(year, current.isCanEdit(), current.getPlan().edit());
+		for (PlanEdit edit : edits)
+		{
+			if (cookie != null && target.equals(year))
+			{
+				leases.check(departmentName, year, working.getPlan(), edit, cookie);
+			}
+			if (changed != null && edit.getType() != PlanEdit.Type.SET_YEAR)
+			{
+				long[] ids = PlanEdit.idsAlong(working.getPlan(), edit.getPath(), edit.getPath().length);
+				changed.add(ids[ids.length - 1]);
+			}
+			edit.apply(working);
+		}
+		working.getPlan().publish();
+		return working;
+	}
+
+	/**
+	 * Stores an edited copy from prepareEditPlan, one version after the plan it
+	 * replaces
+	 * 
+	 * @param departmentName
+	 * @param working
+	 * @return version of the edited plan
+	 */
+	private long installEditPlan(String departmentName, PlanFile working)
+	{
+		Department dept = this.departmentMap.get(departmentName);
+		PlanFile old = dept.getPlanFileMap().get(working.getYear());
+		working.setVersion(old == null ? 1 : old.getVersion() + 1);
+		dept.addPlan(working.getYear(), working);
+		this.dirtyDepartments.add(departmentName);
+		return working.getVersion();
+	}
+
+	/**
+	 * @param edited
+	 *                    stored copy of an edited plan
+	 * @param changed
+	 *                    ids of the nodes edited
+	 * @return the change to tell the department's listeners about
+	 */
+	private static PlanChange changeOf(PlanFile edited, Set<Long> changed)
+	{
+		long[] ids = new long[changed.size()];
+		int i = 0;
+		for (long id : changed)
+		{
+			ids[i++] = id;
+		}
+		return new PlanChange(edited.getYear(), edited.getVersion(), ids, edited.isCanEdit());
+	}
+
+	/**
+	 * @param year
+	 * @param edits
+	 * @return year the edited plan is saved under
+	 */
+	private static String targetYear(String year, List<PlanEdit> edits)
+	{
+		String target = year;
+		for (PlanEdit edit : edits)
+		{
+			if (edit.getType() == PlanEdit.Type.SET_YEAR)
+			{
+				target = edit.getValue();
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Creates an account with a known cookie. Shared by addUser and log replay.
+	 * 
+	 * @param username
+	 * @param password
+	 * @param cookie
+	 * @param departmentName
+	 * @param isAdmin
+	 * @return the new account
+	 */
+	Account applyAddUser(String username, String password, String cookie, String departmentName, boolean isAdmin)
+	{
+		Account newAccount = new Account(password, cookie, this.departmentMap.get(departmentName), isAdmin);
+		applyAddUser(username, newAccount);
+		return newAccount;
+	}
 
+	/**
+	 * @param username
+	 * @param account
+	 *                     account already logged by addUser
+	 */
+	private void applyAddUser(String username, Account account)
+	{
+		this.loginMap.put(username, account);
+		this.cookieMap.put(account.getCookie(), account);
+		this.globalDirty = true;
+	}
+
+	/**
+	 * Creates an empty department. Shared by addDepartment and log replay.
+	 * 
+	 * @param departmentName
+	 */
+	void applyAddDepartment(String departmentName)
+	{
+		this.departmentMap.put(departmentName, new Department(departmentName));
+		this.dirtyDepartments.add(departmentName);
+	}
+
+	/**
+	 * Sets a plan's canEdit flag by storing a copy with the new flag that shares
+	 * the plan's body. Shared by flagPlan and log replay.
+	 * 
+	 * @param departmentName
+	 * @param year
+	 * @param canEdit
+	 */
+	void applyFlagPlan(String departmentName, String year, boolean canEdit)
+	{
+		Department dept = this.departmentMap.get(departmentName);
+		dept.addPlan(year, dept.getPlan(year).withCanEdit(canEdit));
+		this.dirtyDepartments.add(departmentName);
 	}
 
 	/*
@@ -252,21 +863,67 @@ public class ServerImplementation implements Server
 	public void addPlanTemplate(String name, PlanFile plan)
 	{
 		this.planTemplateMap.put(name, plan);
+		this.globalDirty = true;
 	}
 
 	/**
-	 * Loads server from xml, called in main
+	 * Loads server from the checkpoint and replays any newer changes from the
+	 * mutation log, called in main. Department files are read in parallel. A
+	 * checkpoint still in the old xml format, or with departments inline, is left
+	 * as it is; the next checkpoint rewrites it in the current layout. The
+	 * server's log writer runs until close is called.
 	 * 
 	 * @return
-	 * @throws FileNotFoundException
+	 * @throws IOException
+	 *                         if the checkpoint cannot be read, or the log has a
+	 *                         damaged record before its end or one that cannot
+	 *                         be replayed
 	 */
-	public static ServerImplementation load() throws FileNotFoundException
+	public static ServerImplementation load() throws IOException
 	{
-		String filepath = "PlannerServer.serv";
-		XMLDecoder decoder = null;
-		decoder = new XMLDecoder(new BufferedInputStream(new FileInputStream(filepath)));
-		ServerImplementation server = (ServerImplementation) decoder.readObject();
-		decoder.close();
+		PlannerEvents.LoadEvent event = new PlannerEvents.LoadEvent();
+		event.begin();
+		File filepath = dataFile(SERVER_FILE);
+		ServerImplementation server;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(filepath), 1 << 16))
+		{
+			if (SnapshotFormat.isSnapshot(in))
+			{
+				ConcurrentHashMap<String, Department> departments = new DepartmentShards(
+						dataFile(SHARD_DIRECTORY)).readAll();
+				server = SnapshotFormat.readServer(in, departments);
+			}
+			else
+			{
+				server = SnapshotMigrator.readXml(in);
+			}
+		}
+
+		MutationLog log = new MutationLog(dataFile(LOG_FILE));
+		try
+		{
+			log.replay(server);
+		}
+		catch (IOException e)
+		{
+			log.close();
+			throw e;
+		}
+		server.log = log;
+		event.end();
+		if (event.shouldCommit())
+		{
+			DepartmentShards shards = new DepartmentShards(dataFile(SHARD_DIRECTORY));
+			event.bytesRead = filepath.length();
+			for (Department dept : server.departmentMap.values())
+			{
+				event.bytesRead += shards.fileFor(dept.getName()).length();
+				event.plans += dept.getPlanFileMap().size();
+			}
+			event.departments = server.departmentMap.size();
+			event.accounts = server.loginMap.size();
+			event.commit();
+		}
 		return server;
 	}
 
@@ -276,19 +933,299 @@ public class ServerImplementation implements Server
 	 */
 	public void save()
 	{
-		String filename = "PlannerServer.serv";
-		XMLEncoder encoder = null;
+		synchronized (mutationLock)
+		{
+			checkpoint();
+		}
+	}
+
+	/**
+	 * Writes the departments and server file changed since the last checkpoint
+	 * and empties the log. Each file is written beside the old one and renamed
+	 * over it so a crash never leaves a half written file, and the log is only
+	 * emptied once every file is on disk. Caller must hold mutationLock.
+	 */
+	private void checkpoint()
+	{
+		PlannerEvents.SaveEvent event = new PlannerEvents.SaveEvent();
+		event.begin();
+		File filename = dataFile(SERVER_FILE);
 		try
 		{
-			encoder = new XMLEncoder(new BufferedOutputStream(new FileOutputStream(filename)));
+			log().flush();// a change the log failed to save must not reach a checkpoint either
+			long sequence = log().getLastSequence();
+			DepartmentShards shards = new DepartmentShards(dataFile(SHARD_DIRECTORY));
+			ArrayList<Department> changed = new ArrayList<Department>();
+			if (this.allDirty)
+			{
+				changed.addAll(this.departmentMap.values());
+			}
+			else
+			{
+				for (String name : this.dirtyDepartments)
+				{
+					Department dept = this.departmentMap.get(name);
+					if (dept != null)
+					{
+						changed.add(dept);
+					}
+				}
+			}
+			shards.write(changed, sequence);
+			if (this.allDirty)
+			{
+				shards.retainOnly(this.departmentMap.keySet());
+			}
+			if (this.globalDirty || this.allDirty)
+			{
+				File temp = new File(filename.getPath() + ".tmp");
+				try (FileOutputStream file = new FileOutputStream(temp))
+				{
+					BufferedOutputStream out = new BufferedOutputStream(file, 1 << 16);
+					SnapshotFormat.writeServer(this, sequence, out);
+					out.flush();
+					file.getFD().sync();
+				}
+				Files.move(temp.toPath(), filename.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				this.checkpointSequence = sequence;
+				event.serverFile = true;
+			}
+			markClean();
+			log().checkpointed(sequence);
+			event.end();
+			if (event.shouldCommit())
+			{
+				for (Department dept : changed)
+				{
+					event.bytesWritten += shards.fileFor(dept.getName()).length();
+					event.plans += dept.getPlanFileMap().size();
+				}
+				if (event.serverFile)
+				{
+					event.bytesWritten += filename.length();
+				}
+				event.departments = changed.size();
+				event.sequence = sequence;
+				event.commit();
+			}
 		}
-		catch (FileNotFoundException fileNotFound)
+		catch (IOException e)
 		{
 			System.out.println("ERROR: While Creating or Opening the File " + filename);
 		}
-		encoder.writeObject(this);
-		encoder.close();
+	}
+
+	/**
+	 * Records that every checkpoint file matches the server as it is now
+	 */
+	void markClean()
+	{
+		this.dirtyDepartments.clear();
+		this.globalDirty = false;
+		this.allDirty = false;
+	}
 
+	/**
+	 * Checks whether a log record is already held by a checkpoint file
+	 * 
+	 * @param departmentName
+	 *                           department the record changes, or null for
+	 *                           records kept in the server file
+	 * @param sequence
+	 * @return true if replaying the record would apply it twice
+	 */
+	boolean isCheckpointed(String departmentName, long sequence)
+	{
+		Department dept = departmentName == null ? null : this.departmentMap.get(departmentName);
+		long checkpoint = dept == null ? this.checkpointSequence : dept.checkpointSequence;
+		return sequence <= checkpoint;
+	}
+
+	/**
+	 * @return sequence of the newest log record held by any checkpoint file
+	 */
+	long getNewestCheckpoint()
+	{
+		long newest = this.checkpointSequence;
+		for (Department dept : this.departmentMap.values())
+		{
+			newest = Math.max(newest, dept.checkpointSequence);
+		}
+		return newest;
+	}
+
+	/**
+	 * Waits, outside mutationLock, for a logged change to reach the disk. Changes
+	 * from concurrent callers are committed together by the log's writer thread.
+	 * A change whose batch could not be written stays in memory unsaved, and the
+	 * log then refuses every later change, so the server takes no more changes
+	 * until it is restarted from what is on disk.
+	 * 
+	 * @param commit
+	 *                   returned by the log
+	 * @throws RemoteException
+	 *                             if the change could not be made durable
+	 */
+	private void awaitCommit(CompletableFuture<Long> commit) throws RemoteException
+	{
+		try
+		{
+			MutationLog.await(commit);
+		}
+		catch (IOException e)
+		{
+			throw logFailure(e);
+		}
+	}
+
+	/**
+	 * Tells the department's listeners about a change once it is durable. The
+	 * writer thread completes commits in log order, so listeners hear of changes
+	 * in the order they were made, and never of one that was not saved.
+	 * 
+	 * @param commit
+	 *                       returned by the log for the change
+	 * @param department
+	 * @param change
+	 */
+	private void publishOnCommit(CompletableFuture<Long> commit, String department, PlanChange change)
+	{
+		commit.thenRun(() -> notifier.publish(department, change));
+	}
+
+	/**
+	 * @param cause
+	 * @return the error returned to a client whose change could not be logged
+	 */
+	private static RemoteException logFailure(IOException cause)
+	{
+		return new RemoteException("Unable to write to the log file " + LOG_FILE, cause);
+	}
+
+	/**
+	 * Writes a checkpoint once enough records have built up in the log. Caller
+	 * must hold mutationLock.
+	 */
+	private void checkpointIfDue()
+	{
+		if (this.log != null && this.log.getRecordsSinceCheckpoint() >= CHECKPOINT_INTERVAL)
+		{
+			checkpoint();
+		}
+	}
+
+	/**
+	 * Opens the mutation log the first time a server that was not loaded from disk
+	 * changes.
+	 * 
+	 * @return the mutation log
+	 * @throws IOException
+	 */
+	private MutationLog log() throws IOException
+	{
+		if (this.log == null)
+		{
+			this.log = new MutationLog(dataFile(LOG_FILE));
+		}
+		return this.log;
+	}
+
+	/**
+	 * @param name
+	 *                 one of SERVER_FILE, LOG_FILE or SHARD_DIRECTORY
+	 * @return that file in the data directory
+	 */
+	static File dataFile(String name)
+	{
+		return new File(System.getProperty("planner.dataDir", "."), name);
+	}
+
+	/**
+	 * Commits and closes the mutation log, stops sweeping leases and stops
+	 * notifying listeners, for a server that is being discarded. The server
+	 * opens a new log if it is changed again.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		synchronized (mutationLock)
+		{
+			if (this.log != null)
+			{
+				this.log.close();
+				this.log = null;
+			}
+		}
+		leases.close();
+		notifier.close();
+	}
+
+	/**
+	 * @return batch size and commit latency figures for the mutation log
+	 */
+	public String getLogStats()
+	{
+		MutationLog current = this.log;
+		return current == null ? "log: not opened" : current.getStats();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * software_masters.planner_networking.Server#getServerStats(java.lang.String)
+	 */
+	public String getServerStats(String cookie)
+	{
+		cookieChecker(cookie);// checks that cookie is valid and that user is admin
+		adminChecker(cookie);
+		return metrics.format() + getLogStats() + System.lineSeparator() + getCacheStats();
+	}
+
+	/**
+	 * @return this server wrapped so every call made through it is counted and
+	 *         timed in getServerStats; the wrapper is what spawn exports
+	 */
+	public Server instrumented()
+	{
+		return metrics.instrument(this, this::departmentOf);
+	}
+
+	/**
+	 * @param cookie
+	 * @return name of the department of the account logged in with cookie, null
+	 *         if there is no such account
+	 */
+	String departmentOf(String cookie)
+	{
+		Account account = this.cookieMap.get(cookie);
+		return account == null || account.getDepartment() == null ? null : account.getDepartment().getName();
+	}
+
+	/**
+	 * @return size and hit, miss and eviction counts of the plan cache
+	 */
+	public String getCacheStats()
+	{
+		return PlanCache.getShared().getStats();
+	}
+
+	/**
+	 * Fills in department names for checkpoints written before departments knew
+	 * their own name.
+	 */
+	void nameDepartments()
+	{
+		for (Enumeration<String> e = this.departmentMap.keys(); e.hasMoreElements();)
+		{
+			String name = e.nextElement();
+			Department dept = this.departmentMap.get(name);
+			if (dept.getName() == null)
+			{
+				dept.setName(name);
+			}
+		}
 	}
 
 	/**
@@ -353,6 +1290,7 @@ public class ServerImplementation implements Server
 	public void setLoginMap(ConcurrentHashMap<String, Account> loginMap)
 	{
 		this.loginMap = loginMap;
+		this.globalDirty = true;
 	}
 
 	/*
@@ -373,6 +1311,7 @@ public class ServerImplementation implements Server
 	public void setCookieMap(ConcurrentHashMap<String, Account> cookieMap)
 	{
 		this.cookieMap = cookieMap;
+		this.globalDirty = true;
 	}
 
 	/*
@@ -392,6 +1331,7 @@ public class ServerImplementation implements Server
 	public void setDepartmentMap(ConcurrentHashMap<String, Department> departmentMap)
 	{
 		this.departmentMap = departmentMap;
+		this.allDirty = true;
 	}
 
 	/*
@@ -411,6 +1351,7 @@ public class ServerImplementation implements Server
 	public void setPlanTemplateMap(ConcurrentHashMap<String, PlanFile> planTemplateMap)
 	{
 		this.planTemplateMap = planTemplateMap;
+		this.globalDirty = true;
 	}
 
 	/*
@@ -531,7 +1472,13 @@ public class ServerImplementation implements Server
 	/**
 	 * Attribute for singleton pattern 
 	 */
-	private static Server server=null;
+	private static ServerImplementation server=null;
+
+	/**
+	 * The wrapper spawn exports. RMI only holds exported objects weakly, so it is
+	 * kept here to stop it being collected while clients still look it up.
+	 */
+	private static Server exported=null;
 	
 	/**
 	 * Helper static method that allows us to use singleton pattern for testing.
@@ -545,7 +1492,8 @@ public class ServerImplementation implements Server
 			try {
 				server = new ServerImplementation();
 				registry = LocateRegistry.createRegistry(1060);
-				stub = (Server) UnicastRemoteObject.exportObject(server, 0);
+				exported = server.instrumented();
+				stub = (Server) UnicastRemoteObject.exportObject(exported, 0);
 				registry.bind("PlannerServer", stub);
 			} catch (RemoteException e) {
 				System.out.println("Unable to create and bind to server using rmi.");
@@ -569,9 +1517,12 @@ public class ServerImplementation implements Server
 			Server stub=null;
 			try {
 				server = ServerImplementation.load();
+				Runtime.getRuntime().addShutdownHook(new Thread(ServerImplementation::closeSpawned, "planner-shutdown"));
 				registry = LocateRegistry.createRegistry(1060);
-				stub = (Server) UnicastRemoteObject.exportObject(server, 0);
+				exported = server.instrumented();
+				stub = (Server) UnicastRemoteObject.exportObject(exported, 0);
 				registry.bind("PlannerServer", stub);
+				server.metrics.startDump(Integer.getInteger("planner.statsInterval", 300));
 			} catch (RemoteException e) {
 				System.out.println("Unable to create and bind to server using rmi.");
 				System.exit(1);
@@ -580,12 +1531,31 @@ public class ServerImplementation implements Server
 			} catch (FileNotFoundException e) {
 				System.out.print("Cannot find file to load server from.");
 				System.exit(1);
+			} catch (IOException e) {
+				System.out.print("Cannot read server from file.");
+				System.exit(1);
 			}
 			return;
 		}
 		System.out.println("Connecting to Existing Server");
 	}
 
+	/**
+	 * Commits the spawned server's log and stops its threads when the process
+	 * exits
+	 */
+	private static void closeSpawned()
+	{
+		try
+		{
+			server.close();
+		}
+		catch (IOException e)
+		{
+			System.out.println("ERROR: While closing the log file " + LOG_FILE);
+		}
+	}
+
 	/**
 	 * Starts the server, allows clients to access it
 	 * 
@@ -0,0 +1,269 @@
+package software_masters.planner_networking;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Call counts, errors by exception type and latency for each Server method,
+ * recorded by the proxy instrument wraps around the server. The proxy is what
+ * gets exported over RMI, so the figures cover what clients see.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class ServerMetrics
+{
+
+	private final ConcurrentHashMap<String, MethodStats> methods = new ConcurrentHashMap<String, MethodStats>();
+	private final long started = System.nanoTime();
+
+	/**
+	 * @param server
+	 *                   server to measure
+	 * @return server recording every call into these metrics
+	 */
+	public Server instrument(final Server server)
+	{
+		return instrument(server, cookie -> null);
+	}
+
+	/**
+	 * Also emits a flight recorder event for each call when one is enabled,
+	 * naming the caller's department. The cookie is taken to be the last
+	 * argument, as it is for every Server method that has one.
+	 *
+	 * @param server
+	 *                         server to measure
+	 * @param departmentOf
+	 *                         department name for a cookie, or null
+	 * @return server recording every call into these metrics
+	 */
+	public Server instrument(final Server server, final Function<String, String> departmentOf)
+	{
+		InvocationHandler handler = new InvocationHandler()
+		{
+			private final ConcurrentHashMap<Method, MethodStats> byMethod = new ConcurrentHashMap<Method, MethodStats>();
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+			{
+				if (method.getDeclaringClass() == Object.class)
+				{
+					return method.invoke(server, args);
+				}
+				MethodStats stats = byMethod.computeIfAbsent(method, m -> statsFor(m.getName()));
+				PlannerEvents.RpcEvent event = new PlannerEvents.RpcEvent();
+				event.begin();
+				long start = System.nanoTime();
+				try
+				{
+					Object result = method.invoke(server, args);
+					stats.latency.record(System.nanoTime() - start);
+					commit(event, method, args, result, null, departmentOf);
+					return result;
+				}
+				catch (InvocationTargetException e)
+				{
+					stats.failed(e.getCause());
+					commit(event, method, args, null, e.getCause(), departmentOf);
+					throw e.getCause();
+				}
+			}
+		};
+		return (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class },
+				handler);
+	}
+
+	/**
+	 * Records one call made some other way than through instrument
+	 *
+	 * @param method
+	 * @param nanos
+	 *                   time the call took
+	 * @param failure
+	 *                   exception thrown, or null
+	 */
+	public void record(String method, long nanos, Throwable failure)
+	{
+		MethodStats stats = statsFor(method);
+		if (failure == null)
+		{
+			stats.latency.record(nanos);
+		}
+		else
+		{
+			stats.failed(failure);
+		}
+	}
+
+	/**
+	 * @param method
+	 * @return calls completed without an exception
+	 */
+	public long getCalls(String method)
+	{
+		MethodStats stats = methods.get(method);
+		return stats == null ? 0 : stats.latency.getCount();
+	}
+
+	/**
+	 * @param method
+	 * @return calls that threw, by simple exception class name
+	 */
+	public Map<String, Long> getErrors(String method)
+	{
+		TreeMap<String, Long> errors = new TreeMap<String, Long>();
+		MethodStats stats = methods.get(method);
+		if (stats != null)
+		{
+			for (Map.Entry<String, LongAdder> error : stats.errors.entrySet())
+			{
+				errors.put(error.getKey(), error.getValue().sum());
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * @param method
+	 * @return latency of the method's successful calls, in nanoseconds
+	 */
+	public LatencyHistogram getLatency(String method)
+	{
+		return statsFor(method).latency;
+	}
+
+	/**
+	 * @return one line per method called so far, with latencies in microseconds
+	 */
+	public String format()
+	{
+		double seconds = Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%-20s %10s %8s %9s %9s %9s %9s %9s%n", "method", "calls", "errors", "calls/s",
+				"mean us", "p50 us", "p99 us", "max us"));
+		for (Map.Entry<String, MethodStats> entry : new TreeMap<String, MethodStats>(methods).entrySet())
+		{
+			MethodStats stats = entry.getValue();
+			LatencyHistogram latency = stats.latency;
+			long errors = 0;
+			for (LongAdder count : stats.errors.values())
+			{
+				errors += count.sum();
+			}
+			text.append(String.format("%-20s %10d %8d %9.1f %9d %9d %9d %9d%n", entry.getKey(), latency.getCount(),
+					errors, latency.getCount() / seconds, latency.getMean() / 1000,
+					latency.getPercentile(50) / 1000, latency.getPercentile(99) / 1000, latency.getMax() / 1000));
+			for (Map.Entry<String, Long> error : getErrors(entry.getKey()).entrySet())
+			{
+				text.append(String.format("%-20s   %s x%d%n", "", error.getKey(), error.getValue()));
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Prints format to the console at a fixed interval on a daemon thread
+	 *
+	 * @param seconds
+	 *                    interval, nothing is printed if not positive
+	 * @return the timer, or null if seconds was not positive
+	 */
+	public ScheduledExecutorService startDump(long seconds)
+	{
+		if (seconds <= 0)
+		{
+			return null;
+		}
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "planner-stats-dump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.scheduleAtFixedRate(() -> System.out.print(format()), seconds, seconds, TimeUnit.SECONDS);
+		return timer;
+	}
+
+	/**
+	 * Fills in and commits a call event, only working out the payload once the
+	 * event is known to be kept
+	 */
+	private static void commit(PlannerEvents.RpcEvent event, Method method, Object[] args, Object result,
+			Throwable failure, Function<String, String> departmentOf)
+	{
+		event.end();
+		if (!event.shouldCommit())
+		{
+			return;
+		}
+		event.method = method.getName();
+		if (args != null && args.length > 0 && args[args.length - 1] instanceof String)
+		{
+			event.department = departmentOf.apply((String) args[args.length - 1]);
+		}
+		if (args != null)
+		{
+			for (Object arg : args)
+			{
+				event.payloadSize += payloadSize(arg);
+			}
+		}
+		event.payloadSize += payloadSize(result);
+		event.error = failure == null ? null : failure.getClass().getSimpleName();
+		event.commit();
+	}
+
+	/**
+	 * @return estimated size of the plan bodies in value, without reading any
+	 *         from disk
+	 */
+	static long payloadSize(Object value)
+	{
+		if (value instanceof PlanFile)
+		{
+			Plan plan = ((PlanFile) value).peekPlan();
+			return plan == null ? 0 : PlanCache.estimateSize(plan);
+		}
+		long size = 0;
+		if (value instanceof Collection)
+		{
+			for (Object element : (Collection<?>) value)
+			{
+				size += payloadSize(element);
+			}
+		}
+		return size;
+	}
+
+	private MethodStats statsFor(String method)
+	{
+		return methods.computeIfAbsent(method, name -> new MethodStats());
+	}
+
+	/**
+	 * Figures for one method
+	 */
+	private static class MethodStats
+	{
+		final LatencyHistogram latency = new LatencyHistogram();
+		final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+		void failed(Throwable failure)
+		{
+			errors.computeIfAbsent(failure.getClass().getSimpleName(), name -> new LongAdder()).increment();
+		}
+	}
+
+}
@@ -0,0 +1,434 @@
+package software_masters.planner_networking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary checkpoint files: a server file holding everything except plans, and
+ * one file per department whose plan bodies each carry their own string table,
+ * so a body can be read on its own.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class SnapshotFormat
+{
+
+	/**
+	 * Starts the server file, which holds everything except plans:
+	 *
+	 * <pre>
+	 * magic "PLNS", int format version, long log sequence
+	 * string table
+	 * accounts: password, cookie, department name, isAdmin
+	 * loginMap: username, account index
+	 * cookieMap: cookie, account index
+	 * planTemplateMap: name, planFile record
+	 * </pre>
+	 *
+	 * Strings are references into the table, counts are varints and each
+	 * template planFile is length prefixed.
+	 */
+	static final int MAGIC = 0x504C4E53;
+
+	/**
+	 * Starts a department file, with an index in front of the plan bodies so the
+	 * server can start from the index alone:
+	 *
+	 * <pre>
+	 * magic "PLND", int format version, long log sequence
+	 * int index length
+	 * index: name, then year, canEdit, version and body length for each plan
+	 * bodies: string table and plan for each plan, in index order
+	 * </pre>
+	 */
+	static final int DEPARTMENT_MAGIC = 0x504C4E44;
+
+	/**
+	 * Version 1 server files held every department inline before the accounts,
+	 * version 2 department files kept every plan inline and version 3 indexes
+	 * had no plan versions; all are still read so old checkpoints can be
+	 * migrated. Version 5 plans carry node ids; bodies mark whether they have
+	 * them, so bodies copied unchanged from older files still read.
+	 */
+	static final int VERSION = 5;
+	private static final int DEPARTMENT_HEADER = 20;
+
+	private SnapshotFormat()
+	{
+	}
+
+	/**
+	 * Checks whether a stream starts with a binary server snapshot. The stream
+	 * must support mark and reset; it is left where it started.
+	 *
+	 * @param in
+	 * @return true if the stream holds a binary snapshot
+	 * @throws IOException
+	 */
+	public static boolean isSnapshot(InputStream in) throws IOException
+	{
+		in.mark(4);
+		DataInputStream data = new DataInputStream(in);
+		int magic;
+		try
+		{
+			magic = data.readInt();
+		}
+		catch (IOException e)
+		{
+			magic = 0;
+		}
+		in.reset();
+		return magic == MAGIC;
+	}
+
+	/**
+	 * Writes the accounts and plan templates of a server
+	 *
+	 * @param server
+	 * @param sequence
+	 *                     newest mutation log record included in the snapshot
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void writeServer(ServerImplementation server, long sequence, OutputStream out) throws IOException
+	{
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		PlanEncoder encoder = new PlanEncoder(body, true);
+
+		IdentityHashMap<Account, Integer> accountIndex = new IdentityHashMap<Account, Integer>();
+		ArrayList<Account> accounts = new ArrayList<Account>();
+		ArrayList<Map.Entry<String, Account>> logins = new ArrayList<Map.Entry<String, Account>>(
+				server.getLoginMap().entrySet());
+		ArrayList<Map.Entry<String, Account>> cookies = new ArrayList<Map.Entry<String, Account>>(
+				server.getCookieMap().entrySet());
+		for (Map.Entry<String, Account> entry : logins)
+		{
+			indexAccount(entry.getValue(), accountIndex, accounts);
+		}
+		for (Map.Entry<String, Account> entry : cookies)
+		{
+			indexAccount(entry.getValue(), accountIndex, accounts);
+		}
+		encoder.writeVarInt(accounts.size());
+		for (Account account : accounts)
+		{
+			encoder.writeString(account.getPassword());
+			encoder.writeString(account.getCookie());
+			encoder.writeString(account.getDepartment() == null ? null : account.getDepartment().getName());
+			encoder.writeBoolean(account.isAdmin());
+		}
+		encoder.writeVarInt(logins.size());
+		for (Map.Entry<String, Account> entry : logins)
+		{
+			encoder.writeString(entry.getKey());
+			encoder.writeVarInt(accountIndex.get(entry.getValue()));
+		}
+		encoder.writeVarInt(cookies.size());
+		for (Map.Entry<String, Account> entry : cookies)
+		{
+			encoder.writeString(entry.getKey());
+			encoder.writeVarInt(accountIndex.get(entry.getValue()));
+		}
+
+		ArrayList<Map.Entry<String, PlanFile>> templates = new ArrayList<Map.Entry<String, PlanFile>>(
+				server.getPlanTemplateMap().entrySet());
+		encoder.writeVarInt(templates.size());
+		for (Map.Entry<String, PlanFile> entry : templates)
+		{
+			encoder.writeString(entry.getKey());
+			encoder.writePlanFile(entry.getValue());
+		}
+
+		writeFile(MAGIC, sequence, encoder, body, out);
+	}
+
+	/**
+	 * Writes one department and all of its plans. Bodies still stored unchanged
+	 * in the old department file are copied across without being decoded.
+	 *
+	 * @param department
+	 * @param plans
+	 *                       the department's plans, in the order to write them
+	 * @param sequence
+	 *                       newest mutation log record included in the snapshot
+	 * @param out
+	 * @return offset of each plan body in the file, followed by the end of the
+	 *         last one
+	 * @throws IOException
+	 */
+	public static long[] writeDepartment(Department department, List<PlanFile> plans, long sequence,
+			OutputStream out) throws IOException
+	{
+		int count = plans.size();
+		PlanSource[] sources = new PlanSource[count];
+		byte[][] bodies = new byte[count][];
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		PlanEncoder indexEncoder = new PlanEncoder(index, false);
+		indexEncoder.writeString(department.getName());
+		indexEncoder.writeVarInt(count);
+		for (int i = 0; i < count; i++)
+		{
+			PlanFile plan = plans.get(i);
+			sources[i] = plan.getSource();
+			int length;
+			if (sources[i] != null)
+			{
+				length = sources[i].getLength();
+			}
+			else
+			{
+				bodies[i] = encodeBody(plan.getPlan());
+				length = bodies[i].length;
+			}
+			indexEncoder.writeString(plan.getYear());
+			indexEncoder.writeBoolean(plan.isCanEdit());
+			indexEncoder.writeVarLong(plan.getVersion());
+			indexEncoder.writeVarInt(length);
+		}
+		indexEncoder.flush();
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(DEPARTMENT_MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(sequence);
+		data.writeInt(index.size());
+		index.writeTo(data);
+		long[] offsets = new long[count + 1];
+		long position = DEPARTMENT_HEADER + index.size();
+		for (int i = 0; i < count; i++)
+		{
+			byte[] body = bodies[i] != null ? bodies[i] : sources[i].read();
+			offsets[i] = position;
+			data.write(body);
+			position += body.length;
+		}
+		offsets[count] = position;
+		data.flush();
+		return offsets;
+	}
+
+	/**
+	 * Reads the index of a department file. Each plan is left unloaded, pointing
+	 * at its body in the file. The log sequence stored in the file is left in the
+	 * department's checkpointSequence.
+	 *
+	 * @param in
+	 *                 stream positioned at the start of the file
+	 * @param file
+	 *                 the department file, read again when a body is needed
+	 * @return department
+	 * @throws IOException
+	 */
+	public static Department readDepartment(InputStream in, File file) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		int version = readHeader(data, DEPARTMENT_MAGIC);
+		long sequence = data.readLong();
+		Department department;
+		if (version < 3)
+		{
+			department = readDepartmentBody(new PlanDecoder(data, PlanDecoder.readDictionary(data)));
+		}
+		else
+		{
+			int indexLength = data.readInt();
+			PlanDecoder index = new PlanDecoder(data, null);
+			department = new Department(index.readString());
+			int planCount = index.readVarInt();
+			long position = DEPARTMENT_HEADER + indexLength;
+			for (int i = 0; i < planCount; i++)
+			{
+				String year = index.readString();
+				boolean canEdit = index.readBoolean();
+				long planVersion = version > 3 ? index.readVarLong() : 0;
+				int length = index.readVarInt();
+				PlanFile plan = new PlanFile(year, canEdit, null);
+				plan.setVersion(planVersion);
+				plan.setSource(new PlanSource(file, department.shardLock, position, length));
+				department.addPlan(year, plan);
+				position += length;
+			}
+		}
+		department.checkpointSequence = sequence;
+		return department;
+	}
+
+	/**
+	 * Reads a server file. Departments come from their own files and are passed
+	 * in; a version 1 file carries its departments inline and they are added to
+	 * the map instead, leaving the server marked for a full checkpoint. The log
+	 * sequence stored in the file is left in the server's checkpointSequence.
+	 *
+	 * @param in
+	 * @param departments
+	 *                        departments read from their own files
+	 * @return server
+	 * @throws IOException
+	 */
+	public static ServerImplementation readServer(InputStream in, ConcurrentHashMap<String, Department> departments)
+			throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		int version = readHeader(data, MAGIC);
+		long sequence = data.readLong();
+		PlanDecoder decoder = new PlanDecoder(data, PlanDecoder.readDictionary(data));
+
+		if (version == 1)
+		{
+			int departmentCount = decoder.readVarInt();
+			for (int i = 0; i < departmentCount; i++)
+			{
+				Department department = readDepartmentBody(decoder);
+				department.checkpointSequence = sequence;
+				departments.put(department.getName(), department);
+			}
+		}
+
+		int accountCount = decoder.readVarInt();
+		Account[] accounts = new Account[accountCount];
+		for (int i = 0; i < accountCount; i++)
+		{
+			String password = decoder.readString();
+			String cookie = decoder.readString();
+			String departmentName = decoder.readString();
+			boolean isAdmin = decoder.readBoolean();
+			Department department = departmentName == null ? null : departments.get(departmentName);
+			accounts[i] = new Account(password, cookie, department, isAdmin);
+		}
+		ConcurrentHashMap<String, Account> logins = new ConcurrentHashMap<String, Account>();
+		int loginCount = decoder.readVarInt();
+		for (int i = 0; i < loginCount; i++)
+		{
+			String username = decoder.readString();
+			logins.put(username, accounts[decoder.readVarInt()]);
+		}
+		ConcurrentHashMap<String, Account> cookies = new ConcurrentHashMap<String, Account>();
+		int cookieCount = decoder.readVarInt();
+		for (int i = 0; i < cookieCount; i++)
+		{
+			String cookie = decoder.readString();
+			cookies.put(cookie, accounts[decoder.readVarInt()]);
+		}
+
+		ConcurrentHashMap<String, PlanFile> templates = new ConcurrentHashMap<String, PlanFile>();
+		int templateCount = decoder.readVarInt();
+		for (int i = 0; i < templateCount; i++)
+		{
+			String name = decoder.readString();
+			templates.put(name, decoder.readPlanFile());
+		}
+
+		ServerImplementation server;
+		try
+		{
+			server = new ServerImplementation();
+		}
+		catch (RemoteException e)
+		{
+			throw new IOException("Unable to create server", e);
+		}
+		server.setDepartmentMap(departments);
+		server.setLoginMap(logins);
+		server.setCookieMap(cookies);
+		server.setPlanTemplateMap(templates);
+		server.checkpointSequence = sequence;
+		if (version > 1)
+		{
+			server.markClean();
+		}
+		return server;
+	}
+
+	/**
+	 * Reads a department name and its planFile records
+	 */
+	private static Department readDepartmentBody(PlanDecoder decoder) throws IOException
+	{
+		Department department = new Department(decoder.readString());
+		int planCount = decoder.readVarInt();
+		for (int j = 0; j < planCount; j++)
+		{
+			PlanFile plan = decoder.readPlanFile();
+			department.addPlan(plan.getYear(), plan);
+		}
+		return department;
+	}
+
+	/**
+	 * Checks the magic number and version of a file
+	 *
+	 * @return format version of the file
+	 */
+	private static int readHeader(DataInputStream data, int magic) throws IOException
+	{
+		if (data.readInt() != magic)
+		{
+			throw new IOException("Not a planner snapshot");
+		}
+		int version = data.readInt();
+		if (version > VERSION)
+		{
+			throw new IOException("Snapshot format " + version + " is newer than this server");
+		}
+		return version;
+	}
+
+	/**
+	 * Encodes a plan body with its own string table
+	 */
+	private static byte[] encodeBody(Plan plan) throws IOException
+	{
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		PlanEncoder encoder = new PlanEncoder(body, true);
+		encoder.writePlan(plan);
+		encoder.flush();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.size() + 64);
+		encoder.writeDictionary(bytes);
+		body.writeTo(bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a header, the string table collected while encoding and the encoded
+	 * body
+	 */
+	private static void writeFile(int magic, long sequence, PlanEncoder encoder, ByteArrayOutputStream body,
+			OutputStream out) throws IOException
+	{
+		encoder.flush();
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(magic);
+		header.writeInt(VERSION);
+		header.writeLong(sequence);
+		encoder.writeDictionary(header);
+		body.writeTo(header);
+		header.flush();
+	}
+
+	/**
+	 * Gives each distinct account object one index so shared accounts stay shared
+	 */
+	private static void indexAccount(Account account, IdentityHashMap<Account, Integer> accountIndex,
+			ArrayList<Account> accounts)
+	{
+		if (!accountIndex.containsKey(account))
+		{
+			accountIndex.put(account, accounts.size());
+			accounts.add(account);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package software_masters.planner_networking;
+
+import java.beans.XMLDecoder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Converts servers saved with XMLEncoder to the binary snapshot format.
+ * ServerImplementation.load does this the first time it meets an xml file; main
+ * converts a file ahead of time.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class SnapshotMigrator
+{
+
+	private SnapshotMigrator()
+	{
+	}
+
+	/**
+	 * Reads a server written by the old xml save. The log sequence stored after
+	 * the server, if any, is left in the server's checkpointSequence.
+	 *
+	 * @param in
+	 * @return server
+	 */
+	public static ServerImplementation readXml(InputStream in)
+	{
+		XMLDecoder decoder = new XMLDecoder(in);
+		ServerImplementation server = (ServerImplementation) decoder.readObject();
+		try
+		{
+			server.checkpointSequence = (Long) decoder.readObject();
+		}
+		catch (ArrayIndexOutOfBoundsException noSequence)
+		{
+			// written before the mutation log existed, nothing to skip
+		}
+		decoder.close();
+		server.nameDepartments();
+		for (Department department : server.getDepartmentMap().values())
+		{
+			department.checkpointSequence = server.checkpointSequence;
+		}
+		return server;
+	}
+
+	/**
+	 * Rewrites an xml server file as a binary snapshot and department files
+	 *
+	 * @param source
+	 * @param target
+	 *                   may be the same file as source
+	 * @throws IOException
+	 */
+	public static void migrate(File source, File target) throws IOException
+	{
+		ServerImplementation server;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(source)))
+		{
+			if (SnapshotFormat.isSnapshot(in))
+			{
+				System.out.println(source + " is already a binary snapshot");
+				return;
+			}
+			server = readXml(in);
+		}
+		new DepartmentShards(new File(target.getAbsoluteFile().getParentFile(), ServerImplementation.SHARD_DIRECTORY))
+				.write(server.getDepartmentMap().values(), server.checkpointSequence);
+		File temp = new File(target.getPath() + ".tmp");
+		try (FileOutputStream file = new FileOutputStream(temp))
+		{
+			BufferedOutputStream out = new BufferedOutputStream(file);
+			SnapshotFormat.writeServer(server, server.checkpointSequence, out);
+			out.flush();
+			file.getFD().sync();
+		}
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		System.out.println("Migrated " + source + " to " + target);
+	}
+
+	/**
+	 * Usage: SnapshotMigrator [source.serv [target.serv]]. Converts
+	 * PlannerServer.serv in place when no arguments are given.
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		File source = new File(args.length > 0 ? args[0] : ServerImplementation.SERVER_FILE);
+		File target = args.length > 1 ? new File(args[1]) : source;
+		migrate(source, target);
+	}
+
+}
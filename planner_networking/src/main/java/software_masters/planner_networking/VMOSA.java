@@ -40,7 +40,7 @@ public class VMOSA extends Plan
 	 * @return boolean true if added
 	 * @throws RemoteException
 	 */
-	public boolean addNode(Node parent) throws RemoteException, IllegalArgumentException
+	protected boolean insertNode(Node parent) throws RemoteException, IllegalArgumentException
 	{
 		if (parent == null)
 		{
@@ -59,10 +59,7 @@ public class VMOSA extends Plan
 				for (int i = index_depth(parent) + 1; i < this.getList().size(); i++)
 				{
 
-					Node newNode = new Node(parent, this.getList().get(i), null, null);
-
-					parent.addChild(newNode);
-					parent = newNode;
+					parent = newChild(parent, this.getList().get(i));
 
 				}
 				return true;
@@ -76,7 +73,7 @@ public class VMOSA extends Plan
 	 *                       node to be removed
 	 * @return boolean true is removed
 	 */
-	public boolean removeNode(Node nodeRemove) throws IllegalArgumentException
+	protected boolean deleteNode(Node nodeRemove) throws IllegalArgumentException
 
 	{
 		if (nodeRemove == null)
@@ -99,8 +96,7 @@ public class VMOSA extends Plan
 				}
 				else
 				{
-					nodeRemove.getParent().removeChild(nodeRemove);
-					nodeRemove.setParent(null);
+					detach(nodeRemove);
 
 					return true;
 
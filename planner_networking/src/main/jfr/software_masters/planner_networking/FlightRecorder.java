@@ -0,0 +1,212 @@
+package software_masters.planner_networking;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records PlannerEvents as jdk.jfr events. Only compiled by the flight-recorder
+ * profile, on JDK 11 and later, and loaded by PlannerEvents through reflection,
+ * so nothing else in the project needs jdk.jfr.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+final class FlightRecorder implements PlannerEvents.Recorder
+{
+
+	FlightRecorder()
+	{
+	}
+
+	@Override
+	public boolean isEnabled(Class<? extends PlannerEvents.PlannerEvent> type)
+	{
+		return create(type).isEnabled();
+	}
+
+	@Override
+	public Object begin(Class<? extends PlannerEvents.PlannerEvent> type)
+	{
+		Event event = create(type);
+		if (!event.isEnabled())
+		{
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void end(Object recorded)
+	{
+		((Event) recorded).end();
+	}
+
+	@Override
+	public boolean shouldCommit(Object recorded)
+	{
+		return ((Event) recorded).shouldCommit();
+	}
+
+	@Override
+	public void commit(Object recorded, PlannerEvents.PlannerEvent event)
+	{
+		if (recorded instanceof SaveEvent)
+		{
+			PlannerEvents.SaveEvent from = (PlannerEvents.SaveEvent) event;
+			SaveEvent to = (SaveEvent) recorded;
+			to.bytesWritten = from.bytesWritten;
+			to.departments = from.departments;
+			to.plans = from.plans;
+			to.serverFile = from.serverFile;
+			to.sequence = from.sequence;
+		}
+		else if (recorded instanceof LoadEvent)
+		{
+			PlannerEvents.LoadEvent from = (PlannerEvents.LoadEvent) event;
+			LoadEvent to = (LoadEvent) recorded;
+			to.bytesRead = from.bytesRead;
+			to.departments = from.departments;
+			to.plans = from.plans;
+			to.accounts = from.accounts;
+		}
+		else if (recorded instanceof RpcEvent)
+		{
+			PlannerEvents.RpcEvent from = (PlannerEvents.RpcEvent) event;
+			RpcEvent to = (RpcEvent) recorded;
+			to.method = from.method;
+			to.department = from.department;
+			to.payloadSize = from.payloadSize;
+			to.error = from.error;
+		}
+		else
+		{
+			PlannerEvents.NodeEditEvent from = (PlannerEvents.NodeEditEvent) event;
+			NodeEditEvent to = (NodeEditEvent) recorded;
+			to.operation = from.operation;
+			to.planType = from.planType;
+			to.nodeId = from.nodeId;
+			to.depth = from.depth;
+			to.nodes = from.nodes;
+		}
+		((Event) recorded).commit();
+	}
+
+	/**
+	 * @param type
+	 * @return a new flight recorder event for the PlannerEvents type
+	 */
+	private static Event create(Class<? extends PlannerEvents.PlannerEvent> type)
+	{
+		if (type == PlannerEvents.SaveEvent.class)
+		{
+			return new SaveEvent();
+		}
+		if (type == PlannerEvents.LoadEvent.class)
+		{
+			return new LoadEvent();
+		}
+		if (type == PlannerEvents.RpcEvent.class)
+		{
+			return new RpcEvent();
+		}
+		return new NodeEditEvent();
+	}
+
+	@Name("software_masters.planner.Save")
+	@Label("Checkpoint")
+	@Category({ "Planner", "Persistence" })
+	@StackTrace(false)
+	static class SaveEvent extends Event
+	{
+		@Label("Bytes Written")
+		@DataAmount
+		long bytesWritten;
+
+		@Label("Departments Written")
+		int departments;
+
+		@Label("Plans Written")
+		int plans;
+
+		@Label("Server File Written")
+		boolean serverFile;
+
+		@Label("Log Sequence")
+		@Description("Newest mutation log record the checkpoint covers")
+		long sequence;
+	}
+
+	@Name("software_masters.planner.Load")
+	@Label("Load")
+	@Category({ "Planner", "Persistence" })
+	@StackTrace(false)
+	static class LoadEvent extends Event
+	{
+		@Label("Bytes Read")
+		@Description("Size of the server file and department files, plan bodies are read later")
+		@DataAmount
+		long bytesRead;
+
+		@Label("Departments")
+		int departments;
+
+		@Label("Plans")
+		int plans;
+
+		@Label("Accounts")
+		int accounts;
+	}
+
+	@Name("software_masters.planner.Rpc")
+	@Label("Server Call")
+	@Category({ "Planner", "RPC" })
+	@StackTrace(false)
+	static class RpcEvent extends Event
+	{
+		@Label("Method")
+		String method;
+
+		@Label("Department")
+		@Description("Department of the caller's cookie, if it has one")
+		String department;
+
+		@Label("Payload Size")
+		@Description("Estimated size of the plans passed in and returned")
+		@DataAmount
+		long payloadSize;
+
+		@Label("Error")
+		@Description("Simple name of the exception thrown, if any")
+		String error;
+	}
+
+	@Name("software_masters.planner.PlanEdit")
+	@Label("Plan Node Edit")
+	@Category({ "Planner", "Plan" })
+	@StackTrace(false)
+	static class NodeEditEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+
+		@Label("Plan Type")
+		String planType;
+
+		@Label("Node Id")
+		@Description("Parent added to, or node removed or moved")
+		long nodeId;
+
+		@Label("Depth")
+		int depth;
+
+		@Label("Nodes After")
+		int nodes;
+	}
+
+}
@@ -2,15 +2,19 @@ package software_masters.gui_test;
 
 import static org.testfx.api.FxAssert.verifyThat;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.testfx.api.FxRobotInterface;
 import org.testfx.api.FxToolkit;
 import org.testfx.framework.junit5.ApplicationTest;
 import org.testfx.matcher.control.LabeledMatchers;
+import org.testfx.util.WaitForAsyncUtils;
 
+import application.BackgroundWork;
 import application.Main;
 import javafx.scene.Node;
 import javafx.scene.control.Labeled;
@@ -70,6 +74,56 @@ public abstract class GuiTestBase extends ApplicationTest
 		release(new MouseButton[] {});
 	}
 	
+	/**
+	 * Clicks, then waits for any call to the server the click started.
+	 */
+	@Override
+	public FxRobotInterface clickOn(String query, MouseButton... buttons)
+	{
+		FxRobotInterface robot = super.clickOn(query, buttons);
+		waitForBackgroundWork();
+		return robot;
+	}
+
+	/**
+	 * Clicks, then waits for any call to the server the click started.
+	 */
+	@Override
+	public FxRobotInterface clickOn(Node node, MouseButton... buttons)
+	{
+		FxRobotInterface robot = super.clickOn(node, buttons);
+		waitForBackgroundWork();
+		return robot;
+	}
+
+	/**
+	 * Double clicks, then waits for any call to the server the clicks started.
+	 */
+	@Override
+	public FxRobotInterface doubleClickOn(String query, MouseButton... buttons)
+	{
+		FxRobotInterface robot = super.doubleClickOn(query, buttons);
+		waitForBackgroundWork();
+		return robot;
+	}
+
+	/**
+	 * Waits until the gui has no call to the server running and has handled
+	 * the results.
+	 */
+	public void waitForBackgroundWork()
+	{
+		try
+		{
+			WaitForAsyncUtils.waitFor(10, TimeUnit.SECONDS, () -> !BackgroundWork.isWorking());
+		}
+		catch (TimeoutException e)
+		{
+			throw new AssertionError("gui still waiting on the server", e);
+		}
+		WaitForAsyncUtils.waitForFxEvents();
+	}
+
 	/**
 	 * Helper method for checking popups for the right error message
 	 * @param msg
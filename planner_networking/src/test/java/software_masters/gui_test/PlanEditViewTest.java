@@ -101,7 +101,8 @@ class PlanEditViewTest extends GuiTestBase
 			return true;
 		});
 		
-		doubleClickOn("Mission");
+		//the tree stays expanded, with the edited goal still selected
+		checkPage("Go 1","Go 1 content");
 		clickOn((javafx.scene.Node) find("Goal")); //will fail if a goal section was not created
 		checkPage("Goal","");
 		
@@ -143,7 +144,10 @@ class PlanEditViewTest extends GuiTestBase
 		checkPopupMsg("Are you sure you want to delete this section and all dependencies?"+
 		"They cannot be recovered.");
 		clickOn((javafx.scene.Node) find("Delete"));
-		checkBranch();
+		//the tree stays expanded and the remaining goal is selected
+		checkPage("Goal","");
+		String[] names = {"Goal","Learning Objective","Assessment Process","Results"};
+		checkBranch(names);
 		verifyThat(treeViewID, (TreeView<Node> treeview) ->
 		{
 			if (treeview.getRoot().getChildren().size() != 1)
@@ -246,7 +250,7 @@ class PlanEditViewTest extends GuiTestBase
 		clickOn(saveID);
 		
 		//Tests delete 
-		doubleClickOn("Mission1"); //This also tests that treeview labels change in response to name field edits
+		clickOn("Mission1"); //This also tests that treeview labels change in response to name field edits
 		clickOn("Goal");
 		clickOn(deleteButtonID);
 		clickOn("Delete");
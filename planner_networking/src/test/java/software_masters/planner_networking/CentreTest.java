@@ -5,6 +5,9 @@ package software_masters.planner_networking;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.rmi.RemoteException;
 
 import org.junit.Test;
@@ -93,4 +96,54 @@ public class CentreTest
 		}
 	}
 
+	/**
+	 * Checks that nodes keep their ids and depths as branches come and go, and
+	 * that the ids survive encoding
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testNodeIndex() throws IOException
+	{
+		Plan plan = new Centre();
+		Node goal = plan.getRoot().getChildren().get(0);
+		Node results = goal.getChildren().get(0).getChildren().get(0).getChildren().get(0);
+		assertEquals(5, plan.getNodeCount());
+		assertEquals(4, results.getDepth());
+		assertSame(results, plan.getNode(results.getId()));
+
+		plan.addNode(plan.getRoot());
+		Node second = plan.getRoot().getChildren().get(1);
+		assertEquals(9, plan.getNodeCount());
+		assertEquals(1, second.getDepth());
+		assertNotEquals(goal.getId(), second.getId());
+		assertSame(second, plan.getNode(second.getId()));
+
+		long removed = goal.getId();
+		plan.removeNode(goal);
+		assertNull(plan.getNode(removed));
+		assertNull(plan.getNode(results.getId()));
+		assertEquals(5, plan.getNodeCount());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PlanEncoder encoder = new PlanEncoder(bytes, false);
+		encoder.writePlan(plan);
+		encoder.flush();
+		Plan read = new PlanDecoder(new ByteArrayInputStream(bytes.toByteArray()), null).readPlan();
+		Node readSecond = read.getNode(second.getId());
+		assertEquals(second.getName(), readSecond.getName());
+		assertSame(read.getRoot().getChildren().get(0), readSecond);
+		assertEquals(3, readSecond.getChildren().get(0).getChildren().get(0).getDepth());
+
+		// nodes from before ids existed are numbered when first looked up
+		read.addNode(read.getRoot());
+		assertEquals(plan.getLastNodeId() + 4, read.getLastNodeId());
+		Node legacy = new Node(null, "Mission", null, null);
+		legacy.addChild(new Node(legacy, "Goal", null, null));
+		read.setRoot(legacy);
+		assertEquals(2, read.getNodeCount());
+		assertSame(legacy, read.getNode(legacy.getId()));
+		assertNotEquals(0, legacy.getChildren().get(0).getId());
+	}
+
 }
@@ -0,0 +1,166 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies that the async client calls run off the
+ *             caller's thread, in order where they need to be, and can be
+ *             cancelled or timed out.
+ */
+public class ClientAsyncTest
+{
+
+	/**
+	 * Calls on the current plan wait for a slow login, a template list does not,
+	 * and a call cancelled while waiting is never made
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testOrderAndCancel() throws Exception
+	{
+		ServerImplementation testServer = new ServerImplementation();
+		testServer.save();
+		CountDownLatch gate = new CountDownLatch(1);
+		ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<String, LongAdder>();
+		Client client = new Client(gated(testServer, gate, calls));
+
+		CompletableFuture<Void> login = client.loginAsync("user", "user");
+		CompletableFuture<PlanFile> plan = client.getPlanAsync("2019");
+		CompletableFuture<PlanFile> cancelled = client.getPlanAsync("2018");
+		assertTrue(cancelled.cancel(false));
+		assertEquals(2, client.listPlanTemplatesAsync().get(5, TimeUnit.SECONDS).size());
+		assertFalse(login.isDone());
+		assertFalse(plan.isDone());
+
+		gate.countDown();
+		assertEquals("2019", plan.get(5, TimeUnit.SECONDS).getYear());
+		assertSame(client.getCurrPlanFile(), plan.get());
+		assertEquals(1, calls.get("getPlanIfModified").sum());
+
+		ExecutionException missing = assertThrows(ExecutionException.class,
+				() -> client.getPlanAsync("1900").get(5, TimeUnit.SECONDS));
+		assertTrue(missing.getCause() instanceof IllegalArgumentException);
+		assertEquals("2019", client.getCurrPlanFile().getYear());
+
+		client.setCurrNode(client.getCurrPlanFile().getPlan().getRoot().getChildren().get(0));
+		client.editData("async");
+		long version = client.pushEditsAsync().get(5, TimeUnit.SECONDS);
+		assertEquals(version, testServer.getPlan("2019", "0").getVersion());
+		testServer.close();
+	}
+
+	/**
+	 * A call that outlives its timeout fails the future, and the calls queued
+	 * behind it still wait for it to finish
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTimeout() throws Exception
+	{
+		ServerImplementation testServer = new ServerImplementation();
+		testServer.save();
+		CountDownLatch gate = new CountDownLatch(1);
+		ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<String, LongAdder>();
+		Client client = new Client(gated(testServer, gate, calls));
+
+		CompletableFuture<Void> login = client.loginAsync("user", "user");
+		ClientExecutor.failAfter(login, 100);
+		CompletableFuture<PlanFile> plan = client.getPlanAsync("2019");
+		ExecutionException timedOut = assertThrows(ExecutionException.class, () -> login.get(5, TimeUnit.SECONDS));
+		assertTrue(timedOut.getCause() instanceof TimeoutException);
+		assertFalse(plan.isDone());
+
+		gate.countDown();
+		assertEquals("2019", plan.get(5, TimeUnit.SECONDS).getYear());
+		testServer.close();
+	}
+
+	/**
+	 * Clients listening from several threads at once register one listener
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentListen() throws Exception
+	{
+		ServerImplementation testServer = new ServerImplementation();
+		testServer.save();
+		ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<String, LongAdder>();
+		Client client = new Client(gated(testServer, new CountDownLatch(0), calls));
+		client.login("user", "user");
+
+		CountDownLatch start = new CountDownLatch(1);
+		ArrayList<CompletableFuture<Void>> listens = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 8; i++)
+		{
+			listens.add(CompletableFuture.runAsync(() ->
+			{
+				try
+				{
+					start.await();
+					client.listen(change ->
+					{
+					});
+				}
+				catch (Exception e)
+				{
+					throw new CompletionException(e);
+				}
+			}));
+		}
+		start.countDown();
+		for (CompletableFuture<Void> listen : listens)
+		{
+			listen.get(5, TimeUnit.SECONDS);
+		}
+		assertEquals(1, calls.get("addPlanListener").sum());
+
+		client.stopListening();
+		client.stopListening();
+		assertEquals(1, calls.get("removePlanListener").sum());
+		testServer.close();
+	}
+
+	/**
+	 * @return server whose logIn waits for gate, counting every call
+	 */
+	private static Server gated(Server server, CountDownLatch gate, ConcurrentHashMap<String, LongAdder> calls)
+	{
+		return (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class },
+				(proxy, method, args) ->
+				{
+					calls.computeIfAbsent(method.getName(), name -> new LongAdder()).increment();
+					if (method.getName().equals("logIn"))
+					{
+						gate.await();
+					}
+					try
+					{
+						return method.invoke(server, args);
+					}
+					catch (InvocationTargetException e)
+					{
+						throw e.getCause();
+					}
+				});
+	}
+
+}
@@ -0,0 +1,126 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies that the client answers reads from its cache
+ *             only while they are known to match the server.
+ */
+public class ClientCacheTest
+{
+
+	/**
+	 * Entries are fresh for a while when not listening, and until a newer change
+	 * comes in when listening
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFreshness() throws Exception
+	{
+		AtomicLong now = new AtomicLong(1000);
+		ClientCache cache = new ClientCache(100, now::get);
+		PlanFile plan = new PlanFile("2019", true, new Centre());
+		plan.setVersion(3);
+
+		cache.putPlan("1", plan, cache.getChangeCount());
+		assertSame(plan, cache.getPlan("1", "2019"));
+		assertTrue(cache.isFresh("1", "2019"));
+		assertFalse(cache.isFresh("0", "2019"));
+		now.set(1100);
+		assertFalse(cache.isFresh("1", "2019"));
+		assertSame(plan, cache.getPlan("1", "2019"));
+
+		cache.setListening(true);
+		cache.putPlan("1", plan, cache.getChangeCount());
+		now.set(5000);
+		assertTrue(cache.isFresh("1", "2019"));
+		cache.changed("1", new PlanChange("2019", 3, null, true));// already seen, such as our own save
+		assertTrue(cache.isFresh("1", "2019"));
+		cache.changed("1", new PlanChange("2019", 3, new long[0], false));
+		assertFalse(cache.isFresh("1", "2019"));
+
+		long stamp = cache.getChangeCount();
+		cache.changed("1", new PlanChange("2019", 4, new long[] { 1 }, true));// while fetching
+		cache.putPlan("1", plan, stamp);
+		assertFalse(cache.isFresh("1", "2019"));
+
+		cache.putPlanList("1", Arrays.asList(plan), cache.getChangeCount());
+		assertNotNull(cache.getPlanList("1"));
+		cache.changed("1", PlanChange.missed());
+		assertNull(cache.getPlanList("1"));
+	}
+
+	/**
+	 * A listening client reads plans, lists and templates without calling the
+	 * server again until something changes
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testClientReads() throws Exception
+	{
+		ServerImplementation testServer = new ServerImplementation();
+		testServer.save();
+		ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<String, LongAdder>();
+		Server counted = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(),
+				new Class<?>[] { Server.class }, (proxy, method, args) ->
+				{
+					calls.computeIfAbsent(method.getName(), name -> new LongAdder()).increment();
+					try
+					{
+						return method.invoke(testServer, args);
+					}
+					catch (InvocationTargetException e)
+					{
+						throw e.getCause();
+					}
+				});
+		Client client = new Client(counted);
+		client.login("user", "user");
+		client.listen(null);
+
+		client.getPlan("2019");
+		client.getPlan("2019");
+		client.listPlans();
+		client.listPlans();
+		client.listPlanTemplates();
+		client.getPlanOutline("Centre");
+		client.getPlanOutline("Centre");
+		assertEquals(1, calls.get("getPlanIfModified").sum());
+		assertEquals(1, calls.get("listPlans").sum());
+		assertEquals(1, calls.get("listPlanTemplates").sum());
+		assertEquals(1, calls.get("getPlanOutline").sum());
+
+		client.getPlan("2019");
+		client.editData("pushed");
+		client.pushEdits();
+		client.getPlan("2019");
+		assertEquals("pushed", client.getData());
+
+		Node goal = testServer.getPlan("2019", "0").getPlan().getRoot().getChildren().get(0);
+		testServer.setNodeData("2019", goal.getId(), "from someone else", "0");
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		do
+		{
+			client.getPlan("2019");
+		}
+		while (!"from someone else".equals(client.getCurrPlanFile().getPlan().getNode(goal.getId()).getData())
+				&& System.nanoTime() < deadline);
+		assertEquals("from someone else", client.getCurrPlanFile().getPlan().getNode(goal.getId()).getData());
+		client.stopListening();
+		testServer.close();
+	}
+
+}
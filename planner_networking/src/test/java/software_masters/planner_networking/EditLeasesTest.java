@@ -0,0 +1,102 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies that leases keep other users out of a branch
+ *             but not out of the rest of the plan, and run out on time.
+ */
+public class EditLeasesTest
+{
+
+	/**
+	 * Overlapping leases are refused, disjoint ones are not, and the wheel drops
+	 * leases once they run out
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testLeases() throws Exception
+	{
+		AtomicLong now = new AtomicLong(10000);
+		EditLeases leases = new EditLeases(1000, 100, now::get);
+		Plan plan = new Centre();
+		Node root = plan.getRoot();
+		plan.addNode(root);
+		Node first = root.getChildren().get(0);
+		Node second = root.getChildren().get(1);
+
+		assertEquals(11000, leases.acquire("default", "2019", plan, first.getId(), "a"));
+		assertThrows(LeaseConflictException.class,
+				() -> leases.acquire("default", "2019", plan, first.getId(), "b"));
+		assertThrows(LeaseConflictException.class, () -> leases.acquire("default", "2019", plan, root.getId(), "b"));
+		assertThrows(LeaseConflictException.class,
+				() -> leases.acquire("default", "2019", plan, first.getChildren().get(0).getId(), "b"));
+		leases.acquire("default", "2019", plan, second.getId(), "b");
+		leases.acquire("default", "2020", plan, first.getId(), "b");
+		assertThrows(IllegalArgumentException.class, () -> leases.acquire("default", "2019", plan, -5, "b"));
+
+		now.set(10500);
+		assertEquals(11500, leases.renew("default", "2019", first.getId(), "a"));
+		assertThrows(IllegalArgumentException.class, () -> leases.renew("default", "2019", first.getId(), "b"));
+		now.set(11200);
+		leases.expire();
+		assertEquals(1, leases.size());
+		leases.acquire("default", "2019", plan, second.getId(), "c");
+
+		now.set(11600);
+		leases.expire();
+		assertEquals(1, leases.size());
+		leases.acquire("default", "2019", plan, first.getId(), "b");
+		leases.release("default", "2019", first.getId(), "b");
+		leases.acquire("default", "2019", plan, root.getId(), "c");
+		leases.close();
+	}
+
+	/**
+	 * The server refuses edits and saves that reach into a branch someone else
+	 * leased, and lets everything else through
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testServerChecksLeases() throws Exception
+	{
+		ServerImplementation testServer = new ServerImplementation();
+		testServer.save();
+		Plan plan = testServer.getPlan("2019", "0").getPlan();
+		Node root = plan.getRoot();
+		Node goal = root.getChildren().get(0);
+		Node objective = goal.getChildren().get(0);
+
+		testServer.acquireLease("2019", goal.getId(), "0");
+		assertThrows(LeaseConflictException.class, () -> testServer.setNodeData("2019", objective.getId(), "x", "1"));
+		assertThrows(LeaseConflictException.class, () -> testServer.removeBranch("2019", goal.getId(), "1"));
+		PlanFile current = testServer.getPlan("2019", "1");
+		assertThrows(LeaseConflictException.class, () -> testServer.editPlan("2019", current.getVersion(),
+				Arrays.asList(PlanEdit.setData(objective, "x")), "1"));
+		assertThrows(LeaseConflictException.class, () -> testServer.savePlan(current.copy(), "1"));
+
+		NodeUpdate added = testServer.addBranch("2019", root.getId(), "1");
+		testServer.setNodeName("2019", added.getNodeId(), "Other goal", "1");
+		assertThrows(LeaseConflictException.class, () -> testServer.acquireLease("2019", root.getId(), "1"));
+		testServer.acquireLease("2019", added.getNodeId(), "1");
+		assertThrows(LeaseConflictException.class,
+				() -> testServer.setNodeName("2019", added.getNodeId(), "Mine", "0"));
+
+		testServer.setNodeData("2019", objective.getId(), "leased", "0");
+		testServer.releaseLease("2019", goal.getId(), "0");
+		testServer.setNodeData("2019", objective.getId(), "released", "1");
+		testServer.releaseLease("2019", added.getNodeId(), "1");
+		assertEquals("released", testServer.getPlan("2019", "0").getPlan().getNode(objective.getId()).getData());
+		testServer.close();
+	}
+
+}
@@ -5,7 +5,8 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ CentreTest.class, IowaStateTest.class, LocalClientTest.class, NodeTest.class, ServerTest.class,
+@SuiteClasses({ CentreTest.class, ClientAsyncTest.class, ClientCacheTest.class, EditLeasesTest.class, IowaStateTest.class, LocalClientTest.class, MutationLogTest.class, NodeTest.class,
+		PlanCacheTest.class, PlanEditTest.class, PlanNotifierTest.class, ServerMetricsTest.class, ServerTest.class, SnapshotFormatTest.class,
 		VMOSATest.class })
 public class LocalTestSuite
 {
@@ -0,0 +1,223 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that changes written to the mutation log survive a reload without
+ * the server being checkpointed. Each test works in its own data directory.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class MutationLogTest
+{
+
+	ServerImplementation testServer;
+	ArrayList<ServerImplementation> servers = new ArrayList<ServerImplementation>();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.setProperty("planner.dataDir", Files.createTempDirectory("planner").toString());
+		testServer = new ServerImplementation();
+		servers.add(testServer);
+		testServer.save();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		for (ServerImplementation server : servers)
+		{
+			server.close();
+		}
+		System.clearProperty("planner.dataDir");
+	}
+
+	/**
+	 * @return the server loaded from the data directory, closed after the test
+	 * @throws Exception
+	 */
+	private ServerImplementation load() throws Exception
+	{
+		ServerImplementation loaded = ServerImplementation.load();
+		servers.add(loaded);
+		return loaded;
+	}
+
+	/**
+	 * Every logged change is replayed on top of the checkpoint
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReplay() throws Exception
+	{
+		testServer.addDepartment("logged", "0");
+		testServer.addUser("loggedUser", "pass", "logged", false, "0");
+		testServer.flagPlan("default", "2020", true, "0");
+		Plan plan = new VMOSA();
+		plan.setName("Logged_Plan");
+		testServer.savePlan(new PlanFile("2021", true, plan), "1");
+
+		ServerImplementation loaded = load();
+		assertEquals(testServer, loaded);
+		assertTrue(loaded.getDepartmentMap().containsKey("logged"));
+		assertTrue(loaded.getPlan("2020", "1").isCanEdit());
+		assertEquals("Logged_Plan", loaded.getPlan("2021", "1").getPlan().getName());
+		String cookie = loaded.logIn("loggedUser", "pass");
+		assertSame(loaded.getDepartmentMap().get("logged"), loaded.getCookieMap().get(cookie).getDepartment());
+	}
+
+	/**
+	 * A checkpoint empties the log and records already in the checkpoint are not
+	 * applied twice
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCheckpoint() throws Exception
+	{
+		testServer.addDepartment("checkpointed", "0");
+		testServer.save();
+		assertEquals(0, ServerImplementation.dataFile(ServerImplementation.LOG_FILE).length());
+
+		testServer.addUser("afterCheckpoint", "pass", "checkpointed", false, "0");
+		ServerImplementation loaded = load();
+		assertEquals(testServer, loaded);
+	}
+
+	/**
+	 * A record cut off part way through is dropped instead of failing the load
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTornRecord() throws Exception
+	{
+		testServer.addDepartment("intact", "0");
+		FileOutputStream out = new FileOutputStream(ServerImplementation.dataFile(ServerImplementation.LOG_FILE), true);
+		out.write(new byte[] { 0, 0, 0, 40, 0, 0, 0 });
+		out.close();
+
+		ServerImplementation loaded = load();
+		assertEquals(testServer, loaded);
+
+		MutationLog log = new MutationLog(ServerImplementation.dataFile(ServerImplementation.LOG_FILE));
+		assertEquals(1, log.getRecordsSinceCheckpoint());
+		log.close();
+	}
+
+	/**
+	 * A damaged record with intact records after it fails the load instead of
+	 * being cut off with them
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCorruptRecord() throws Exception
+	{
+		testServer.addDepartment("first", "0");
+		testServer.addDepartment("second", "0");
+		try (RandomAccessFile log = new RandomAccessFile(ServerImplementation.dataFile(ServerImplementation.LOG_FILE),
+				"rw"))
+		{
+			log.seek(14);// inside the first record's payload
+			int value = log.read();
+			log.seek(14);
+			log.write(value ^ 0xff);
+		}
+
+		try
+		{
+			load();
+			fail("Loaded a log with a damaged record");
+		}
+		catch (IOException e)
+		{
+			assertTrue(ServerImplementation.dataFile(ServerImplementation.LOG_FILE).length() > 0);
+		}
+	}
+
+	/**
+	 * Records queued together by concurrent callers are committed in shared
+	 * batches, and all of them are durable once their callers return
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGroupCommit() throws Exception
+	{
+		File file = File.createTempFile("grouped", ".log");
+		file.deleteOnExit();
+		MutationLog log = new MutationLog(file, 8, 50);
+		ArrayList<CompletableFuture<Long>> commits = new ArrayList<CompletableFuture<Long>>();
+		for (int i = 0; i < 32; i++)
+		{
+			commits.add(log.logAddDepartment("department" + i));
+		}
+		for (CompletableFuture<Long> commit : commits)
+		{
+			MutationLog.await(commit);
+		}
+		assertEquals(32, log.getCommittedRecords());
+		assertTrue(log.getBatchCount() < 32);
+		assertTrue(log.getLargestBatch() <= 8);
+		log.close();
+
+		MutationLog reopened = new MutationLog(file);
+		assertEquals(32, reopened.getLastSequence());
+		reopened.close();
+	}
+
+	/**
+	 * Plans saved from many threads at once are all replayed
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentSaves() throws Exception
+	{
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 16; i++)
+		{
+			final String year = Integer.toString(3000 + i);
+			threads.add(new Thread(() ->
+			{
+				try
+				{
+					testServer.savePlan(new PlanFile(year, true, new Centre()), "1");
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+			}));
+		}
+		for (Thread thread : threads)
+		{
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		ServerImplementation loaded = load();
+		assertEquals(testServer, loaded);
+		assertEquals(18, loaded.listPlans("1").size());
+	}
+
+}
@@ -0,0 +1,110 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies plan bodies are dropped and read back to stay
+ *             within the cache budget.
+ */
+public class PlanCacheTest
+{
+
+	/**
+	 * Puts the shared cache back to its normal budget
+	 */
+	@After
+	public void restoreBudget()
+	{
+		PlanCache.getShared().setBudget(PlanCache.DEFAULT_BUDGET);
+	}
+
+	/**
+	 * With room for one plan, reading a second drops the first, which is read
+	 * back unchanged when asked for again
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEviction() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.save();
+		ServerImplementation loaded = ServerImplementation.load();
+		Department dept = loaded.getDepartmentMap().get("default");
+		PlanCache cache = PlanCache.getShared();
+		cache.setBudget(1);
+		long misses = cache.getMisses();
+		long evictions = cache.getEvictions();
+
+		Plan first = loaded.getPlan("2019", "0").getPlan();
+		assertTrue(dept.getPlan("2019").isLoaded());
+		loaded.getPlan("2020", "0").getPlan();
+		assertFalse(dept.getPlan("2019").isLoaded());
+		assertTrue(dept.getPlan("2020").isLoaded());
+		assertEquals(misses + 2, cache.getMisses());
+		assertTrue(cache.getEvictions() > evictions);
+
+		long hits = cache.getHits();
+		assertEquals(first, loaded.getPlan("2019", "0").getPlan());
+		loaded.getPlan("2019", "0").getPlan();
+		assertEquals(hits + 1, cache.getHits());
+		assertEquals(server, loaded);
+	}
+
+	/**
+	 * A saved plan is only dropped once a checkpoint has written it
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnsavedPlansKept() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.save();
+		ServerImplementation loaded = ServerImplementation.load();
+		PlanCache.getShared().setBudget(1);
+
+		Plan plan = new Centre();
+		plan.setName("Unsaved");
+		loaded.savePlan(new PlanFile("2021", true, plan), "0");
+		loaded.getPlan("2019", "0").getPlan();
+		loaded.getPlan("2020", "0").getPlan();
+		assertSame(plan, loaded.getPlan("2021", "0").getPlan());
+
+		loaded.save();
+		loaded.getPlan("2019", "0").getPlan();
+		Department dept = loaded.getDepartmentMap().get("default");
+		assertFalse(dept.getPlan("2021").isLoaded());
+		assertEquals(plan, loaded.getPlan("2021", "0").getPlan());
+	}
+
+	/**
+	 * A plan replaced by a save stops counting against the budget straight away
+	 * instead of waiting to be the eldest
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReplacedPlansDropped() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.save();
+		ServerImplementation loaded = ServerImplementation.load();
+		PlanCache cache = PlanCache.getShared();
+		PlanFile stored = loaded.getPlan("2019", "0");
+		stored.getPlan();
+		int count = cache.getCount();
+		long size = cache.getSize();
+
+		loaded.savePlan(stored.copy(), "0");
+		assertEquals(count - 1, cache.getCount());
+		assertTrue(cache.getSize() < size);
+		loaded.close();
+		server.close();
+	}
+
+}
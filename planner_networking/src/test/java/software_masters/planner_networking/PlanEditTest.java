@@ -0,0 +1,247 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies that node level edits sent to editPlan are
+ *             applied all or none, against the version they were made to, and
+ *             survive a reload.
+ */
+public class PlanEditTest
+{
+
+	ServerImplementation testServer;
+	PlanFile planFile;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		testServer = new ServerImplementation();
+		testServer.save();
+		planFile = testServer.getPlan("2019", "0");
+	}
+
+	/**
+	 * Edits replace the plan with the next version, copying only the path to
+	 * each node changed and leaving the version already handed out untouched
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEditPlan() throws Exception
+	{
+		Node root = planFile.getPlan().getRoot();
+		Node goal = root.getChildren().get(0);
+		long version = planFile.getVersion();
+		int goals = root.getChildren().size();
+
+		long newVersion = testServer.editPlan("2019", version, Arrays.asList(PlanEdit.setData(goal, "new goal"),
+				PlanEdit.setName(root, "Mission 2"), PlanEdit.addBranch(root)), "0");
+
+		assertEquals(version + 1, newVersion);
+		PlanFile edited = testServer.getPlan("2019", "0");
+		assertEquals(newVersion, edited.getVersion());
+		Node editedRoot = edited.getPlan().getRoot();
+		Node editedGoal = editedRoot.getChildren().get(0);
+		assertEquals("new goal", editedGoal.getData());
+		assertEquals("Mission 2", editedRoot.getName());
+		assertEquals(goals + 1, editedRoot.getChildren().size());
+		assertSame(goal.getChildren().get(0), editedGoal.getChildren().get(0));
+
+		assertEquals("", goal.getData());
+		assertEquals("Mission", root.getName());
+		assertEquals(goals, root.getChildren().size());
+	}
+
+	/**
+	 * Clearing a node's data through the client is pushed like any other edit,
+	 * and an edit without a path is refused when it is made
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testNullValues() throws Exception
+	{
+		Client client = new Client(testServer);
+		client.login("user", "user");
+		client.getPlan("2019");
+		client.setCurrNode(client.getCurrPlanFile().getPlan().getRoot().getChildren().get(0));
+		client.editData("goal");
+		client.pushEdits();
+		client.editData(null);
+		assertEquals(1, client.getPendingEdits().size());
+		client.pushEdits();
+		assertNull(testServer.getPlan("2019", "0").getPlan().getRoot().getChildren().get(0).getData());
+
+		assertThrows(IllegalArgumentException.class, () -> new PlanEdit(PlanEdit.Type.SET_DATA, null, "goal"));
+	}
+
+	/**
+	 * Edits made to an older version are refused
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testStaleVersion() throws Exception
+	{
+		Node goal = planFile.getPlan().getRoot().getChildren().get(0);
+		long version = planFile.getVersion();
+		testServer.editPlan("2019", version, Arrays.asList(PlanEdit.setData(goal, "first")), "0");
+
+		assertThrows(IllegalArgumentException.class,
+				() -> testServer.editPlan("2019", version, Arrays.asList(PlanEdit.setData(goal, "second")), "0"));
+		assertEquals("first",
+				testServer.getPlan("2019", "0").getPlan().getRoot().getChildren().get(0).getData());
+	}
+
+	/**
+	 * An edit the plan's rules refuse undoes the edits before it
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testAllOrNone() throws Exception
+	{
+		Node root = planFile.getPlan().getRoot();
+		Node goal = root.getChildren().get(0);
+		String data = goal.getData();
+		int goals = root.getChildren().size();
+		long version = planFile.getVersion();
+
+		ArrayList<PlanEdit> edits = new ArrayList<PlanEdit>();
+		edits.add(PlanEdit.setData(goal, "changed"));
+		edits.add(PlanEdit.addBranch(root));
+		edits.add(PlanEdit.removeBranch(root));
+		assertThrows(IllegalArgumentException.class, () -> testServer.editPlan("2019", version, edits, "0"));
+
+		assertEquals(data, goal.getData());
+		assertEquals(goals, root.getChildren().size());
+		assertEquals(version, testServer.getPlan("2019", "0").getVersion());
+	}
+
+	/**
+	 * Setting the year saves an edited copy under the new year
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSetYear() throws Exception
+	{
+		Node goal = planFile.getPlan().getRoot().getChildren().get(0);
+		String data = goal.getData();
+
+		testServer.editPlan("2019", planFile.getVersion(),
+				Arrays.asList(PlanEdit.setData(goal, "next year"), PlanEdit.setYear("2031")), "0");
+
+		assertEquals(data, goal.getData());
+		PlanFile copy = testServer.getPlan("2031", "0");
+		assertEquals("2031", copy.getYear());
+		assertEquals("next year", copy.getPlan().getRoot().getChildren().get(0).getData());
+		assertThrows(NumberFormatException.class, () -> testServer.editPlan("2019", planFile.getVersion(),
+				Arrays.asList(PlanEdit.setYear("next")), "0"));
+	}
+
+	/**
+	 * Logged edits are replayed after a restart, including the version
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReplay() throws Exception
+	{
+		Node root = planFile.getPlan().getRoot();
+		long version = testServer.editPlan("2019", planFile.getVersion(),
+				Arrays.asList(PlanEdit.setData(root.getChildren().get(0), "logged"), PlanEdit.addBranch(root)), "0");
+
+		ServerImplementation loaded = ServerImplementation.load();
+		assertEquals(testServer, loaded);
+		assertEquals(version, loaded.getPlan("2019", "0").getVersion());
+
+		loaded.save();
+		ServerImplementation reloaded = ServerImplementation.load();
+		assertEquals(testServer, reloaded);
+		assertEquals(version, reloaded.getPlan("2019", "0").getVersion());
+	}
+
+	/**
+	 * The root keeps id 0 when an older version is indexed after a newer one
+	 * copied it, so both versions find the root's children by id
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRootIdStable() throws Exception
+	{
+		Plan first = planFile.getPlan();
+		long goalId = first.getRoot().getChildren().get(0).getId();
+		testServer.editPlan("2019", planFile.getVersion(), Arrays.asList(PlanEdit.setName(first.getRoot(), "Renamed")),
+				"0");
+
+		assertNotNull(first.getNode(goalId));
+		testServer.setNodeData("2019", goalId, "by id", "0");
+		Plan latest = testServer.getPlan("2019", "0").getPlan();
+		assertEquals(0, first.getRoot().getId());
+		assertEquals(0, latest.getRoot().getId());
+		assertArrayEquals(new int[] { 0 }, latest.pathTo(goalId));
+	}
+
+	/**
+	 * Edits addressed by node id go through the plan's rules on the server, send
+	 * back only what changed, bring the client's copy up to the same tree and
+	 * are replayed after a restart
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testNodeEdits() throws Exception
+	{
+		Client client = new Client(testServer);
+		client.login("admin", "admin");
+		client.getPlan("2019");
+		Node root = client.getCurrPlanFile().getPlan().getRoot();
+		Node goal = root.getChildren().get(0);
+		long version = client.getCurrPlanFile().getVersion();
+
+		client.setCurrNode(goal.getChildren().get(0));
+		client.sendAddBranch();
+		client.setCurrNode(goal);
+		client.sendAddBranch();
+		Node secondGoal = root.getChildren().get(root.getChildren().size() - 1);
+		client.setCurrNode(goal.getChildren().get(goal.getChildren().size() - 1));
+		client.sendName("moved");
+		client.sendData("moved data");
+		client.sendMoveBranch(secondGoal, 0);
+		assertThrows(IllegalArgumentException.class, () -> client.sendMoveBranch(root, 0));
+		client.setCurrNode(root);
+		client.sendName("Mission 2");
+		assertSame(root, client.getCurrPlanFile().getPlan().getRoot());
+
+		NodeUpdate update = testServer.setNodeData("2019", goal.getId(), "by id", "0");
+		assertEquals(version + 7, update.getVersion());
+		assertEquals(0, update.getNode().getChildren().size());
+		assertThrows(IllegalArgumentException.class, () -> testServer.removeBranch("2019", -5, "0"));
+
+		PlanFile server = testServer.getPlan("2019", "0");
+		Node moved = server.getPlan().getRoot().getChildren().get(root.getChildren().size() - 1).getChildren().get(0);
+		assertEquals("moved", moved.getName());
+		assertEquals("moved data", moved.getData());
+		assertEquals("by id", server.getPlan().getRoot().getChildren().get(0).getData());
+		assertEquals(version + 6, client.getCurrPlanFile().getVersion());
+		goal.setData("by id");
+		assertEquals(server.getPlan(), client.getCurrPlanFile().getPlan());
+
+		client.setCurrNode(moved);
+		client.sendRemoveBranch();
+		assertEquals(1, secondGoal.getChildren().size());
+		assertEquals(testServer, ServerImplementation.load());
+	}
+
+}
@@ -0,0 +1,117 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies that plan changes reach every listener of the
+ *             department in order, and that a slow or broken listener holds
+ *             nobody up.
+ */
+public class PlanNotifierTest
+{
+
+	/**
+	 * A listener that stops answering is skipped over by publish, misses changes
+	 * once its queue fills, and a listener that fails is dropped
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSlowListener() throws Exception
+	{
+		PlanNotifier notifier = new PlanNotifier(4);
+		CountDownLatch stuck = new CountDownLatch(1);
+		LinkedBlockingQueue<PlanChange> slow = new LinkedBlockingQueue<PlanChange>();
+		LinkedBlockingQueue<PlanChange> fast = new LinkedBlockingQueue<PlanChange>();
+		notifier.subscribe("default", change ->
+		{
+			slow.add(change);
+			awaitQuietly(stuck);
+		});
+		notifier.subscribe("default", fast::add);
+		notifier.subscribe("default", change ->
+		{
+			throw new RemoteException("gone");
+		});
+		notifier.subscribe("other", change -> fail("wrong department"));
+
+		for (int version = 1; version <= 10; version++)
+		{
+			notifier.publish("default", new PlanChange("2019", version, new long[] { 1 }, true));
+			assertEquals(version, fast.poll(5, TimeUnit.SECONDS).getVersion());
+		}
+		assertEquals(1, slow.poll(5, TimeUnit.SECONDS).getVersion());
+		stuck.countDown();
+		PlanChange change = slow.poll(5, TimeUnit.SECONDS);
+		while (!change.isMissed())
+		{
+			change = slow.poll(5, TimeUnit.SECONDS);
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (notifier.getSubscriberCount("default") > 2 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);// the failed listener is dropped by its own thread
+		}
+		assertEquals(2, notifier.getSubscriberCount("default"));
+		notifier.close();
+	}
+
+	/**
+	 * Saves, edits and flags are all reported, through a listener a client
+	 * exported
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testServerChanges() throws Exception
+	{
+		ServerImplementation testServer = new ServerImplementation();
+		testServer.save();
+		Client client = new Client(testServer);
+		client.login("user", "user");
+		LinkedBlockingQueue<PlanChange> changes = new LinkedBlockingQueue<PlanChange>();
+		client.listen(changes::add);
+
+		PlanFile plan = testServer.getPlan("2019", "0");
+		Node goal = plan.getPlan().getRoot().getChildren().get(0);
+		testServer.setNodeData("2019", goal.getId(), "changed", "0");
+		PlanChange edited = changes.poll(5, TimeUnit.SECONDS);
+		assertEquals("2019", edited.getYear());
+		assertEquals(plan.getVersion() + 1, edited.getVersion());
+		assertArrayEquals(new long[] { goal.getId() }, edited.getNodeIds());
+
+		testServer.savePlan(testServer.getPlan("2019", "0").copy(), "0");
+		PlanChange saved = changes.poll(5, TimeUnit.SECONDS);
+		assertEquals(plan.getVersion() + 2, saved.getVersion());
+		assertNull(saved.getNodeIds());
+
+		testServer.flagPlan("default", "2019", false, "0");
+		assertFalse(changes.poll(5, TimeUnit.SECONDS).isCanEdit());
+
+		client.stopListening();
+		testServer.flagPlan("default", "2019", true, "0");
+		assertNull(changes.poll(200, TimeUnit.MILLISECONDS));
+		testServer.close();
+	}
+
+	private static void awaitQuietly(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -409,4 +409,58 @@ public class RemoteClientTest
 		assertEquals("some text", testClient.getCurrNode().getParent().getChildren().get(0).getData());
 	}
 
+	/**
+	 * Verifies that pushing edits to a fetched plan sends only the changes and
+	 * leaves the server holding the same plan as the client
+	 * 
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testPushEdits() throws RemoteException
+	{
+		testClient.login("user", "user");
+		testClient.getPlanOutline("VMOSA");
+		testClient.setYear("2032");
+		testClient.pushEdits();
+
+		testClient.getPlan("2032");
+		Node root = testClient.getCurrNode();
+		testClient.setCurrNode(root.getChildren().get(0));
+		testClient.editData("pushed as an edit");
+		testClient.setCurrNode(root.getChildren().get(0).getChildren().get(0));
+		testClient.addBranch();
+		testClient.setYear("2033");
+		assertEquals(3, testClient.getPendingEdits().size());
+		testClient.pushEdits();
+		assertEquals(0, testClient.getPendingEdits().size());
+
+		PlanFile edited = testClient.getCurrPlanFile();
+		testClient.getPlan("2033");
+		assertEquals(edited, testClient.getCurrPlanFile());
+		assertEquals(edited.getVersion(), testClient.getCurrPlanFile().getVersion());
+		testClient.getPlan("2032");
+		assertEquals("", testClient.getCurrNode().getChildren().get(0).getData());
+	}
+
+	/**
+	 * Verifies that a plan fetched again without changes on the server comes back
+	 * as it is on the server, without unpushed local edits
+	 * 
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testGetPlanUnchanged() throws RemoteException
+	{
+		testClient.login("user", "user");
+		testClient.getPlan("2019");
+		PlanFile first = testClient.getCurrPlanFile();
+		String name = testClient.getCurrNode().getName();
+		testClient.editName("not pushed");
+
+		testClient.getPlan("2019");
+		assertNotSame(first, testClient.getCurrPlanFile());
+		assertEquals(first.getVersion(), testClient.getCurrPlanFile().getVersion());
+		assertEquals(name, testClient.getCurrNode().getName());
+	}
+
 }
@@ -0,0 +1,82 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.rmi.RemoteException;
+
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies server calls are counted and timed, and that
+ *             only admins can read the figures.
+ */
+public class ServerMetricsTest
+{
+
+	/**
+	 * Percentiles land within a bucket of the true value
+	 */
+	@Test
+	public void testHistogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 10000; value++)
+		{
+			histogram.record(value);
+		}
+		assertEquals(10000, histogram.getCount());
+		assertEquals(10000, histogram.getMax());
+		assertEquals(5000, histogram.getMean());
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 5000 && median <= 5000 * 9 / 8);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 9900 && p99 <= 10000);
+		assertEquals(10000, histogram.getPercentile(100));
+		assertEquals(0, new LatencyHistogram().getPercentile(99));
+	}
+
+	/**
+	 * Calls through the instrumented server are counted, with failures counted
+	 * by exception type and passed on unchanged
+	 *
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testInstrument() throws RemoteException
+	{
+		ServerMetrics metrics = new ServerMetrics();
+		Server server = metrics.instrument(new ServerImplementation());
+		assertEquals("0", server.logIn("admin", "admin"));
+		server.listPlans("1");
+		server.listPlans("1");
+		assertThrows(IllegalArgumentException.class, () -> server.getPlan("1999", "1"));
+
+		assertEquals(1, metrics.getCalls("logIn"));
+		assertEquals(2, metrics.getCalls("listPlans"));
+		assertEquals(0, metrics.getCalls("getPlan"));
+		assertEquals(Long.valueOf(1), metrics.getErrors("getPlan").get("IllegalArgumentException"));
+		assertTrue(metrics.format().contains("listPlans"));
+	}
+
+	/**
+	 * getServerStats reports calls made through the exported wrapper, to admins
+	 * only
+	 *
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testGetServerStats() throws RemoteException
+	{
+		ServerImplementation implementation = new ServerImplementation();
+		Server server = implementation.instrumented();
+		server.getPlan("2019", "1");
+		assertThrows(IllegalArgumentException.class, () -> server.getServerStats("1"));
+		String stats = server.getServerStats("0");
+		assertTrue(stats.contains("getPlan"));
+		assertTrue(stats.contains("getServerStats"));
+		assertTrue(stats.contains("plan cache"));
+	}
+
+}
@@ -3,6 +3,7 @@ package software_masters.planner_networking;
 import static org.junit.Assert.*;
 
 import java.rmi.RemoteException;
+import java.util.Arrays;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -50,7 +51,116 @@ public class ServerTest
 	}
 
 	/**
-	 * Tests that the server can be saved to xml and reloaded correctly
+	 * Tests that a plan is only sent again once its version has changed
+	 * 
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testGetPlanIfModified() throws RemoteException
+	{
+		PlanFile current = testServer.getPlan("2019", "1");
+		PlanFile notModified = testServer.getPlanIfModified("2019", current.getVersion(), "1");
+		assertNull(notModified.getPlan());
+		assertEquals(current.getVersion(), notModified.getVersion());
+		assertEquals(current.isCanEdit(), notModified.isCanEdit());
+
+		assertEquals(current, testServer.getPlanIfModified("2019", -1, "1"));
+		testServer.savePlan(current.copy(), "1");
+		PlanFile modified = testServer.getPlanIfModified("2019", current.getVersion(), "1");
+		assertNotNull(modified.getPlan());
+		assertTrue(modified.getVersion() > current.getVersion());
+	}
+
+	/**
+	 * Tests that of two saves made from the same version only the first is
+	 * stored, and the second is told which version it lost to
+	 *
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testSavePlanConflict() throws RemoteException
+	{
+		PlanFile first = testServer.getPlan("2019", "1").copy();
+		PlanFile second = testServer.getPlan("2019", "1").copy();
+		long loaded = first.getVersion();
+
+		first.getPlan().getRoot().setData("first");
+		assertEquals(loaded + 1, testServer.savePlan(first, "1"));
+		second.getPlan().getRoot().setData("second");
+		try
+		{
+			testServer.savePlan(second, "1");
+			fail("Second save from the same version was stored");
+		}
+		catch (PlanConflictException conflict)
+		{
+			assertEquals(loaded, conflict.getLoadedVersion());
+			assertEquals(loaded + 1, conflict.getCurrentVersion());
+		}
+		assertEquals("first", testServer.getPlan("2019", "1").getPlan().getRoot().getData());
+
+		testServer.flagPlan("default", "2019", true, "0");
+		assertEquals(loaded + 1, testServer.getPlan("2019", "1").getVersion());
+		assertEquals(loaded + 2, testServer.savePlan(first, "1"));
+	}
+
+	/**
+	 * Tests that edits renaming a plan onto a year saved since they were loaded
+	 * are refused, and leave both plans as they were
+	 *
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testEditPlanYearConflict() throws RemoteException
+	{
+		PlanFile source = testServer.getPlan("2019", "1").copy();
+		source.setYear("2033");
+		assertEquals(1, testServer.savePlan(source, "1"));
+		PlanFile target = source.copy();
+		target.setYear("2032");
+		assertEquals(1, testServer.savePlan(target, "1"));
+		target.getPlan().getRoot().setData("target");
+		assertEquals(2, testServer.savePlan(target, "1"));
+
+		try
+		{
+			testServer.editPlan("2033", 1, Arrays.asList(PlanEdit.setYear("2032")), "1");
+			fail("Edits overwrote a plan saved after they were loaded");
+		}
+		catch (PlanConflictException conflict)
+		{
+			assertEquals("2032", conflict.getYear());
+			assertEquals(1, conflict.getLoadedVersion());
+			assertEquals(2, conflict.getCurrentVersion());
+		}
+		assertEquals("target", testServer.getPlan("2032", "1").getPlan().getRoot().getData());
+		assertEquals(2, testServer.getPlan("2032", "1").getVersion());
+	}
+
+	/**
+	 * Tests that flagging a plan stores a new planFile with the same body and
+	 * version, so a planFile already handed out keeps its flag
+	 *
+	 * @throws RemoteException
+	 */
+	@Test
+	public void testFlagPlanSnapshot() throws RemoteException
+	{
+		PlanFile before = testServer.getPlan("2019", "1");
+		testServer.flagPlan("default", "2019", false, "0");
+		PlanFile after = testServer.getPlan("2019", "1");
+		testServer.flagPlan("default", "2019", true, "0");
+
+		assertNotSame(before, after);
+		assertTrue(before.isCanEdit());
+		assertFalse(after.isCanEdit());
+		assertEquals(before.getPlan(), after.getPlan());
+		assertEquals(before.getVersion(), after.getVersion());
+	}
+
+	/**
+	 * Tests that the server can be checkpointed to its binary snapshot files and
+	 * reloaded correctly
 	 * 
 	 * @throws Exception
 	 */
@@ -0,0 +1,158 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+
+import java.beans.XMLEncoder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+/**
+ * @author lee.kendall
+ * @author wesley murray Verifies the binary snapshot format and the migration
+ *             from xml.
+ */
+public class SnapshotFormatTest
+{
+
+	/**
+	 * A server written to a snapshot reads back equal, with shared accounts and
+	 * departments still shared
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.addDepartment("second", "0");
+		server.addUser("secondUser", "pass", "second", true, "0");
+		Plan plan = new IowaState();
+		plan.setName("Iowa_Plan");
+		plan.getRoot().setData("Donn\u00e9es \u2713");
+		plan.addNode(plan.getRoot().getChildren().get(0));
+		server.getDepartmentMap().get("second").addPlan("2022", new PlanFile("2022", false, plan));
+
+		DepartmentShards shards = new DepartmentShards(Files.createTempDirectory("departments").toFile());
+		shards.write(server.getDepartmentMap().values(), 41);
+		ConcurrentHashMap<String, Department> departments = shards.readAll();
+		assertEquals(41, departments.get("second").checkpointSequence);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SnapshotFormat.writeServer(server, 42, bytes);
+		ServerImplementation read = SnapshotFormat.readServer(new ByteArrayInputStream(bytes.toByteArray()),
+				departments);
+
+		assertEquals(server, read);
+		assertEquals(42, read.checkpointSequence);
+		Plan readPlan = read.getDepartmentMap().get("second").getPlan("2022").getPlan();
+		assertEquals("Donn\u00e9es \u2713", readPlan.getRoot().getData());
+		Account admin = read.getLoginMap().get("admin");
+		assertSame(admin, read.getCookieMap().get("0"));
+		assertSame(read.getDepartmentMap().get("default"), admin.getDepartment());
+		Node child = read.getPlanTemplateMap().get("Centre").getPlan().getRoot().getChildren().get(0);
+		assertSame(read.getPlanTemplateMap().get("Centre").getPlan().getRoot(), child.getParent());
+	}
+
+	/**
+	 * A server saved by the old xml format is loaded, left as it is by the load,
+	 * and rewritten as a binary snapshot by its first checkpoint
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMigrateXml() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.save();
+		XMLEncoder encoder = new XMLEncoder(
+				new BufferedOutputStream(new FileOutputStream(ServerImplementation.SERVER_FILE)));
+		encoder.writeObject(server);
+		encoder.close();
+
+		ServerImplementation loaded = ServerImplementation.load();
+		assertEquals(server, loaded);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(ServerImplementation.SERVER_FILE)))
+		{
+			assertFalse(SnapshotFormat.isSnapshot(in));
+		}
+		loaded.save();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(ServerImplementation.SERVER_FILE)))
+		{
+			assertTrue(SnapshotFormat.isSnapshot(in));
+		}
+		assertEquals(server, ServerImplementation.load());
+	}
+
+	/**
+	 * A checkpoint only rewrites the department files that changed, and load puts
+	 * the server back together from all of them
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testDirtyDepartmentsOnly() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.addDepartment("second", "0");
+		server.save();
+		DepartmentShards shards = new DepartmentShards(new File(ServerImplementation.SHARD_DIRECTORY));
+		File first = shards.fileFor("default");
+		File second = shards.fileFor("second");
+		assertTrue(first.isFile());
+		assertTrue(second.isFile());
+		first.setLastModified(1000);
+		second.setLastModified(1000);
+
+		Plan plan = new VMOSA();
+		plan.setName("Second_Plan");
+		server.addUser("secondUser", "pass", "second", false, "0");
+		server.savePlan(new PlanFile("2021", true, plan), server.logIn("secondUser", "pass"));
+		server.save();
+
+		assertEquals(1000, first.lastModified());
+		assertNotEquals(1000, second.lastModified());
+		assertEquals(server, ServerImplementation.load());
+	}
+
+	/**
+	 * Loading reads only the department indexes; plan bodies are read the first
+	 * time they are asked for and survive checkpoints that never loaded them
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testLazyPlanBodies() throws Exception
+	{
+		ServerImplementation server = new ServerImplementation();
+		server.save();
+
+		ServerImplementation loaded = ServerImplementation.load();
+		Department dept = loaded.getDepartmentMap().get("default");
+		assertFalse(dept.getPlan("2019").isLoaded());
+		assertFalse(dept.getPlan("2020").isLoaded());
+		assertEquals(2, loaded.listPlans("0").size());
+		assertFalse(dept.getPlan("2020").isLoaded());
+
+		Plan plan = new Centre();
+		plan.setName("Centre_Plan_2");
+		loaded.savePlan(new PlanFile("2021", true, plan), "0");
+		loaded.save();
+		assertFalse(dept.getPlan("2020").isLoaded());
+		assertEquals("VMOSA_Plan_1", loaded.getPlan("2020", "0").getPlan().getName());
+		assertTrue(dept.getPlan("2020").isLoaded());
+
+		ServerImplementation reloaded = ServerImplementation.load();
+		assertEquals(plan, reloaded.getPlan("2021", "0").getPlan());
+		assertEquals(loaded, reloaded);
+	}
+
+}
@@ -0,0 +1,78 @@
+package software_masters.planner_networking;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Verifies that PlannerEvents reach a flight recording through FlightRecorder.
+ * Only compiled by the flight-recorder profile, on JDK 11 and later.
+ * 
+ * @author lee.kendall
+ * @author wesley murray
+ */
+public class FlightRecorderTest
+{
+
+	/**
+	 * Calls through the exported wrapper and plan edits show up in a flight
+	 * recording with their department and node
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testFlightEvents() throws IOException
+	{
+		File file = File.createTempFile("planner", ".jfr");
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording())
+		{
+			recording.enable("software_masters.planner.Rpc");
+			recording.enable("software_masters.planner.PlanEdit");
+			recording.start();
+			Server server = new ServerImplementation().instrumented();
+			PlanFile plan = server.getPlan("2019", "1");
+			Node parent = plan.getPlan().getRoot().getChildren().get(0);
+			plan.getPlan().addNode(parent);
+			recording.stop();
+			recording.dump(file.toPath());
+			events = RecordingFile.readAllEvents(file.toPath());
+		}
+		finally
+		{
+			Files.deleteIfExists(file.toPath());
+		}
+
+		RecordedEvent call = null;
+		RecordedEvent edit = null;
+		for (RecordedEvent event : events)
+		{
+			if (event.getEventType().getName().equals("software_masters.planner.Rpc"))
+			{
+				call = event;
+			}
+			else if (event.getEventType().getName().equals("software_masters.planner.PlanEdit"))
+			{
+				edit = event;
+			}
+		}
+		assertNotNull(call);
+		assertEquals("getPlan", call.getString("method"));
+		assertEquals("default", call.getString("department"));
+		assertTrue(call.getLong("payloadSize") > 0);
+		assertNotNull(edit);
+		assertEquals("add", edit.getString("operation"));
+		assertEquals("Centre", edit.getString("planType"));
+		assertEquals(1, edit.getInt("depth"));
+	}
+
+}